@@ -4,6 +4,7 @@ plugins {
     `jacoco`
     id("org.gradlex.extra-java-module-info") version "1.8"
     id("com.gradleup.shadow") version "8.3.1"
+    id("me.champeau.jmh") version "0.7.2"
     signing
     application
 }
@@ -36,6 +37,33 @@ tasks.test {
     finalizedBy(tasks.jacocoTestReport)
 }
 
+// benchmarks in src/jmh/java: ./gradlew jmh
+jmh {
+    warmupIterations.set(2)
+    iterations.set(5)
+    fork.set(1)
+    // allocation rate per benchmark
+    profilers.add("gc")
+}
+
+// HTTP load test, report as JSON: ./gradlew loadtest -Pargs="-c 16 -d 60 -o build/load.json"
+tasks.register<JavaExec>("loadtest") {
+    group = "verification"
+    description = "Run LoadHarness against an in-process server"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("fr.inria.corese.server.webservice.LoadHarness")
+    args = (project.findProperty("args") as String? ?: "").split(" ").filter { it.isNotBlank() }
+}
+
+// replay workload recorded with server option -capture: ./gradlew replay -Pargs="-speed 2 log/capture.log"
+tasks.register<JavaExec>("replay") {
+    group = "verification"
+    description = "Run WorkloadReplay on a capture file"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("fr.inria.corese.server.webservice.WorkloadReplay")
+    args = (project.findProperty("args") as String? ?: "").split(" ").filter { it.isNotBlank() }
+}
+
 project.setProperty("mainClassName","fr.inria.corese.server.webservice.EmbeddedJettyServer")
 tasks {
     shadowJar {
@@ -90,6 +118,9 @@ dependencies {
     api("org.eclipse.jetty:jetty-servlets:${jetty_version}")
     api("org.eclipse.jetty.websocket:websocket-jetty-server:${jetty_version}")
     api("org.eclipse.jetty:jetty-util:${jetty_version}")
+    api("org.eclipse.jetty.http2:http2-server:${jetty_version}")
+    api("org.eclipse.jetty:jetty-alpn-server:${jetty_version}")
+    api("org.eclipse.jetty:jetty-alpn-java-server:${jetty_version}")
 
     testImplementation("junit:junit:4.13.2")
 }
@@ -0,0 +1,90 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import fr.inria.corese.core.GraphStore;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.load.LoadException;
+
+/**
+ * Load throughput of a N-Triples document in triples per second:
+ * standard single thread Load.parse vs parallel BulkLoader
+ * ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BulkLoadBenchmark {
+
+    static final int TRIPLES = 200_000;
+    static final String NS = "http://example.org/";
+
+    @Param({ "1", "4" })
+    int threads;
+
+    File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("bulk", ".nt");
+        try (BufferedWriter w = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < TRIPLES; i++) {
+                int s = i / 10;
+                switch (i % 3) {
+                    case 0:
+                        w.write(String.format("<%ss%s> <%sp%s> <%so%s> .\n", NS, s, NS, i % 20, NS, i % 5000));
+                        break;
+                    case 1:
+                        w.write(String.format("<%ss%s> <%slabel> \"label %s\\twith \\\"escape\\\"\"@en .\n",
+                                NS, s, NS, i));
+                        break;
+                    default:
+                        w.write(String.format("<%ss%s> <%svalue> \"%s\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n",
+                                NS, s, NS, i));
+                }
+            }
+        }
+        BulkLoader.setParallelism(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRIPLES)
+    public GraphStore load() throws LoadException {
+        GraphStore g = GraphStore.create(false);
+        // as TripleStore.load
+        Load.create(g).parse(file.getAbsolutePath(), null, Load.NT_FORMAT);
+        g.init();
+        return g;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRIPLES)
+    public GraphStore bulkLoad() throws LoadException {
+        GraphStore g = GraphStore.create(false);
+        new BulkLoader(file.getAbsolutePath(), null).load(g);
+        return g;
+    }
+
+}
@@ -0,0 +1,389 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.json.JSONObject;
+
+/**
+ * HTTP load test of the server with a reproducible workload
+ * Start EmbeddedJettyServer in process with bundled datasets
+ * (human_2007_09_11.rdf, dbpedia_3.6.owl, kgram-persons.rdf) or use a
+ * running server (-url), then N clients send a mix of SPARQL queries,
+ * updates, Graph Store Protocol calls and /template calls for a given
+ * duration
+ * Client k draws its requests from Random(seed + k): two runs with same
+ * options send the same sequence of requests per client
+ * Report throughput and latency percentiles (p50, p95, p99, p999) as JSON,
+ * overall and per operation
+ * ./gradlew loadtest -Pargs="-c 16 -d 60 -mix query=80,update=5,gsp=10,template=5 -o build/load.json"
+ */
+public class LoadHarness {
+
+    static final String[] DATASETS = { "human_2007_09_11.rdf", "dbpedia_3.6.owl", "kgram-persons.rdf" };
+    static final String[] OPERATIONS = { "query", "update", "gsp", "template" };
+    static final String NS = "http://example.org/load/";
+    static final String HUMAN = "PREFIX h: <http://www.inria.fr/2007/09/11/humans.rdfs#> ";
+
+    static final String[] QUERIES = {
+            HUMAN + "SELECT * WHERE { ?x a h:Person ; h:name ?n }",
+            HUMAN + "SELECT ?x (count(?y) AS ?c) WHERE { ?x h:hasFriend|h:hasChild ?y } GROUP BY ?x ORDER BY desc(?c)",
+            HUMAN + "SELECT * WHERE { ?x h:age ?a FILTER (?a > 20) } ORDER BY ?a",
+            HUMAN + "ASK { ?x h:hasSpouse ?y . ?y h:hasSpouse ?x }",
+            "PREFIX owl: <http://www.w3.org/2002/07/owl#> PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> "
+                    + "SELECT ?c ?l WHERE { ?c a owl:Class ; rdfs:label ?l FILTER langMatches(lang(?l), 'en') } "
+                    + "LIMIT 100",
+            "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> "
+                    + "SELECT ?c (count(?s) AS ?n) WHERE { ?s rdfs:subClassOf+ ?c } GROUP BY ?c LIMIT 50",
+            "PREFIX foaf: <http://xmlns.com/foaf/0.1/> "
+                    + "SELECT * WHERE { ?x foaf:name ?n OPTIONAL { ?x foaf:knows ?y } }",
+            "CONSTRUCT { ?x ?p ?y } WHERE { ?x ?p ?y } LIMIT 500",
+            "SELECT (count(*) AS ?c) WHERE { ?x ?p ?y }" };
+
+    static final String[] TEMPLATES = {
+            "CONSTRUCT WHERE { ?x a <http://www.inria.fr/2007/09/11/humans.rdfs#Person> }",
+            "PREFIX foaf: <http://xmlns.com/foaf/0.1/> CONSTRUCT WHERE { ?x foaf:name ?n }" };
+
+    static final String READY = HUMAN + "PREFIX owl: <http://www.w3.org/2002/07/owl#> "
+            + "ASK { ?x a h:Person . ?c a owl:Class . <http://i3s/Alban> ?p ?y }";
+
+    static final String[] TRANSFORMS = { "st:turtle", "st:xml", "st:json" };
+
+    String server;
+    int clients = 8;
+    long warmup = 5_000;
+    long duration = 30_000;
+    long seed = 42;
+    // cumulative weights in OPERATIONS order
+    int[] mix = { 70, 80, 90, 100 };
+    HttpClient http;
+
+    /**
+     * Requests of one client, after warmup
+     */
+    static class Recorder {
+        long[][] latency = new long[OPERATIONS.length][1024];
+        int[] count = new int[OPERATIONS.length];
+        int[] errors = new int[OPERATIONS.length];
+
+        void record(int op, long nanos, boolean error) {
+            if (count[op] == latency[op].length) {
+                latency[op] = Arrays.copyOf(latency[op], 2 * count[op]);
+            }
+            latency[op][count[op]++] = nanos;
+            if (error) {
+                errors[op]++;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(new Option("h", "help", false, "print this message"));
+        options.addOption(new Option("url", "url", true, "URL of a running server, otherwise start a server"));
+        options.addOption(new Option("p", "port", true, "port of the started server (default 9090)"));
+        options.addOption(new Option("c", "clients", true, "number of concurrent clients (default 8)"));
+        options.addOption(new Option("d", "duration", true, "measured duration in s (default 30)"));
+        options.addOption(new Option("w", "warmup", true, "warmup duration in s (default 5)"));
+        options.addOption(new Option("mix", "mix", true,
+                "request mix in percent (default query=70,update=10,gsp=10,template=10)"));
+        options.addOption(new Option("seed", "seed", true, "random seed of workload (default 42)"));
+        options.addOption(new Option("o", "output", true, "JSON report file, otherwise standard output"));
+        options.addOption(new Option("server", "server", true,
+                "options of the started server, e.g. --server=\"-querythreads 4 -cache 0\""));
+        CommandLine cmd = new DefaultParser().parse(options, args);
+        if (cmd.hasOption("h")) {
+            new HelpFormatter().printHelp("LoadHarness", options);
+            return;
+        }
+
+        LoadHarness harness = new LoadHarness();
+        harness.clients = Integer.parseInt(cmd.getOptionValue("c", "8"));
+        harness.duration = 1000 * Long.parseLong(cmd.getOptionValue("d", "30"));
+        harness.warmup = 1000 * Long.parseLong(cmd.getOptionValue("w", "5"));
+        harness.seed = Long.parseLong(cmd.getOptionValue("seed", "42"));
+        if (cmd.hasOption("mix")) {
+            harness.mix = mix(cmd.getOptionValue("mix"));
+        }
+        if (cmd.hasOption("url")) {
+            harness.server = cmd.getOptionValue("url").replaceAll("/+$", "");
+        } else {
+            String port = cmd.getOptionValue("p", "9090");
+            String opt = cmd.getOptionValue("server", "");
+            harness.server = "http://localhost:" + port;
+            harness.start(port, opt.isBlank() ? new String[0] : opt.trim().split("\\s+"));
+        }
+
+        JSONObject report = harness.run();
+        report.put("options", String.join(" ", args));
+        if (cmd.hasOption("o")) {
+            Files.writeString(Path.of(cmd.getOptionValue("o")), report.toString(2));
+        } else {
+            System.out.println(report.toString(2));
+        }
+        // stop the embedded server
+        System.exit(0);
+    }
+
+    /**
+     * query=70,update=10,gsp=10,template=10 -> cumulative weights
+     */
+    static int[] mix(String value) {
+        int[] weight = new int[OPERATIONS.length];
+        for (String elem : value.split(",")) {
+            String[] kv = elem.split("=");
+            int i = Arrays.asList(OPERATIONS).indexOf(kv[0].trim());
+            if (i < 0 || kv.length != 2) {
+                throw new IllegalArgumentException("Undefined operation in mix: " + elem);
+            }
+            weight[i] = Integer.parseInt(kv[1].trim());
+        }
+        for (int i = 1; i < weight.length; i++) {
+            weight[i] += weight[i - 1];
+        }
+        if (weight[weight.length - 1] <= 0) {
+            throw new IllegalArgumentException("Empty mix: " + value);
+        }
+        return weight;
+    }
+
+    /**
+     * Start server in process with bundled datasets, wait until it answers
+     */
+    void start(String port, String[] opt) throws Exception {
+        File dir = Files.createTempDirectory("corese-load").toFile();
+        dir.deleteOnExit();
+        List<String> files = new ArrayList<>();
+        for (String name : DATASETS) {
+            try (InputStream in = LoadHarness.class.getResourceAsStream("/" + name)) {
+                if (in == null) {
+                    throw new IOException("Undefined dataset: " + name);
+                }
+                File file = new File(dir, name);
+                Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                file.deleteOnExit();
+                files.add(file.getAbsolutePath());
+            }
+        }
+        List<String> args = new ArrayList<>(Arrays.asList("-p", port, "-lh", "-su", "-l", String.join(";", files)));
+        args.addAll(Arrays.asList(opt));
+        Thread thread = new Thread(() -> {
+            try {
+                EmbeddedJettyServer.main(args.toArray(new String[0]));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }, "corese-load-server");
+        thread.setDaemon(true);
+        thread.start();
+
+        HttpClient client = HttpClient.newHttpClient();
+        long end = System.currentTimeMillis() + 120_000;
+        while (System.currentTimeMillis() < end) {
+            try {
+                // ready when every dataset is loaded
+                HttpResponse<String> resp = client.send(get("/sparql?query=" + encode(READY),
+                        "application/sparql-results+json"), HttpResponse.BodyHandlers.ofString());
+                if (resp.statusCode() == 200 && resp.body().contains("true")) {
+                    return;
+                }
+            } catch (IOException ex) {
+                // server not started yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IOException("Server not ready: " + server);
+    }
+
+    JSONObject run() throws Exception {
+        http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        Recorder[] recorders = new Recorder[clients];
+        CountDownLatch latch = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        long measure = start + warmup * 1_000_000;
+        long stop = measure + duration * 1_000_000;
+
+        for (int k = 0; k < clients; k++) {
+            int client = k;
+            recorders[k] = new Recorder();
+            Thread thread = new Thread(() -> {
+                try {
+                    client(client, recorders[client], measure, stop);
+                } finally {
+                    latch.countDown();
+                }
+            }, "corese-load-client-" + k);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        latch.await();
+        return report(recorders);
+    }
+
+    /**
+     * Send requests until stop, record requests sent after measure
+     */
+    void client(int client, Recorder recorder, long measure, long stop) {
+        Random random = new Random(seed + client);
+        int n = 0;
+        while (true) {
+            int op = operation(random);
+            HttpRequest request = request(op, client, n++, random);
+            long begin = System.nanoTime();
+            if (begin >= stop) {
+                return;
+            }
+            boolean error;
+            try {
+                HttpResponse<Void> resp = http.send(request, HttpResponse.BodyHandlers.discarding());
+                error = resp.statusCode() >= 400;
+            } catch (IOException ex) {
+                error = true;
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (begin >= measure) {
+                recorder.record(op, System.nanoTime() - begin, error);
+            }
+        }
+    }
+
+    int operation(Random random) {
+        int value = random.nextInt(mix[mix.length - 1]);
+        for (int i = 0; i < mix.length; i++) {
+            if (value < mix[i]) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Request n of client
+     */
+    HttpRequest request(int op, int client, int n, Random random) {
+        String graph = NS + "client" + client;
+        switch (OPERATIONS[op]) {
+            case "update":
+                String update = String.format("INSERT DATA { GRAPH <%s> { <%sr%s> <%svalue> %s } }",
+                        graph, NS, n, NS, random.nextInt(1000));
+                return post("/sparql", "update=" + encode(update), "application/x-www-form-urlencoded");
+            case "gsp":
+                String uri = "/rdf-graph-store?graph=" + encode(graph + "/gsp");
+                if (random.nextInt(4) == 0) {
+                    String turtle = String.format("<%sr%s> <%slabel> \"client %s request %s\" .", NS, n, NS, client, n);
+                    return HttpRequest.newBuilder(URI.create(server + uri))
+                            .header("Content-Type", "text/turtle")
+                            .PUT(HttpRequest.BodyPublishers.ofString(turtle)).build();
+                }
+                return get(uri, "text/turtle");
+            case "template":
+                String query = TEMPLATES[random.nextInt(TEMPLATES.length)];
+                String transform = TRANSFORMS[random.nextInt(TRANSFORMS.length)];
+                return get("/template?query=" + encode(query) + "&transform=" + encode(transform), "text/html");
+            default:
+                return get("/sparql?query=" + encode(QUERIES[random.nextInt(QUERIES.length)]),
+                        "application/sparql-results+json, text/turtle;q=0.9");
+        }
+    }
+
+    HttpRequest get(String path, String accept) {
+        return HttpRequest.newBuilder(URI.create(server + path)).header("Accept", accept).GET().build();
+    }
+
+    HttpRequest post(String path, String body, String type) {
+        return HttpRequest.newBuilder(URI.create(server + path)).header("Content-Type", type)
+                .header("Accept", "application/sparql-results+json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    JSONObject report(Recorder[] recorders) {
+        JSONObject json = new JSONObject();
+        json.put("server", server);
+        json.put("clients", clients);
+        json.put("warmupSeconds", warmup / 1000.0);
+        json.put("durationSeconds", duration / 1000.0);
+        json.put("seed", seed);
+
+        long[] all = new long[0];
+        int errors = 0;
+        Map<String, JSONObject> operations = new LinkedHashMap<>();
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            long[] latency = new long[0];
+            int error = 0;
+            for (Recorder rec : recorders) {
+                latency = concat(latency, rec.latency[op], rec.count[op]);
+                error += rec.errors[op];
+            }
+            if (latency.length > 0) {
+                operations.put(OPERATIONS[op], stat(latency, error));
+            }
+            all = concat(all, latency, latency.length);
+            errors += error;
+        }
+        json.put("total", stat(all, errors));
+        json.put("operations", operations);
+        return json;
+    }
+
+    JSONObject stat(long[] latency, int errors) {
+        Arrays.sort(latency);
+        JSONObject json = new JSONObject();
+        json.put("requests", latency.length);
+        json.put("errors", errors);
+        json.put("throughput", latency.length / (duration / 1000.0));
+        JSONObject ms = new JSONObject();
+        if (latency.length > 0) {
+            ms.put("mean", Arrays.stream(latency).average().getAsDouble() / 1e6);
+            ms.put("p50", percentile(latency, 0.5) / 1e6);
+            ms.put("p95", percentile(latency, 0.95) / 1e6);
+            ms.put("p99", percentile(latency, 0.99) / 1e6);
+            ms.put("p999", percentile(latency, 0.999) / 1e6);
+            ms.put("max", latency[latency.length - 1] / 1e6);
+        }
+        json.put("latencyMs", ms);
+        return json;
+    }
+
+    /**
+     * Nearest rank percentile of sorted values
+     */
+    static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    static long[] concat(long[] a, long[] b, int length) {
+        long[] res = Arrays.copyOf(a, a.length + length);
+        System.arraycopy(b, 0, res, a.length, length);
+        return res;
+    }
+
+}
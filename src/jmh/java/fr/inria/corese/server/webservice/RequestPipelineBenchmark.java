@@ -0,0 +1,163 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.inria.corese.core.GraphStore;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.triple.parser.Context;
+import fr.inria.corese.core.sparql.triple.parser.Dataset;
+import fr.inria.corese.core.sparql.triple.parser.URLParam;
+import fr.inria.corese.server.webservice.message.TripleStoreLog;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Per request server overhead outside the query engine: dataset and context
+ * creation, URL parameters, profile completion, transformer engine
+ * construction, event manager and query log
+ * Run with the gc profiler to report allocation rate (gc.alloc.rate.norm is
+ * bytes per request)
+ * ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestPipelineBenchmark {
+
+    static final String URL = "http://localhost:8080/sparql";
+    static final String QUERY = "select * where { ?s ?p ?o } limit 10";
+    static final String DATA = "@prefix ex: <http://example.org/> . "
+            + "ex:a ex:p ex:b . ex:b ex:p ex:c . ex:c ex:q 1 .";
+
+    HttpServletRequest request;
+    SPARQLResult result;
+    List<String> defaut = Arrays.asList("http://example.org/g1");
+    List<String> named = Collections.emptyList();
+    List<String> mode = Arrays.asList("debug");
+    List<String> param = Arrays.asList("sv:key~value");
+    GraphStore graph;
+    QueryProcess exec;
+    Mappings map;
+    Context context;
+
+    @Setup
+    public void setup() throws Exception {
+        request = request();
+        result = new SPARQLResult(request);
+        Profile profile = new Profile(true);
+        Profile.setProfile(profile);
+        profile.initServer(SPARQLRestAPI.PROFILE_DEFAULT, null);
+        graph = GraphStore.create();
+        Load.create(graph).parse(new ByteArrayInputStream(DATA.getBytes(StandardCharsets.UTF_8)),
+                Load.TURTLE_FORMAT);
+        exec = QueryProcess.create(graph);
+        map = exec.query(QUERY);
+        context = new Context();
+        context.setService("/sparql");
+        context.setRemoteHost("127.0.0.1");
+        context.set(URLParam.URL, URL);
+        context.set(URLParam.QUERY, QUERY);
+    }
+
+    /**
+     * Minimal servlet request: URL, remote host, attributes
+     */
+    static HttpServletRequest request() {
+        Map<String, Object> attributes = new HashMap<>();
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getRequestURL":
+                            return new StringBuffer(URL);
+                        case "getRequestURI":
+                            return "/sparql";
+                        case "getContextPath":
+                            return "";
+                        case "getRemoteHost":
+                        case "getRemoteAddr":
+                            return "127.0.0.1";
+                        case "getAttribute":
+                            return attributes.get(args[0]);
+                        case "setAttribute":
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        case "getParameterMap":
+                            return Collections.emptyMap();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "request " + URL;
+                    }
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class) {
+                        return false;
+                    } else if (type == int.class) {
+                        return 0;
+                    } else if (type == long.class) {
+                        return 0L;
+                    }
+                    return null;
+                });
+    }
+
+    @Benchmark
+    public Dataset createDataset() {
+        return result.createDataset(request, defaut, named, null);
+    }
+
+    @Benchmark
+    public Dataset beforeParameter() {
+        Dataset ds = result.createDataset(request, defaut, named, null);
+        return result.beforeParameter(ds, null, null, param, mode, null);
+    }
+
+    @Benchmark
+    public Param completeProfile() throws Exception {
+        Param par = new Param("/template");
+        par.setTransform("st:turtle");
+        par.setUri("http://example.org/a");
+        par.setRequest(request);
+        return Profile.getProfile().complete(par);
+    }
+
+    @Benchmark
+    public Context transformerEngine() {
+        Param par = new Param("/template");
+        par.setTransform("st:turtle");
+        par.setParam("sv:key~value");
+        par.setRequest(request);
+        return new TransformerEngine(graph, Profile.getProfile().getProfileGraph(), par).getContext();
+    }
+
+    @Benchmark
+    public Context eventManager() {
+        EventManager.getSingleton().call(context);
+        return context;
+    }
+
+    @Benchmark
+    public Mappings tripleStoreLog() {
+        new TripleStoreLog(exec, context).log(map);
+        return map;
+    }
+
+}
@@ -0,0 +1,168 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import fr.inria.corese.core.GraphStore;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.api.ResultFormatDef;
+import fr.inria.corese.core.sparql.triple.parser.Dataset;
+
+/**
+ * Result serialization as done by SPARQLResult.getFormatSimple
+ * select results: xml, json, csv, tsv, markdown
+ * construct results: turtle, rdfxml, jsonld, ntriples, nquads, rdfc10,
+ * rdfc10sha384
+ * Shapes: iri (IRI only), literal (language tagged strings with escapes),
+ * mixed (typed literals and blank nodes)
+ * Reports results per second, bytes and rows per second (aux counters)
+ * Allocation per row: gc.alloc.rate.norm / rows
+ * ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResultFormatBenchmark implements ResultFormatDef {
+
+    static final String NS = "http://example.org/";
+    static final String SELECT = "select * where { ?s ?p ?o }";
+    static final String CONSTRUCT = "construct where { ?s ?p ?o }";
+
+    @Param({ "xml", "json", "csv", "tsv", "markdown", "turtle", "rdfxml", "jsonld", "ntriples", "nquads",
+            "rdfc10", "rdfc10sha384" })
+    String format;
+
+    @Param({ "100", "10000" })
+    int rows;
+
+    @Param({ "iri", "literal", "mixed" })
+    String shape;
+
+    SPARQLResult result = new SPARQLResult();
+    Dataset ds = new Dataset();
+    Mappings map;
+    int type;
+    // size of one serialization in bytes
+    long bytes;
+
+    /**
+     * Bytes and rows written, reported per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long bytes;
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        type = type(format);
+        GraphStore g = GraphStore.create(false);
+        File file = data();
+        try {
+            Load.create(g).parse(file.getAbsolutePath(), null, Load.NT_FORMAT);
+        } finally {
+            file.delete();
+        }
+        g.init();
+        QueryProcess exec = QueryProcess.create(g);
+        map = exec.query(isGraph(type) ? CONSTRUCT : SELECT);
+        bytes = result.getFormatSimple(map, ds, null, type).toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    File data() throws IOException {
+        File file = File.createTempFile("format", ".nt");
+        try (BufferedWriter w = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < rows; i++) {
+                String s = String.format("<%ss%s>", NS, i / 10);
+                switch (shape) {
+                    case "literal":
+                        w.write(String.format("%s <%slabel> \"label %s\\twith \\\"escape\\\" <&>\"@en .\n", s, NS, i));
+                        break;
+                    case "mixed":
+                        if (i % 2 == 0) {
+                            w.write(String.format("_:b%s <%svalue> \"%s\"^^<%s> .\n", i / 10, NS, i,
+                                    "http://www.w3.org/2001/XMLSchema#integer"));
+                        } else {
+                            w.write(String.format("%s <%sref> _:b%s .\n", s, NS, i % 50));
+                        }
+                        break;
+                    default:
+                        w.write(String.format("%s <%sp%s> <%so%s> .\n", s, NS, i % 20, NS, i));
+                }
+            }
+        }
+        return file;
+    }
+
+    static int type(String format) {
+        switch (format) {
+            case "xml":
+                return XML_FORMAT;
+            case "json":
+                return JSON_FORMAT;
+            case "csv":
+                return CSV_FORMAT;
+            case "tsv":
+                return TSV_FORMAT;
+            case "markdown":
+                return MARKDOWN_FORMAT;
+            case "turtle":
+                return TURTLE_FORMAT;
+            case "rdfxml":
+                return RDF_XML_FORMAT;
+            case "jsonld":
+                return JSONLD_FORMAT;
+            case "ntriples":
+                return NTRIPLES_FORMAT;
+            case "nquads":
+                return NQUADS_FORMAT;
+            case "rdfc10":
+                return RDFC10_FORMAT;
+            case "rdfc10sha384":
+                return RDFC10_SHA384_FORMAT;
+            default:
+                throw new IllegalArgumentException(format);
+        }
+    }
+
+    static boolean isGraph(int type) {
+        switch (type) {
+            case XML_FORMAT:
+            case JSON_FORMAT:
+            case CSV_FORMAT:
+            case TSV_FORMAT:
+            case MARKDOWN_FORMAT:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    @Benchmark
+    public String format(Counters counters) {
+        String res = result.getFormatSimple(map, ds, null, type).toString();
+        counters.bytes += bytes;
+        counters.rows += rows;
+        return res;
+    }
+
+}
@@ -0,0 +1,107 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Concurrent slow requests (handler blocked during delay ms, as a federated
+ * service call or a slow client) on a Jetty server with platform thread pool
+ * vs virtual threads
+ * Virtual mode falls back to platform threads before Java 21
+ * ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SlowConnectionBenchmark {
+
+    @Param({ "false", "true" })
+    boolean virtual;
+
+    @Param({ "1000" })
+    int connections;
+
+    @Param({ "100" })
+    int delay;
+
+    Server server;
+    HttpClient client;
+    URI uri;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        QueuedThreadPool pool = ServerThreads.createPool(virtual);
+        server = new Server(pool);
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        connector.setAcceptQueueSize(connections);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request base, HttpServletRequest request,
+                    HttpServletResponse response) throws IOException {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setContentType("text/plain");
+                response.getWriter().write("ok");
+                base.setHandled(true);
+            }
+        });
+        server.start();
+        uri = URI.create("http://localhost:" + connector.getLocalPort() + "/");
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    /**
+     * Time to answer all connections
+     */
+    @Benchmark
+    public int slowConnections() {
+        List<CompletableFuture<HttpResponse<String>>> list = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            list.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        int ok = 0;
+        for (CompletableFuture<HttpResponse<String>> f : list) {
+            if (f.join().statusCode() == 200) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+
+}
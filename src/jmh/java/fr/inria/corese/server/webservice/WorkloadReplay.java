@@ -0,0 +1,348 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Replay a workload recorded by WorkloadCapture (server option -capture)
+ * against a server, at the original pace (-speed 1), faster (-speed 10) or
+ * as fast as possible (-speed 0)
+ * Compare replayed requests with recorded ones: status, response size in
+ * bytes and latency, overall and per route
+ * Records of truncated bodies are skipped
+ * Responses are not compressed: recorded bytes are counted before compression
+ * Access key is not recorded, it is given with -access and added to requests
+ * of records marked with access: true
+ * Report is JSON: latency percentiles, mismatches, largest regressions
+ * ./gradlew replay -Pargs="-url http://localhost:8080 -speed 2 -o build/replay.json log/capture.log"
+ */
+public class WorkloadReplay {
+
+    // max number of mismatches and regressions in report
+    static final int MAX_REPORT = 100;
+    static final int MAX_TEXT = 300;
+
+    String server = "http://localhost:8080";
+    double speed = 1;
+    int clients = 64;
+    long timeout = 300;
+    // access key or null
+    String access;
+    HttpClient http;
+
+    /**
+     * Recorded request and its replay
+     */
+    static class Replay {
+        JSONObject record;
+        int status = -1;
+        long bytes = -1;
+        double ms = -1;
+        // delay between scheduled and actual send date
+        double lag;
+        String error;
+
+        Replay(JSONObject record) {
+            this.record = record;
+        }
+
+        double original() {
+            return record.optDouble("ms", -1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(new Option("h", "help", false, "print this message"));
+        options.addOption(new Option("url", "url", true, "URL of the server (default http://localhost:8080)"));
+        options.addOption(new Option("speed", "speed", true,
+                "pace factor: 1 original pace (default), 2 twice faster, 0 no pause"));
+        options.addOption(new Option("c", "clients", true, "max number of concurrent requests (default 64)"));
+        options.addOption(new Option("limit", "limit", true, "max number of replayed records"));
+        options.addOption(new Option("timeout", "timeout", true, "request timeout in s (default 300)"));
+        options.addOption(new Option("o", "output", true, "JSON report file, otherwise standard output"));
+        options.addOption(new Option("access", "access", true, "access key of requests recorded with a key"));
+        CommandLine cmd = new DefaultParser().parse(options, args);
+        if (cmd.hasOption("h") || cmd.getArgList().isEmpty()) {
+            new HelpFormatter().printHelp("WorkloadReplay [options] capture.log [capture.log.1.gz ...]", options);
+            return;
+        }
+
+        WorkloadReplay replay = new WorkloadReplay();
+        replay.server = cmd.getOptionValue("url", replay.server).replaceAll("/+$", "");
+        replay.speed = Double.parseDouble(cmd.getOptionValue("speed", "1"));
+        replay.clients = Integer.parseInt(cmd.getOptionValue("c", "64"));
+        replay.timeout = Long.parseLong(cmd.getOptionValue("timeout", "300"));
+        replay.access = cmd.getOptionValue("access");
+        int limit = Integer.parseInt(cmd.getOptionValue("limit", Integer.toString(Integer.MAX_VALUE)));
+
+        List<JSONObject> records = new ArrayList<>();
+        int skipped = 0;
+        for (String file : cmd.getArgList()) {
+            skipped += read(file, records);
+        }
+        records.sort(Comparator.comparingLong(r -> r.getLong("t")));
+        if (records.size() > limit) {
+            records = records.subList(0, limit);
+        }
+
+        List<Replay> list = replay.run(records);
+        JSONObject report = replay.report(list);
+        report.put("files", cmd.getArgList());
+        report.put("skipped", skipped);
+        if (cmd.hasOption("o")) {
+            Files.writeString(Path.of(cmd.getOptionValue("o")), report.toString(2));
+        } else {
+            System.out.println(report.toString(2));
+        }
+    }
+
+    /**
+     * Read records of capture file, possibly gzipped
+     * return number of skipped records
+     */
+    static int read(String file, List<JSONObject> records) throws IOException {
+        int skipped = 0;
+        InputStream in = new FileInputStream(file);
+        if (file.endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JSONObject json = new JSONObject(line);
+                if (json.optBoolean("truncated") || !json.has("t") || !json.has("path")) {
+                    skipped++;
+                } else {
+                    records.add(json);
+                }
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Send records at their recorded date relative to the first one, divided
+     * by speed
+     */
+    List<Replay> run(List<JSONObject> records) throws InterruptedException {
+        http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10)).build();
+        ExecutorService pool = Executors.newFixedThreadPool(clients, r -> {
+            Thread t = new Thread(r, "corese-replay");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Replay> list = new ArrayList<>();
+        long start = System.nanoTime();
+        long first = records.isEmpty() ? 0 : records.get(0).getLong("t");
+        for (JSONObject record : records) {
+            Replay replay = new Replay(record);
+            list.add(replay);
+            long due = start;
+            if (speed > 0) {
+                due += (long) ((record.getLong("t") - first) * 1_000_000 / speed);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            long scheduled = due;
+            pool.execute(() -> send(replay, scheduled));
+        }
+        pool.shutdown();
+        // each request ends within timeout
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        return list;
+    }
+
+    void send(Replay replay, long scheduled) {
+        JSONObject record = replay.record;
+        String qs = record.optString("qs", null);
+        String body = record.optString("body", null);
+        if (access != null && record.optBoolean("access")) {
+            String param = "access=" + URLEncoder.encode(access, StandardCharsets.UTF_8);
+            if (record.optString("ct").startsWith("application/x-www-form-urlencoded")) {
+                body = (body == null) ? param : body + "&" + param;
+            } else {
+                qs = (qs == null) ? param : qs + "&" + param;
+            }
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(server + record.getString("path")
+                + ((qs == null) ? "" : "?" + qs))).timeout(Duration.ofSeconds(timeout));
+        if (record.has("accept")) {
+            builder.header("Accept", record.getString("accept"));
+        }
+        // Accept-Encoding is not sent: bytes are compared before compression
+        if (record.has("ct")) {
+            builder.header("Content-Type", record.getString("ct"));
+        }
+        builder.method(record.optString("method", "GET"), (body == null) ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+
+        long begin = System.nanoTime();
+        replay.lag = Math.max(0, begin - scheduled) / 1e6;
+        try {
+            HttpResponse<InputStream> resp = http.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream in = resp.body()) {
+                replay.bytes = in.transferTo(OutputStream.nullOutputStream());
+            }
+            replay.status = resp.statusCode();
+        } catch (IOException ex) {
+            replay.error = ex.toString();
+        } catch (InterruptedException ex) {
+            replay.error = ex.toString();
+            Thread.currentThread().interrupt();
+        }
+        replay.ms = (System.nanoTime() - begin) / 1e6;
+    }
+
+    JSONObject report(List<Replay> list) {
+        JSONObject json = new JSONObject();
+        json.put("server", server);
+        json.put("speed", speed);
+        json.put("records", list.size());
+
+        List<Replay> done = new ArrayList<>();
+        JSONArray mismatches = new JSONArray();
+        int errors = 0, statusMismatch = 0, sizeMismatch = 0;
+        double lag = 0;
+        Map<String, List<Replay>> routes = new LinkedHashMap<>();
+        for (Replay replay : list) {
+            if (replay.error != null) {
+                errors++;
+                add(mismatches, replay, "error");
+                continue;
+            }
+            done.add(replay);
+            lag = Math.max(lag, replay.lag);
+            routes.computeIfAbsent(replay.record.optString("route", "other"), k -> new ArrayList<>()).add(replay);
+            int status = replay.record.optInt("status", -1);
+            long bytes = replay.record.optLong("bytes", -1);
+            if (status != replay.status) {
+                statusMismatch++;
+                add(mismatches, replay, "status");
+            } else if (status < 400 && bytes >= 0 && bytes != replay.bytes) {
+                sizeMismatch++;
+                add(mismatches, replay, "size");
+            }
+        }
+        json.put("replayed", done.size());
+        json.put("errors", errors);
+        json.put("statusMismatch", statusMismatch);
+        json.put("sizeMismatch", sizeMismatch);
+        json.put("maxLagMs", lag);
+        json.put("latencyMs", latency(done));
+
+        JSONObject byRoute = new JSONObject();
+        for (Map.Entry<String, List<Replay>> e : routes.entrySet()) {
+            byRoute.put(e.getKey(), latency(e.getValue()));
+        }
+        json.put("routes", byRoute);
+        json.put("mismatches", mismatches);
+
+        // largest latency increase, replay vs original
+        List<Replay> slower = new ArrayList<>(done);
+        slower.sort(Comparator.comparingDouble((Replay r) -> r.ms - r.original()).reversed());
+        JSONArray regressions = new JSONArray();
+        for (Replay replay : slower) {
+            if (regressions.length() >= MAX_REPORT || replay.ms <= replay.original()) {
+                break;
+            }
+            add(regressions, replay, "latency");
+        }
+        json.put("regressions", regressions);
+        return json;
+    }
+
+    /**
+     * Original and replay latency percentiles
+     */
+    JSONObject latency(List<Replay> list) {
+        long[] original = new long[list.size()];
+        long[] replay = new long[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            // microseconds
+            original[i] = (long) (1000 * list.get(i).original());
+            replay[i] = (long) (1000 * list.get(i).ms);
+        }
+        JSONObject json = new JSONObject();
+        json.put("requests", list.size());
+        json.put("original", percentiles(original));
+        json.put("replay", percentiles(replay));
+        return json;
+    }
+
+    JSONObject percentiles(long[] micros) {
+        Arrays.sort(micros);
+        JSONObject json = new JSONObject();
+        if (micros.length > 0) {
+            json.put("p50", LoadHarness.percentile(micros, 0.5) / 1e3);
+            json.put("p95", LoadHarness.percentile(micros, 0.95) / 1e3);
+            json.put("p99", LoadHarness.percentile(micros, 0.99) / 1e3);
+            json.put("p999", LoadHarness.percentile(micros, 0.999) / 1e3);
+            json.put("max", micros[micros.length - 1] / 1e3);
+        }
+        return json;
+    }
+
+    static void add(JSONArray array, Replay replay, String reason) {
+        if (array.length() >= MAX_REPORT) {
+            return;
+        }
+        JSONObject record = replay.record;
+        JSONObject json = new JSONObject();
+        json.put("reason", reason);
+        json.put("t", record.getLong("t"));
+        json.put("route", record.optString("route"));
+        json.put("path", record.getString("path"));
+        json.putOpt("request", abbreviate(record.optString("qs", record.optString("body", null))));
+        json.put("status", new JSONArray().put(record.optInt("status", -1)).put(replay.status));
+        json.put("bytes", new JSONArray().put(record.optLong("bytes", -1)).put(replay.bytes));
+        json.put("ms", new JSONArray().put(replay.original()).put(replay.ms));
+        json.putOpt("error", replay.error);
+        array.put(json);
+    }
+
+    static String abbreviate(String text) {
+        if (text == null || text.length() <= MAX_TEXT) {
+            return text;
+        }
+        return text.substring(0, MAX_TEXT) + "...";
+    }
+
+}
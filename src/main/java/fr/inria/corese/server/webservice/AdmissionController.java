@@ -0,0 +1,213 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Admission control of an endpoint: at most limit requests are processed at
+ * the same time, at most queue requests wait for a permit during at most
+ * wait ms, other requests are rejected at once with 503 and Retry-After
+ * Server options:
+ * -admit n[,name=m]* concurrency limit, per endpoint name limit
+ * -admitqueue n max number of waiting requests
+ * -admitwait ms max waiting time
+ * limit 0: no admission control
+ */
+public class AdmissionController {
+
+    private static final Logger logger = LogManager.getLogger(AdmissionController.class);
+    private static final String headerAccept = "Access-Control-Allow-Origin";
+
+    private static int defaultLimit = 0;
+    private static int maxQueue = 100;
+    private static long maxWait = 5000;
+    // endpoint name -> limit
+    private static Map<String, Integer> limitMap = new HashMap<>();
+    private static final Map<String, AdmissionController> controllers = new ConcurrentHashMap<>();
+
+    private String name;
+    private int limit;
+    private Semaphore semaphore;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Permit of one request, released by close()
+     */
+    class Permit implements AutoCloseable {
+        boolean closed = false;
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release();
+            }
+        }
+    }
+
+    AdmissionController(String name, int limit) {
+        this.name = name;
+        this.limit = limit;
+        if (limit > 0) {
+            // fair: first come first served
+            semaphore = new Semaphore(limit, true);
+        }
+    }
+
+    static AdmissionController get(TripleStore store) {
+        String name = (store == null || store.getName() == null) ? Manager.DEFAULT : store.getName();
+        return controllers.computeIfAbsent(name,
+                key -> new AdmissionController(key, limitMap.getOrDefault(key, defaultLimit)));
+    }
+
+    static Iterable<AdmissionController> getControllers() {
+        return controllers.values();
+    }
+
+    boolean isEnabled() {
+        return limit > 0;
+    }
+
+    /**
+     * Return permit or null when request is rejected
+     */
+    Permit admit() {
+        if (!isEnabled()) {
+            return new Permit();
+        }
+        if (semaphore.tryAcquire()) {
+            return granted(0);
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            rejected.incrementAndGet();
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            if (semaphore.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                return granted(System.nanoTime() - start);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        rejected.incrementAndGet();
+        return null;
+    }
+
+    Permit granted(long nanos) {
+        admitted.incrementAndGet();
+        active.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        return new Permit();
+    }
+
+    void release() {
+        if (isEnabled()) {
+            active.decrementAndGet();
+            semaphore.release();
+        }
+    }
+
+    /**
+     * 503 with Retry-After in seconds
+     */
+    Response reject() {
+        logger.warn("Endpoint " + name + " busy: request rejected, waiting: " + waiting.get());
+        long retry = Math.max(1, (maxWait + 999) / 1000);
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(headerAccept, "*")
+                .header("Retry-After", Long.toString(retry))
+                .entity("Endpoint busy, retry later").build();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getWaiting() {
+        return waiting.get();
+    }
+
+    int getActive() {
+        return active.get();
+    }
+
+    long getAdmitted() {
+        return admitted.get();
+    }
+
+    long getRejected() {
+        return rejected.get();
+    }
+
+    long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("endpoint", name);
+        json.put("limit", limit);
+        json.put("maxQueue", maxQueue);
+        json.put("maxWaitMs", maxWait);
+        json.put("active", active.get());
+        json.put("queueDepth", waiting.get());
+        json.put("admitted", admitted.get());
+        json.put("rejected", rejected.get());
+        json.put("waitTimeMs", waitNanos.get() / 1_000_000);
+        json.put("maxWaitTimeMs", maxWaitNanos.get() / 1_000_000);
+        return json;
+    }
+
+    static JSONObject listJSON() {
+        JSONObject json = new JSONObject();
+        for (AdmissionController ac : getControllers()) {
+            json.put(ac.getName(), ac.toJSON());
+        }
+        return json;
+    }
+
+    /**
+     * n[,name=m]*
+     */
+    static void setLimit(String value) {
+        for (String item : value.split(",")) {
+            String[] pair = item.split("=");
+            if (pair.length == 2) {
+                limitMap.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+            } else {
+                defaultLimit = Integer.parseInt(item.trim());
+            }
+        }
+        controllers.clear();
+    }
+
+    static void setMaxQueue(int n) {
+        maxQueue = n;
+    }
+
+    static void setMaxWait(long ms) {
+        maxWait = ms;
+    }
+
+}
@@ -0,0 +1,483 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fr.inria.corese.core.GraphStore;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.load.LoadException;
+
+/**
+ * Bulk load of line based N-Triples and N-Quads documents
+ * Lines are read by chunks, chunks are parsed in parallel on a fork-join pool,
+ * parsed chunks are merged into the graph in document order by the loading
+ * thread, graph indexes are built once at the end by graph init (or by
+ * queries evaluated during the load)
+ * Blank node labels are scoped to the document
+ * At most 2 * parallelism chunks are in memory
+ * Each parsed chunk is inserted by a Writer: the triple store inserts it under
+ * a short write lock hold, queries run between chunks and see the triples
+ * already loaded (in snapshot mode, the load is done on a copy published at
+ * the end)
+ * Server options:
+ * -bulkchunk n number of lines per chunk
+ * -bulkthreads n parallelism of the parser pool
+ */
+public class BulkLoader {
+
+    private static final Logger logger = LogManager.getLogger(BulkLoader.class);
+    static final long LOG_STEP = 1_000_000;
+
+    private static int chunkSize = 10_000;
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+    private static ForkJoinPool pool;
+    private static final Set<BulkLoader> running = ConcurrentHashMap.newKeySet();
+
+    private String path;
+    // named graph of triples, null: default graph
+    private String source;
+    private final Map<String, Node> blank = new HashMap<>();
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong triples = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private long start;
+    private long end;
+    private volatile boolean cancelled = false;
+
+    /**
+     * IRI, blank node or literal of a parsed line
+     */
+    static class Term {
+        static final int IRI = 0;
+        static final int BLANK = 1;
+        static final int LITERAL = 2;
+
+        int kind;
+        String label;
+        String datatype;
+        String lang;
+
+        Term(int kind, String label) {
+            this.kind = kind;
+            this.label = label;
+        }
+    }
+
+    /**
+     * Insertion of parsed triples into the graph
+     */
+    interface Writer {
+        void write(Runnable insert);
+    }
+
+    /**
+     * Count bytes read from the input
+     */
+    class CountInputStream extends FilterInputStream {
+
+        CountInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                bytes.incrementAndGet();
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytes.addAndGet(n);
+            }
+            return n;
+        }
+    }
+
+    BulkLoader(String path, String source) {
+        this.path = path;
+        this.source = source;
+    }
+
+    /**
+     * Line based format: .nt .nq, possibly gzipped
+     */
+    static boolean accept(String path) {
+        String name = path.toLowerCase();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name.endsWith(".nt") || name.endsWith(".nq");
+    }
+
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Load document into graph, graph is locked by caller
+     */
+    void load(GraphStore g) throws LoadException {
+        load(g, Runnable::run);
+    }
+
+    /**
+     * Load document into graph, each chunk is inserted by writer
+     */
+    void load(GraphStore g, Writer writer) throws LoadException {
+        start = System.currentTimeMillis();
+        running.add(this);
+        Deque<Future<List<Term[]>>> pending = new ArrayDeque<>();
+        long number = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(open(), StandardCharsets.UTF_8))) {
+            List<String> chunk = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null && !cancelled) {
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    submit(pending, chunk, number);
+                    number += chunk.size();
+                    chunk = new ArrayList<>(chunkSize);
+                    if (pending.size() >= 2 * parallelism) {
+                        merge(g, pending.poll(), writer);
+                    }
+                }
+            }
+            if (cancelled) {
+                throw new IOException("Load cancelled");
+            }
+            if (!chunk.isEmpty()) {
+                submit(pending, chunk, number);
+            }
+            while (!pending.isEmpty()) {
+                merge(g, pending.poll(), writer);
+            }
+        } catch (IOException | InterruptedException | ExecutionException ex) {
+            for (Future<List<Term[]>> f : pending) {
+                f.cancel(true);
+            }
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Exception cause = (ex instanceof ExecutionException && ex.getCause() instanceof Exception)
+                    ? (Exception) ex.getCause()
+                    : ex;
+            throw LoadException.create(cause, path);
+        } finally {
+            // graph indexes are built once
+            writer.write(g::init);
+            end = System.currentTimeMillis();
+            running.remove(this);
+        }
+        logger.info(String.format("Bulk load %s: %s triples in %s ms", path, triples.get(), getTime()));
+    }
+
+    InputStream open() throws IOException {
+        InputStream in;
+        if (path.startsWith("http://") || path.startsWith("https://") || path.startsWith("file:")) {
+            in = new URL(path).openStream();
+        } else {
+            in = new FileInputStream(path);
+        }
+        in = new CountInputStream(in);
+        if (path.toLowerCase().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        return in;
+    }
+
+    void submit(Deque<Future<List<Term[]>>> pending, List<String> chunk, long number) {
+        pending.add(getPool().submit(() -> parse(chunk, number)));
+    }
+
+    /**
+     * Parse chunk of lines, number is the line number of first line - 1
+     */
+    List<Term[]> parse(List<String> chunk, long number) {
+        List<Term[]> list = new ArrayList<>(chunk.size());
+        for (String line : chunk) {
+            number++;
+            Term[] quad = parse(line, number);
+            if (quad != null) {
+                list.add(quad);
+            }
+        }
+        lines.addAndGet(chunk.size());
+        return list;
+    }
+
+    /**
+     * s p o [g] .
+     * Return null for empty and comment line
+     */
+    Term[] parse(String line, long number) {
+        int[] pos = { skip(line, 0) };
+        if (pos[0] == line.length() || line.charAt(pos[0]) == '#') {
+            return null;
+        }
+        Term[] quad = new Term[4];
+        for (int i = 0; i < 4; i++) {
+            if (pos[0] >= line.length() || line.charAt(pos[0]) == '.') {
+                break;
+            }
+            quad[i] = term(line, pos, number);
+            pos[0] = skip(line, pos[0]);
+        }
+        if (quad[2] == null || pos[0] >= line.length() || line.charAt(pos[0]) != '.') {
+            throw new IllegalArgumentException(error("incorrect statement", number));
+        }
+        return quad;
+    }
+
+    Term term(String line, int[] pos, long number) {
+        int i = pos[0];
+        char c = line.charAt(i);
+        if (c == '<') {
+            int end = line.indexOf('>', i);
+            if (end < 0) {
+                throw new IllegalArgumentException(error("unterminated IRI", number));
+            }
+            pos[0] = end + 1;
+            return new Term(Term.IRI, unescape(line, i + 1, end));
+        }
+        if (c == '_' && line.startsWith("_:", i)) {
+            int end = i + 2;
+            while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                end++;
+            }
+            if (line.charAt(end - 1) == '.') {
+                // _:b.
+                end--;
+            }
+            pos[0] = end;
+            return new Term(Term.BLANK, line.substring(i + 2, end));
+        }
+        if (c == '"') {
+            int end = i + 1;
+            while (end < line.length() && line.charAt(end) != '"') {
+                end += (line.charAt(end) == '\\') ? 2 : 1;
+            }
+            if (end >= line.length()) {
+                throw new IllegalArgumentException(error("unterminated literal", number));
+            }
+            Term t = new Term(Term.LITERAL, unescape(line, i + 1, end));
+            end++;
+            if (end < line.length() && line.charAt(end) == '@') {
+                int e = end + 1;
+                while (e < line.length() && (Character.isLetterOrDigit(line.charAt(e)) || line.charAt(e) == '-')) {
+                    e++;
+                }
+                t.lang = line.substring(end + 1, e);
+                end = e;
+            } else if (line.startsWith("^^<", end)) {
+                int e = line.indexOf('>', end);
+                if (e < 0) {
+                    throw new IllegalArgumentException(error("unterminated datatype", number));
+                }
+                t.datatype = unescape(line, end + 3, e);
+                end = e + 1;
+            }
+            pos[0] = end;
+            return t;
+        }
+        throw new IllegalArgumentException(error("unexpected character " + c, number));
+    }
+
+    static int skip(String line, int i) {
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * ECHAR and UCHAR escapes
+     */
+    static String unescape(String str, int start, int end) {
+        int k = str.indexOf('\\', start);
+        if (k < 0 || k >= end) {
+            return str.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                sb.append(c);
+                continue;
+            }
+            char e = str.charAt(++i);
+            switch (e) {
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    sb.appendCodePoint(Integer.parseInt(str.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                case 'U':
+                    sb.appendCodePoint(Integer.parseInt(str.substring(i + 1, i + 9), 16));
+                    i += 8;
+                    break;
+                default:
+                    // \" \' \\
+                    sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    String error(String mes, long number) {
+        return String.format("%s line %s: %s", path, number, mes);
+    }
+
+    /**
+     * Insert parsed chunk into graph, in the loading thread
+     */
+    void merge(GraphStore g, Future<List<Term[]>> future, Writer writer)
+            throws InterruptedException, ExecutionException {
+        List<Term[]> list = future.get();
+        writer.write(() -> insert(g, list));
+    }
+
+    void insert(GraphStore g, List<Term[]> list) {
+        Node defaut = (source == null) ? g.addDefaultGraphNode() : g.addGraph(source);
+        for (Term[] quad : list) {
+            Node gn = (quad[3] == null) ? defaut : g.addGraph(quad[3].label);
+            g.addEdge(gn, node(g, quad[0]), g.addProperty(quad[1].label), node(g, quad[2]));
+            if (triples.incrementAndGet() % LOG_STEP == 0) {
+                logger.info(String.format("Bulk load %s: %s triples, %s triples/s", path, triples.get(), getRate()));
+            }
+        }
+    }
+
+    Node node(GraphStore g, Term t) {
+        switch (t.kind) {
+            case Term.IRI:
+                return g.addResource(t.label);
+            case Term.BLANK:
+                return blank.computeIfAbsent(t.label, key -> g.addBlank(g.newBlankID()));
+            default:
+                return g.addLiteral(t.label, t.datatype, t.lang);
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    long getLines() {
+        return lines.get();
+    }
+
+    long getTriples() {
+        return triples.get();
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Elapsed time in ms
+     */
+    long getTime() {
+        if (start == 0) {
+            return 0;
+        }
+        return ((end == 0) ? System.currentTimeMillis() : end) - start;
+    }
+
+    long getRate() {
+        long time = getTime();
+        return (time == 0) ? 0 : triples.get() * 1000 / time;
+    }
+
+    JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("path", path);
+        json.put("lines", getLines());
+        json.put("triples", getTriples());
+        json.put("bytes", getBytes());
+        json.put("timeMs", getTime());
+        json.put("triplesPerSecond", getRate());
+        json.put("parallelism", parallelism);
+        json.put("chunk", chunkSize);
+        return json;
+    }
+
+    /**
+     * Progress of running bulk loads
+     */
+    static JSONArray listJSON() {
+        JSONArray array = new JSONArray();
+        for (BulkLoader loader : running) {
+            array.put(loader.toJSON());
+        }
+        return array;
+    }
+
+    static void setChunkSize(int n) {
+        chunkSize = n;
+    }
+
+    static synchronized void setParallelism(int n) {
+        parallelism = n;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package fr.inria.corese.server.webservice;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Strong entity tag of a response computed from the graph version of the
+ * TripleStore and the request fingerprint (URL, query, format)
+ * The same request on the same graph version has the same result:
+ * If-None-Match is answered with 304 Not Modified without running the query
+ * Graph versions are unique among triple stores, hence the tag also
+ * identifies the store
+ */
+public class ETag {
+
+    static final String HEADER = "ETag";
+    static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String headerAccept = "Access-Control-Allow-Origin";
+
+    private ETag() {
+    }
+
+    /**
+     * "version-digest"
+     */
+    static String create(TripleStore store, Object... fingerprint) {
+        return create(store.getVersion(), fingerprint);
+    }
+
+    /**
+     * version: graph version the response is computed from
+     */
+    static String create(long version, Object... fingerprint) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (Object obj : fingerprint) {
+                md.update(String.valueOf(obj).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            byte[] digest = md.digest();
+            StringBuilder sb = new StringBuilder("\"");
+            sb.append(Long.toHexString(version)).append("-");
+            for (int i = 0; i < 12; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.append("\"").toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is mandatory in every JVM
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * If-None-Match: "a", W/"b" or *
+     * Weak comparison as specified for If-None-Match
+     */
+    static boolean match(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Response notModified(String etag) {
+        return Response.status(Response.Status.NOT_MODIFIED)
+                .header(headerAccept, "*")
+                .header(HEADER, etag)
+                .build();
+    }
+
+}
@@ -9,6 +9,7 @@ import static jakarta.ws.rs.core.MediaType.APPLICATION_FORM_URLENCODED_TYPE;
 import java.io.File;
 import java.net.URI;
 import java.net.URL;
+import java.util.EnumSet;
 
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
@@ -24,8 +25,14 @@ import org.apache.commons.vfs.FileObject;
 import org.apache.commons.vfs.VFS;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
@@ -34,8 +41,10 @@ import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.server.handler.ResourceHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.compression.DeflaterPool;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.glassfish.jersey.server.ResourceConfig;
@@ -48,6 +57,7 @@ import fr.inria.corese.core.util.Parameter;
 import fr.inria.corese.core.util.Property;
 import fr.inria.corese.core.sparql.triple.parser.Access;
 import fr.inria.corese.core.sparql.triple.parser.Constant;
+import jakarta.servlet.DispatcherType;
 import jakarta.ws.rs.ApplicationPath;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
@@ -89,6 +99,28 @@ public class EmbeddedJettyServer extends ResourceConfig {
     private static int portSsl = 8443;
     private static String keystore, password;
 
+    // HTTP/2: h2 with ALPN on SSL connector, h2c on plain connector
+    private static boolean http2 = false;
+    private static int h2Streams = 128;
+    // flow control window in bytes, 0: jetty default
+    private static int h2Window = 0;
+    // request handling on virtual threads when JVM supports them
+    private static boolean virtualThreads = false;
+
+    // options for response compression, negotiated with Accept-Encoding
+    // compress responses of at least gzipMinSize bytes, -1: no compression
+    // opt-in with -gzip: responses are not compressed by default
+    private static int gzipMinSize = -1;
+    // deflater level 1 (fast) .. 9 (small), -1: java default
+    private static int gzipLevel = -1;
+    private static String[] gzipTypes = {
+            "application/sparql-results+xml", "application/sparql-results+json",
+            "text/csv", "text/tab-separated-values",
+            "text/turtle", "application/n-triples", "application/n-quads", "application/trig",
+            "application/rdf+xml", "application/ld+json",
+            "application/json", "application/xml", "text/xml", "text/html", "text/plain",
+            "text/markdown", "text/css", "application/javascript" };
+
     public static URI resourceURI;
     // Homepage webapp/demo_new.html call javascript js/server.js
     // server.js insert HTML content from webapp/html
@@ -140,6 +172,58 @@ public class EmbeddedJettyServer extends ResourceConfig {
         Option rdfstar = new Option("rdfstar", "rdfstar", false, "RDF*");
         Option binding = new Option("binding", "binding", true, "binding values | filter");
         Option init = new Option("init", "init", true, "config file");
+        Option stream = new Option("stream", "stream", true,
+                "stream select/ask results with at least n rows (0: always)");
+        Option cache = new Option("cache", "cache", true, "query result cache size in MB (0: no cache)");
+        Option planCache = new Option("plancache", "plancache", true,
+                "max number of compiled queries cached per endpoint (default 0: no cache)");
+        Option timeout = new Option("timeout", "timeout", true, "default query timeout in ms (0: no timeout)");
+        Option timeoutMax = new Option("timeoutmax", "timeoutmax", true, "max query timeout in ms");
+        Option timeoutKey = new Option("timeoutkey", "timeoutkey", true,
+                "max query timeout in ms of request with access key");
+        Option admit = new Option("admit", "admit", true,
+                "max number of concurrent requests per endpoint: n[,name=m]* (0: no limit)");
+        Option admitQueue = new Option("admitqueue", "admitqueue", true, "max number of waiting requests per endpoint");
+        Option admitWait = new Option("admitwait", "admitwait", true, "max waiting time of request in ms");
+        Option lockTimeout = new Option("locktimeout", "locktimeout", true,
+                "max waiting time in ms of graph read/write lock (0: no limit)");
+        Option lockFair = new Option("lockfair", "lockfair", false,
+                "graph lock granted in arrival order instead of writer preference");
+        Option snapshotOpt = new Option("snapshot", "snapshot", false,
+                "queries read a snapshot of the graph, updates are applied on a copy of the graph");
+        Option batchOpt = new Option("batch", "batch", true,
+                "group up to n concurrent INSERT DATA/DELETE DATA updates in one batch");
+        Option bulkChunkOpt = new Option("bulkchunk", "bulkchunk", true, "number of lines per chunk of bulk load");
+        Option bulkThreadsOpt = new Option("bulkthreads", "bulkthreads", true,
+                "number of parser threads of bulk load");
+        Option loadThreadsOpt = new Option("loadthreads", "loadthreads", true,
+                "number of load jobs running at the same time");
+        Option loadQueueOpt = new Option("loadqueue", "loadqueue", true, "max number of pending load jobs");
+        Option virtualOpt = new Option("virtual", "virtual", false,
+                "request handling on virtual threads (Java 21)");
+        Option virtualQueryOpt = new Option("virtualquery", "virtualquery", false,
+                "query evaluation on virtual threads, except -querythreads pools (Java 21)");
+        Option queryThreadsOpt = new Option("querythreads", "querythreads", true,
+                "query evaluation threads n[,endpoint=m]* (default: processors, 0: on request thread)");
+        Option queryQueueOpt = new Option("queryqueue", "queryqueue", true,
+                "max number of queries waiting for an evaluation thread");
+        Option queryRejectOpt = new Option("queryreject", "queryreject", true,
+                "policy when query queue is full: abort|caller|oldest");
+        Option slowQueryOpt = new Option("slowquery", "slowquery", true,
+                "log /sparql and /template requests of at least n ms in slow query log");
+        Option captureOpt = new Option("capture", "capture", true,
+                "record /sparql, /template and /service requests for replay, sampling rate in ]0,1]");
+        Option http2Opt = new Option("http2", "http2", false, "HTTP/2: h2 on SSL connector, h2c on plain connector");
+        Option h2StreamsOpt = new Option("h2streams", "h2streams", true,
+                "HTTP/2 max concurrent streams per connection");
+        Option h2WindowOpt = new Option("h2window", "h2window", true, "HTTP/2 flow control window in bytes");
+        Option batchWaitOpt = new Option("batchwait", "batchwait", true,
+                "max time in ms to collect a batch of updates");
+        Option gzipOpt = new Option("gzip", "gzip", true,
+                "compress responses of at least n bytes when client accepts it (default: no compression)");
+        Option gzipLevelOpt = new Option("gziplevel", "gziplevel", true, "compression level 1..9");
+        Option gzipTypesOpt = new Option("gziptypes", "gziptypes", true,
+                "comma separated list of mime types to be compressed");
 
         Option sslOpt = new Option("ssl", "ssl", false, "enable ssl connection ?");
         Option portSslOpt = new Option("pssl", "pssl", true, "port of ssl connection");
@@ -167,6 +251,37 @@ public class EmbeddedJettyServer extends ResourceConfig {
         options.addOption(init);
         options.addOption(reentrant);
         options.addOption(rdfstar);
+        options.addOption(stream);
+        options.addOption(cache);
+        options.addOption(planCache);
+        options.addOption(timeout);
+        options.addOption(timeoutMax);
+        options.addOption(timeoutKey);
+        options.addOption(admit);
+        options.addOption(admitQueue);
+        options.addOption(admitWait);
+        options.addOption(lockTimeout);
+        options.addOption(lockFair);
+        options.addOption(snapshotOpt);
+        options.addOption(batchOpt);
+        options.addOption(batchWaitOpt);
+        options.addOption(bulkChunkOpt);
+        options.addOption(queryThreadsOpt);
+        options.addOption(queryQueueOpt);
+        options.addOption(queryRejectOpt);
+        options.addOption(slowQueryOpt);
+        options.addOption(captureOpt);
+        options.addOption(bulkThreadsOpt);
+        options.addOption(loadThreadsOpt);
+        options.addOption(loadQueueOpt);
+        options.addOption(virtualOpt);
+        options.addOption(virtualQueryOpt);
+        options.addOption(http2Opt);
+        options.addOption(h2StreamsOpt);
+        options.addOption(h2WindowOpt);
+        options.addOption(gzipOpt);
+        options.addOption(gzipLevelOpt);
+        options.addOption(gzipTypesOpt);
 
         options.addOption(sslOpt);
         options.addOption(portSslOpt);
@@ -296,6 +411,103 @@ public class EmbeddedJettyServer extends ResourceConfig {
                     CompileService.setBinding(prop);
                 }
             }
+            if (cmd.hasOption("stream")) {
+                int threshold = Integer.parseInt(cmd.getOptionValue("stream"));
+                logger.info("stream results with at least " + threshold + " rows");
+                StreamingResult.setThreshold(threshold);
+            }
+            if (cmd.hasOption("cache")) {
+                long size = Long.parseLong(cmd.getOptionValue("cache"));
+                logger.info("query result cache: " + size + " MB");
+                QueryResultCache.setSingleton(new QueryResultCache(size * 1024 * 1024));
+            }
+            if (cmd.hasOption("plancache")) {
+                PlanCache.setDefaultSize(Integer.parseInt(cmd.getOptionValue("plancache")));
+            }
+            if (cmd.hasOption("timeout")) {
+                QueryTimeout.setDefaultTimeout(Long.parseLong(cmd.getOptionValue("timeout")));
+            }
+            if (cmd.hasOption("timeoutmax")) {
+                QueryTimeout.setMaxTimeout(Long.parseLong(cmd.getOptionValue("timeoutmax")));
+            }
+            if (cmd.hasOption("timeoutkey")) {
+                QueryTimeout.setMaxTimeoutKey(Long.parseLong(cmd.getOptionValue("timeoutkey")));
+            }
+            if (cmd.hasOption("admit")) {
+                AdmissionController.setLimit(cmd.getOptionValue("admit"));
+            }
+            if (cmd.hasOption("admitqueue")) {
+                AdmissionController.setMaxQueue(Integer.parseInt(cmd.getOptionValue("admitqueue")));
+            }
+            if (cmd.hasOption("admitwait")) {
+                AdmissionController.setMaxWait(Long.parseLong(cmd.getOptionValue("admitwait")));
+            }
+            if (cmd.hasOption("locktimeout")) {
+                GraphLock.setTimeout(Long.parseLong(cmd.getOptionValue("locktimeout")));
+            }
+            if (cmd.hasOption("lockfair")) {
+                GraphLock.setFair(true);
+            }
+            if (cmd.hasOption("snapshot")) {
+                TripleStore.setSnapshotMode(true);
+            }
+            if (cmd.hasOption("batch")) {
+                UpdateBatcher.setSize(Integer.parseInt(cmd.getOptionValue("batch")));
+            }
+            if (cmd.hasOption("batchwait")) {
+                UpdateBatcher.setWindow(Long.parseLong(cmd.getOptionValue("batchwait")));
+            }
+            if (cmd.hasOption("bulkchunk")) {
+                BulkLoader.setChunkSize(Integer.parseInt(cmd.getOptionValue("bulkchunk")));
+            }
+            if (cmd.hasOption("bulkthreads")) {
+                BulkLoader.setParallelism(Integer.parseInt(cmd.getOptionValue("bulkthreads")));
+            }
+            if (cmd.hasOption("loadthreads")) {
+                LoadJob.setThreads(Integer.parseInt(cmd.getOptionValue("loadthreads")));
+            }
+            if (cmd.hasOption("loadqueue")) {
+                LoadJob.setMaxQueue(Integer.parseInt(cmd.getOptionValue("loadqueue")));
+            }
+            if (cmd.hasOption("querythreads")) {
+                QueryExecutor.setThreads(cmd.getOptionValue("querythreads"));
+            }
+            if (cmd.hasOption("queryqueue")) {
+                QueryExecutor.setMaxQueue(Integer.parseInt(cmd.getOptionValue("queryqueue")));
+            }
+            if (cmd.hasOption("queryreject")) {
+                QueryExecutor.setPolicy(cmd.getOptionValue("queryreject"));
+            }
+            if (cmd.hasOption("slowquery")) {
+                SlowQueryLog.setThreshold(Long.parseLong(cmd.getOptionValue("slowquery")));
+            }
+            if (cmd.hasOption("capture")) {
+                WorkloadCapture.setRate(Double.parseDouble(cmd.getOptionValue("capture")));
+            }
+            if (cmd.hasOption("http2")) {
+                http2 = true;
+            }
+            if (cmd.hasOption("h2streams")) {
+                h2Streams = Integer.parseInt(cmd.getOptionValue("h2streams"));
+            }
+            if (cmd.hasOption("h2window")) {
+                h2Window = Integer.parseInt(cmd.getOptionValue("h2window"));
+            }
+            if (cmd.hasOption("virtual")) {
+                virtualThreads = true;
+            }
+            if (cmd.hasOption("virtualquery")) {
+                ServerThreads.setVirtualQuery();
+            }
+            if (cmd.hasOption("gzip")) {
+                gzipMinSize = Integer.parseInt(cmd.getOptionValue("gzip"));
+            }
+            if (cmd.hasOption("gziplevel")) {
+                gzipLevel = Integer.parseInt(cmd.getOptionValue("gziplevel"));
+            }
+            if (cmd.hasOption("gziptypes")) {
+                gzipTypes = cmd.getOptionValue("gziptypes").split(",");
+            }
             if (cmd.hasOption("re")) {
                 logger.info("Reentrant query");
                 QueryProcess.setOverwrite(true);
@@ -309,9 +521,16 @@ public class EmbeddedJettyServer extends ResourceConfig {
             logger.info("Corese/KGRAM endpoint started on http://localhost:" + port + "/sparql");
 
             // Server server = JettyHttpContainerFactory.createServer(baseUri, false);
-            Server server = new Server(port);
+            Server server = new Server(ServerThreads.createPool(virtualThreads));
+            HttpConfiguration httpConfiguration = new HttpConfiguration();
+            ServerConnector http = http2
+                    ? new ServerConnector(server, new HttpConnectionFactory(httpConfiguration),
+                            h2(new HTTP2CServerConnectionFactory(httpConfiguration)))
+                    : new ServerConnector(server);
+            http.setPort(port);
+            server.addConnector(http);
             ContextHandlerCollection root = new ContextHandlerCollection();
-            server.setHandler(root);
+            server.setHandler(compress(root));
 
             // Configure the ResourceHandler. Setting the resource base indicates where the
             // files should be served out of.
@@ -348,9 +567,21 @@ public class EmbeddedJettyServer extends ResourceConfig {
                 sslContextFactory.setKeyManagerPassword(password);
                 //
                 HttpConfiguration httpsConfiguration = new HttpConfiguration();
-                ServerConnector https = new ServerConnector(server,
-                        new SslConnectionFactory(sslContextFactory, HttpVersion.HTTP_1_1.asString()),
-                        new HttpConnectionFactory(httpsConfiguration));
+                ServerConnector https;
+                if (http2) {
+                    // h2 negotiated by ALPN, http/1.1 otherwise
+                    sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+                    HttpConnectionFactory http11 = new HttpConnectionFactory(httpsConfiguration);
+                    ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+                    alpn.setDefaultProtocol(http11.getProtocol());
+                    https = new ServerConnector(server,
+                            new SslConnectionFactory(sslContextFactory, alpn.getProtocol()),
+                            alpn, h2(new HTTP2ServerConnectionFactory(httpsConfiguration)), http11);
+                } else {
+                    https = new ServerConnector(server,
+                            new SslConnectionFactory(sslContextFactory, HttpVersion.HTTP_1_1.asString()),
+                            new HttpConnectionFactory(httpsConfiguration));
+                }
                 https.setPort(portSsl);
                 server.addConnector(https);
 
@@ -371,11 +602,25 @@ public class EmbeddedJettyServer extends ResourceConfig {
                     Tutorial.class, ServiceOnline.class, ServiceOnline2.class,
                     Transformer.class,
                     Processor.class,
-                    Agent.class);
+                    Agent.class,
+                    Metrics.class);
             ServletContainer servletContainer = new ServletContainer(config);
             ServletHolder servletHolder = new ServletHolder(servletContainer);
+            // SPARQL queries are evaluated by QueryExecutor with suspended response
+            servletHolder.setAsyncSupported(true);
             ServletContextHandler servletContextHandler = new ServletContextHandler(root, "/*");
             servletContextHandler.addServlet(servletHolder, "/*");
+            // request count, latency and errors exposed at /metrics
+            servletContextHandler.addFilter(RequestMetrics.class, "/*", EnumSet.of(DispatcherType.REQUEST))
+                    .setAsyncSupported(true);
+            if (WorkloadCapture.isEnabled()) {
+                // record requests in capture log for replay
+                servletContextHandler.addFilter(WorkloadCapture.class, "/*", EnumSet.of(DispatcherType.REQUEST))
+                        .setAsyncSupported(true);
+            }
+            // release resources leased by a request when its response is written
+            servletContextHandler.addFilter(RequestResources.class, "/*", EnumSet.of(DispatcherType.REQUEST))
+                    .setAsyncSupported(true);
 
             server.start();
             // server initialization
@@ -408,16 +653,7 @@ public class EmbeddedJettyServer extends ResourceConfig {
             logger.info("after localhost uri");
 
             if (dataPaths != null) {
-                for (String dataPath : dataPaths) {
-                    String[] lp = dataPath.split(";");
-                    for (String p : lp) {
-                        formData.clear();
-                        formData.add("remote_path", p);
-                        target.path("sparql").path("load")
-                                .request(APPLICATION_FORM_URLENCODED_TYPE)
-                                .post(Entity.form(formData));
-                    }
-                }
+                load(dataPaths);
             }
 
             Manager.getManager().init();
@@ -428,6 +664,59 @@ public class EmbeddedJettyServer extends ResourceConfig {
         }
     }
 
+    /**
+     * HTTP/2 settings: max concurrent streams per connection, flow control
+     * window of streams and of connection
+     */
+    static <T extends AbstractHTTP2ServerConnectionFactory> T h2(T factory) {
+        factory.setMaxConcurrentStreams(h2Streams);
+        if (h2Window > 0) {
+            factory.setInitialStreamRecvWindow(h2Window);
+            factory.setInitialSessionRecvWindow(h2Window);
+        }
+        return factory;
+    }
+
+    /**
+     * Load data files one after the other in order, as load jobs run by the
+     * main thread: progress is reported by /sparql/load/job
+     * Return at the end of the loads, before server initialization
+     */
+    static void load(String[] dataPaths) {
+        TripleStore store = SPARQLRestAPI.getTripleStore();
+        if (store.isProtect()) {
+            return;
+        }
+        for (String dataPath : dataPaths) {
+            for (String p : dataPath.split(";")) {
+                LoadJob.execute(store, p, null);
+            }
+        }
+    }
+
+    /**
+     * Compress responses when client sends Accept-Encoding: gzip, with server
+     * option -gzip n only
+     * Streamed results are compressed as well: each flush of the result writer
+     * flushes the deflater so that client receives data as it is produced
+     */
+    static Handler compress(ContextHandlerCollection root) {
+        if (gzipMinSize < 0) {
+            return root;
+        }
+        GzipHandler gzip = new GzipHandler();
+        gzip.setMinGzipSize(gzipMinSize);
+        gzip.setIncludedMethods("GET", "POST");
+        gzip.setIncludedMimeTypes(gzipTypes);
+        gzip.setSyncFlush(true);
+        if (gzipLevel >= 0) {
+            gzip.setDeflaterPool(new DeflaterPool(gzip.getDeflaterPoolCapacity(), gzipLevel, true));
+        }
+        gzip.setHandler(root);
+        logger.info("Compression: gzip min size = " + gzipMinSize + " level = " + gzipLevel);
+        return gzip;
+    }
+
     static void protect() {
         SPARQLRestAPI.isProtected = true;
         Access.protect();
@@ -6,13 +6,21 @@ import fr.inria.corese.core.sparql.datatype.DatatypeMap;
 import fr.inria.corese.core.sparql.triple.function.term.Binding;
 import fr.inria.corese.core.sparql.triple.parser.Context;
 import fr.inria.corese.core.sparql.triple.parser.NSManager;
-import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Server Event Manager
  * Record in a map of maps, information about server service call 
+ * Counters are bounded: the most frequent services, hosts and host prefixes
+ * are counted (HeavyHitters), server calls count without lock
+ * LDScript map view ?staticEventManagerMap is rebuilt from counters every
+ * REFRESH ms by a background task when there are new calls, it is not rebuilt
+ * by server calls
  * 
  * @author Olivier Corby, Wimmics INRIA I3S, 2019
  */
@@ -24,11 +32,20 @@ public class EventManager {
     static final String host  = NSManager.STL+"host";
     static final String hostLite  = NSManager.STL+"hostlite";
     static final String template = "/template";
+    // max number of counted services, hosts and host prefixes
+    static int CAPACITY = 1000;
+    // delay in ms between two refresh of map view
+    static long REFRESH = 1000;
     private static EventManager singleton;
+    private static ScheduledExecutorService refresher;
     
     // service|profile -> count
-    private CoreseMap globalMap, countMap, dateMap, hostMap, hostLiteMap;
-    HashMap <String, IDatatype> ipmap;
+    private CoreseMap globalMap;
+    private volatile CoreseMap countMap, dateMap, hostMap, hostLiteMap;
+    private HeavyHitters services, hosts, hostLites;
+    // new calls since last refresh
+    private volatile boolean changed = false;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
     
     static {
         setSingleton(new EventManager());
@@ -39,13 +56,15 @@ public class EventManager {
     }
     
     void init() {
+        services = new HeavyHitters(CAPACITY);
+        hosts = new HeavyHitters(CAPACITY);
+        // aggregate IP address that differ only by last number
+        hostLites = new HeavyHitters(CAPACITY);
         setCountMap(map());
         setDateMap(map());
         setHostMap(map());
-        // aggregate IP address that differ only by last number
         hostLiteMap = map();        
         globalMap = map();
-        ipmap = new HashMap<>();
         
         DatatypeMap.setPublicDatatypeValue(globalMap);
         Binding.setStaticVariable("?staticEventManagerMap", globalMap);
@@ -54,6 +73,27 @@ public class EventManager {
         globalMap.set(date,  getDateMap());
         globalMap.set(host,  getHostMap());
         globalMap.set(hostLite,  hostLiteMap);
+        startRefresh();
+    }
+
+    static synchronized void startRefresh() {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "corese-event-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    EventManager em = getSingleton();
+                    if (em != null) {
+                        em.refresh(false);
+                    }
+                } catch (RuntimeException ex) {
+                    logger.error(ex.getMessage());
+                }
+            }, REFRESH, REFRESH, TimeUnit.MILLISECONDS);
+        }
     }
     
     CoreseMap map () {
@@ -63,17 +103,16 @@ public class EventManager {
     /**
      * One server call
      */
-    synchronized void call(Context context) {
+    void call(Context context) {
         record(context);
         log(context);
     }
     
     void log(Context context) {
-        logger.info("Workflow Context:\n" + context);
-        logger.info(globalMap.getMap());
-        logger.info(getCountMap().getMap());
-        //logger.info(getDateMap().getMap());
-        logger.info(hostLiteMap.getMap());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Workflow Context:\n" + context);
+            logger.debug(globalMap.getMap());
+        }
     }
     
     /**
@@ -82,28 +121,68 @@ public class EventManager {
     void record(Context c) {
         IDatatype dtserv = getService(c);
         if (dtserv != null) {
-           getCountMap().incr(dtserv);
-           getDateMap().set(dtserv, DatatypeMap.newDate());
+            HeavyHitters.Hit hit = services.incr(dtserv.getLabel(), dtserv);
+            if (hit != null) {
+                hit.date = DatatypeMap.newDate();
+            }
         }
 
         IDatatype dthost = c.get(Context.STL_REMOTE_HOST);
         if (dthost != null) {
-            getHostMap().incr(dthost);  
+            hosts.incr(dthost.getLabel(), dthost);
             incrHostLite(dthost);
         }
+        changed = true;
     }
     
     void incrHostLite(IDatatype dt) {
         int index = dt.getLabel().lastIndexOf(".");
         if (index != -1) {
             String ip = dt.getLabel().substring(0, index);
-            IDatatype adt = ipmap.get(ip);
-            if (adt == null) {
-                adt = dt;
-                ipmap.put(ip, adt);
+            // first address of prefix represents the prefix
+            hostLites.incr(ip, dt);
+        }
+    }
+    
+    /**
+     * Rebuild map view from counters when there are new calls, unless force
+     * Only one thread rebuilds, others do not wait
+     */
+    void refresh(boolean force) {
+        if (!force && !changed) {
+            return;
+        }
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            changed = false;
+            CoreseMap cmap = map(), dmap = map();
+            for (HeavyHitters.Counter ct : services.getCounters()) {
+                cmap.set(ct.value, DatatypeMap.newInstance(ct.getCount()));
+                if (ct.date != null) {
+                    dmap.set(ct.value, ct.date);
+                }
             }
-            hostLiteMap.incr(adt);
+            setCountMap(cmap);
+            setDateMap(dmap);
+            setHostMap(view(hosts));
+            hostLiteMap = view(hostLites);
+            globalMap.set(count, getCountMap());
+            globalMap.set(date, getDateMap());
+            globalMap.set(host, getHostMap());
+            globalMap.set(hostLite, hostLiteMap);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+    
+    CoreseMap view(HeavyHitters hh) {
+        CoreseMap amap = map();
+        for (HeavyHitters.Counter ct : hh.getCounters()) {
+            amap.set(ct.value, DatatypeMap.newInstance(ct.getCount()));
         }
+        return amap;
     }
       
     IDatatype getService(Context c) {
@@ -0,0 +1,209 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+/**
+ * Readers-writer lock of a TripleStore
+ * Queries share the read lock, SPARQL Update and load hold the write lock
+ * Lock acquisition of a query waits at most timeout ms, then the request fails
+ * with QueryTimeoutException (503)
+ * Default lock is writer preference: a new reader waits when a writer is
+ * waiting for the lock, hence updates are not starved by a flow of queries
+ * Fair lock grants the lock in arrival order
+ * Server options:
+ * -locktimeout ms max lock waiting time of a request, 0: no limit
+ * -lockfair fair lock
+ * The lock is acquired and released by the thread that evaluates the request
+ */
+public class GraphLock {
+
+    private static final Logger logger = LogManager.getLogger(GraphLock.class);
+
+    static final String UPGRADE = "Update within query refused: read lock cannot be upgraded to write lock";
+
+    // max time a writer lets waiting threads acquire the lock
+    static final long YIELD = 100;
+
+    private static long timeout = 30000;
+    private static boolean fair = false;
+
+    private final ReentrantReadWriteLock lock;
+    private final AtomicInteger waitingReader = new AtomicInteger();
+    private final AtomicInteger waitingWriter = new AtomicInteger();
+    private final Stat read = new Stat();
+    private final Stat write = new Stat();
+
+    /**
+     * Lock acquisition statistics
+     */
+    static class Stat {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong timeout = new AtomicLong();
+        final AtomicLong waitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+
+        void acquired(long nanos) {
+            count.incrementAndGet();
+            waitNanos.addAndGet(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("acquired", count.get());
+            json.put("timeout", timeout.get());
+            json.put("waitTimeMs", waitNanos.get() / 1_000_000);
+            json.put("maxWaitTimeMs", maxWaitNanos.get() / 1_000_000);
+            return json;
+        }
+    }
+
+    /**
+     * Lock held by current thread, released by close()
+     */
+    class Hold implements AutoCloseable {
+        Lock held;
+
+        Hold(Lock held) {
+            this.held = held;
+        }
+
+        @Override
+        public void close() {
+            if (held != null) {
+                held.unlock();
+                held = null;
+            }
+        }
+    }
+
+    GraphLock() {
+        // non fair ReentrantReadWriteLock: reader blocks when the first
+        // waiting thread is a writer
+        lock = new ReentrantReadWriteLock(fair);
+    }
+
+    /**
+     * Read or write lock, wait at most timeout ms
+     */
+    Hold acquire(boolean isWrite) throws QueryTimeoutException {
+        if (isReentrant(isWrite)) {
+            return none();
+        }
+        Lock lk = isWrite ? lock.writeLock() : lock.readLock();
+        Stat stat = isWrite ? write : read;
+        AtomicInteger waiting = isWrite ? waitingWriter : waitingReader;
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            if (timeout <= 0) {
+                lk.lockInterruptibly();
+            } else if (!lk.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+                stat.timeout.incrementAndGet();
+                String mes = String.format("%s lock timeout: %s ms", isWrite ? "Write" : "Read", timeout);
+                logger.warn(mes);
+                throw new QueryTimeoutException(mes);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("Query interrupted");
+        } finally {
+            waiting.decrementAndGet();
+        }
+        stat.acquired(System.nanoTime() - start);
+        return new Hold(lk);
+    }
+
+    /**
+     * No lock
+     */
+    Hold none() {
+        return new Hold(null);
+    }
+
+    /**
+     * Write lock without time limit: load must not be lost
+     */
+    Hold acquireWrite() {
+        if (isReentrant(true)) {
+            return none();
+        }
+        long start = System.nanoTime();
+        waitingWriter.incrementAndGet();
+        try {
+            lock.writeLock().lock();
+        } finally {
+            waitingWriter.decrementAndGet();
+        }
+        write.acquired(System.nanoTime() - start);
+        return new Hold(lock.writeLock());
+    }
+
+    /**
+     * Writer that releases the lock lets waiting threads acquire it before it
+     * takes it again: non fair write lock would barge in front of them
+     */
+    void yield() {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(YIELD);
+        while (lock.hasQueuedThreads() && System.nanoTime() - end < 0) {
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /**
+     * Current thread holds the write lock already (e.g. update called by a
+     * before query): it goes on with the lock it holds
+     * A read lock cannot be upgraded to write lock without deadlock: write
+     * within read lock is refused, it would modify the graph while other
+     * queries read it
+     */
+    boolean isReentrant(boolean isWrite) {
+        if (lock.isWriteLockedByCurrentThread()) {
+            return true;
+        }
+        if (isWrite && lock.getReadHoldCount() > 0) {
+            logger.warn(UPGRADE);
+            throw new IllegalStateException(UPGRADE);
+        }
+        return false;
+    }
+
+    boolean isWriteLockedByCurrentThread() {
+        return lock.isWriteLockedByCurrentThread();
+    }
+
+    JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("fair", lock.isFair());
+        json.put("timeoutMs", timeout);
+        json.put("readers", lock.getReadLockCount());
+        json.put("writeLocked", lock.isWriteLocked());
+        json.put("waitingReaders", waitingReader.get());
+        json.put("waitingWriters", waitingWriter.get());
+        json.put("read", read.toJSON());
+        json.put("write", write.toJSON());
+        return json;
+    }
+
+    static void setTimeout(long ms) {
+        timeout = ms;
+    }
+
+    static long getTimeout() {
+        return timeout;
+    }
+
+    static void setFair(boolean b) {
+        fair = b;
+    }
+
+}
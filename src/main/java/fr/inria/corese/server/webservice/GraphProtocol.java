@@ -37,14 +37,87 @@ public class GraphProtocol {
     static final String DEFAULT_GRAPH_INSERT = "INSERT DATA {%s}";
 
     Response get(HttpServletRequest request, String name, String graph, String pattern, String access, int format) {
+        TripleStore store = SPARQLRestAPI.getTripleStore(name);
         String query = pattern;
-        if (name != null) {
+        if (graph != null) {
             query = String.format(pattern, NSManager.nsm().toNamespace(graph));
         }
+        if (isStreaming(request, store, access, format)) {
+            return stream(request, name, store, graph, query, format);
+        }
         return new SPARQLRestAPI().getResultFormat(request, name, null, null, null, null, query, access, null, null,
                 format);
     }
 
+    /**
+     * Graph is streamed with server option -stream and graph size above
+     * threshold, External DataManager: use construct query
+     * Protected server without access key: use construct query evaluated with
+     * access level of request
+     */
+    boolean isStreaming(HttpServletRequest request, TripleStore store, String access, int format) {
+        return StreamingResult.isStreaming() && StreamingGraph.accept(format) && store.getDataManager() == null
+                && store.getGraph().size() >= StreamingResult.getThreshold()
+                && !(SPARQLRestAPI.isProtected && !SPARQLRestAPI.hasKey(request, access));
+    }
+
+    /**
+     * Iterate graph edges and write them on the output stream
+     * instead of building the result of a construct query
+     * Response has entity tag computed from graph version
+     * Admission control as sparql queries, permit is released when response
+     * is written
+     */
+    Response stream(HttpServletRequest request, String name, TripleStore store, String graph, String query,
+            int format) {
+        AdmissionController ac = AdmissionController.get(store);
+        AdmissionController.Permit permit = ac.admit();
+        if (permit == null) {
+            return ac.reject();
+        }
+        boolean registered = RequestResources.register(request, permit);
+        try {
+            SlowQueryLog.query(request, name, query, null, null);
+            String uri = (graph == null) ? null : NSManager.nsm().toNamespace(graph);
+            StreamingGraph sg;
+            long version;
+            if (store.isSnapshot()) {
+                // pinned graph is never modified: edges are written without lock
+                GraphSnapshot.Pin pin = store.getSnapshot().pin(store);
+                RequestResources.register(request, pin);
+                version = pin.getVersion();
+                sg = new StreamingGraph(pin.getGraph(), format, uri).setPin(pin);
+            } else {
+                // version is read before copy: an update during copy changes
+                // the version, entity tag is never newer than the edges
+                version = store.getVersion();
+                // edges are copied with the read lock, written without it
+                sg = new StreamingGraph(store.getGraph(), format, uri).copy(store.getLock());
+            }
+            String etag = ETag.create(version, request.getRequestURI(), request.getQueryString(),
+                    request.getHeader("Accept"), format);
+            if (ETag.match(request.getHeader(ETag.IF_NONE_MATCH), etag)) {
+                sg.release();
+                return ETag.notModified(etag);
+            }
+            if (sg.size() >= 0) {
+                Metrics.resultSize(request, sg.size());
+            }
+            return Response.status(Response.Status.OK)
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Content-Type", sg.getContentType())
+                    .header(ETag.HEADER, etag)
+                    .entity(sg).build();
+        } catch (QueryTimeoutException ex) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Access-Control-Allow-Origin", "*")
+                    .entity(ex.getMessage()).build();
+        } finally {
+            if (!registered) {
+                permit.close();
+            }
+        }
+    }
+
     Response post(HttpServletRequest request, String name, String graph, String pattern, String access, int format) {
         String query;
         if (graph == null) {
@@ -84,6 +157,30 @@ public class GraphProtocol {
         return get(request, name, graph, getQuery(graph), access, ResultFormat.TURTLE_FORMAT);
     }
 
+    @GET
+    @Produces({ ResultFormat.N_TRIPLES })
+    public Response getNTriples(@jakarta.ws.rs.core.Context HttpServletRequest request,
+            @PathParam("name") String name,
+            @QueryParam("graph") String graph,
+            @QueryParam("access") String access,
+            @QueryParam("mode") List<String> mode) {
+
+        logger.info("getNTriples");
+        return get(request, name, graph, getQuery(graph), access, ResultFormat.NTRIPLES_FORMAT);
+    }
+
+    @GET
+    @Produces({ ResultFormat.N_QUADS })
+    public Response getNQuads(@jakarta.ws.rs.core.Context HttpServletRequest request,
+            @PathParam("name") String name,
+            @QueryParam("graph") String graph,
+            @QueryParam("access") String access,
+            @QueryParam("mode") List<String> mode) {
+
+        logger.info("getNQuads");
+        return get(request, name, graph, getQuery(graph), access, ResultFormat.NQUADS_FORMAT);
+    }
+
     @GET
     @Produces({ ResultFormat.RDF_XML })
     public Response getXML(@jakarta.ws.rs.core.Context HttpServletRequest request,
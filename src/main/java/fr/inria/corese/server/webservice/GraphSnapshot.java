@@ -0,0 +1,150 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import fr.inria.corese.core.GraphStore;
+
+/**
+ * Copy-on-write snapshots of a TripleStore graph
+ * Published graph is never modified: an update (or load) is applied on a copy
+ * of the graph, the copy is published atomically when the update succeeds
+ * A query pins the graph published when it starts and evaluates on it until
+ * the end, concurrently with writers
+ * A previous graph is retained as long as a query pins it and is reclaimed
+ * when its last reader finishes
+ * Server option -snapshot
+ * Writers are serialized by the write lock, readers do not lock
+ * Each update copies the graph: suited to large queries and grouped updates,
+ * not to frequent small updates on large graphs
+ */
+public class GraphSnapshot {
+
+    private Version current;
+    // version -> snapshot pinned by queries, other than current
+    private final Map<Long, Version> retained = new HashMap<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private final AtomicLong pinned = new AtomicLong();
+    private final AtomicLong copyNanos = new AtomicLong();
+
+    /**
+     * Graph of a version pinned by readers, unpinned by close()
+     */
+    class Version {
+        GraphStore graph;
+        long version;
+        int readers = 0;
+
+        Version(GraphStore graph, long version) {
+            this.graph = graph;
+            this.version = version;
+        }
+    }
+
+    class Pin implements AutoCloseable {
+        Version version;
+
+        Pin(Version version) {
+            this.version = version;
+        }
+
+        GraphStore getGraph() {
+            return version.graph;
+        }
+
+        long getVersion() {
+            return version.version;
+        }
+
+        @Override
+        public synchronized void close() {
+            // may be closed by writer thread and by RequestResources
+            if (version != null) {
+                unpin(version);
+                version = null;
+            }
+        }
+    }
+
+    /**
+     * Pin current graph of triple store
+     * Graph and version of the store are read together, publish() changes
+     * them under the same lock
+     */
+    synchronized Pin pin(TripleStore store) {
+        return pin(store.graph, store.getVersion());
+    }
+
+    /**
+     * graph and version: current graph of the triple store, it may have been
+     * changed by setGraph() since last publish
+     */
+    synchronized Pin pin(GraphStore graph, long version) {
+        if (current == null || current.graph != graph) {
+            publish(graph, version);
+        }
+        current.readers++;
+        pinned.incrementAndGet();
+        return new Pin(current);
+    }
+
+    synchronized void unpin(Version v) {
+        v.readers--;
+        if (v.readers == 0 && v != current && retained.remove(v.version) != null) {
+            reclaimed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Graph becomes the graph of triple store with a new version, atomically
+     * for readers that pin: a reader never pins the new graph under the
+     * previous version
+     */
+    synchronized void publish(TripleStore store, GraphStore graph) {
+        store.graph = graph;
+        store.updated();
+        publish(graph, store.getVersion());
+    }
+
+    /**
+     * New current graph, previous one is retained while readers pin it
+     */
+    synchronized void publish(GraphStore graph, long version) {
+        if (current != null) {
+            if (current.readers > 0) {
+                retained.put(current.version, current);
+            } else {
+                reclaimed.incrementAndGet();
+            }
+        }
+        current = new Version(graph, version);
+        published.incrementAndGet();
+    }
+
+    void copied(long nanos) {
+        copyNanos.addAndGet(nanos);
+    }
+
+    synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("version", current == null ? 0 : current.version);
+        json.put("readers", current == null ? 0 : current.readers);
+        json.put("retained", retained.size());
+        int readers = 0;
+        for (Version v : retained.values()) {
+            readers += v.readers;
+        }
+        json.put("retainedReaders", readers);
+        json.put("published", published.get());
+        json.put("reclaimed", reclaimed.get());
+        json.put("pinned", pinned.get());
+        json.put("copyTimeMs", copyNanos.get() / 1_000_000);
+        return json;
+    }
+
+}
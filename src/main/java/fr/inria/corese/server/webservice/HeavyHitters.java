@@ -0,0 +1,237 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import fr.inria.corese.core.sparql.api.IDatatype;
+
+/**
+ * Bounded counters of the most frequent keys (Space-Saving top-K sketch)
+ * Server calls count keys in a ConcurrentHashMap of LongAdder without lock,
+ * counts are merged into the sketch when counters are read (background
+ * refresh of EventManager)
+ * At most capacity keys are kept by the sketch, a new key replaces a key with
+ * the smallest count and inherits its count as overestimation error
+ * Stream-Summary: counters with the same count share a bucket, buckets are
+ * sorted by increasing count
+ * At most MAX_PENDING * capacity keys are counted between two merges, other
+ * new keys are counted at next period; a call that counts a key idle for a
+ * whole period while it is removed may be lost
+ */
+public class HeavyHitters {
+
+    static final int MAX_PENDING = 16;
+
+    private int capacity;
+    // counts of server calls since last merge
+    private final ConcurrentHashMap<String, Hit> pending = new ConcurrentHashMap<>();
+    private final LongAdder total = new LongAdder();
+    // sketch, modified by merge
+    private final Map<String, Counter> map = new HashMap<>();
+    // bucket with smallest count
+    private Bucket min;
+
+    /**
+     * Calls of one key since last merge
+     */
+    static class Hit {
+        IDatatype value;
+        final LongAdder count = new LongAdder();
+        // last call, LDScript date
+        volatile IDatatype date;
+
+        Hit(IDatatype value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Counters with the same count
+     */
+    static class Bucket {
+        long count;
+        Bucket prev, next;
+        LinkedHashSet<Counter> counters = new LinkedHashSet<>();
+
+        Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    /**
+     * Counter of one key
+     */
+    static class Counter {
+        String key;
+        // key as LDScript value
+        IDatatype value;
+        long count;
+        // count inherited from replaced key
+        long error;
+        // last update, LDScript date
+        IDatatype date;
+        Bucket bucket;
+
+        Counter(String key, IDatatype value, long error) {
+            this.key = key;
+            this.value = value;
+            this.error = error;
+            this.count = error;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    HeavyHitters(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Count a call of key, dt is the value of the key
+     * Return the pending hit of key, or null when too many keys are pending
+     */
+    Hit incr(String key, IDatatype dt) {
+        total.increment();
+        Hit hit = pending.get(key);
+        if (hit == null) {
+            if (pending.size() >= MAX_PENDING * capacity) {
+                return null;
+            }
+            hit = pending.computeIfAbsent(key, k -> new Hit(dt));
+        }
+        hit.count.increment();
+        return hit;
+    }
+
+    /**
+     * Merge pending counts into the sketch
+     */
+    synchronized void merge() {
+        Iterator<Map.Entry<String, Hit>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Hit> entry = it.next();
+            Hit hit = entry.getValue();
+            long n = hit.count.sumThenReset();
+            if (n == 0) {
+                // idle for a whole period
+                it.remove();
+                continue;
+            }
+            Counter c = map.get(entry.getKey());
+            if (c == null) {
+                c = add(entry.getKey(), hit.value);
+            }
+            increment(c, n);
+            if (hit.date != null) {
+                c.date = hit.date;
+            }
+        }
+    }
+
+    /**
+     * New counter with count 0, or replacing a counter of the min bucket
+     */
+    Counter add(String key, IDatatype dt) {
+        Counter c;
+        if (map.size() < capacity) {
+            c = new Counter(key, dt, 0);
+        } else {
+            Iterator<Counter> it = min.counters.iterator();
+            Counter old = it.next();
+            it.remove();
+            map.remove(old.key);
+            c = new Counter(key, dt, min.count);
+            c.bucket = min;
+            min.counters.add(c);
+        }
+        map.put(key, c);
+        return c;
+    }
+
+    /**
+     * Move counter to the bucket of count + n
+     */
+    void increment(Counter c, long n) {
+        Bucket from = c.bucket;
+        long count = c.count + n;
+        Bucket prev = from;
+        Bucket next = (from == null) ? min : from.next;
+        while (next != null && next.count < count) {
+            prev = next;
+            next = next.next;
+        }
+        Bucket to;
+        if (next != null && next.count == count) {
+            to = next;
+        } else {
+            to = new Bucket(count);
+            to.prev = prev;
+            to.next = next;
+            if (next != null) {
+                next.prev = to;
+            }
+            if (prev == null) {
+                min = to;
+            } else {
+                prev.next = to;
+            }
+        }
+        if (from != null) {
+            from.counters.remove(c);
+            if (from.counters.isEmpty()) {
+                unlink(from);
+            }
+        }
+        to.counters.add(c);
+        c.bucket = to;
+        c.count = count;
+    }
+
+    void unlink(Bucket b) {
+        if (b.prev == null) {
+            min = b.next;
+        } else {
+            b.prev.next = b.next;
+        }
+        if (b.next != null) {
+            b.next.prev = b.prev;
+        }
+    }
+
+    synchronized Counter get(String key) {
+        merge();
+        return map.get(key);
+    }
+
+    /**
+     * Counters sorted by decreasing count, after merge of pending counts
+     */
+    synchronized List<Counter> getCounters() {
+        merge();
+        List<Counter> list = new ArrayList<>(map.size());
+        for (Bucket b = min; b != null; b = b.next) {
+            list.addAll(b.counters);
+        }
+        Collections.reverse(list);
+        return list;
+    }
+
+    synchronized int size() {
+        merge();
+        return map.size();
+    }
+
+    long getTotal() {
+        return total.sum();
+    }
+
+}
@@ -16,6 +16,7 @@ import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.FormParam;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HEAD;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.OPTIONS;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
@@ -58,10 +59,16 @@ public class LdpRequestAPI {
     @GET
     @Path("{path:.+}")
     @Produces("text/turtle")
-    public Response getResourceGET(@PathParam("path") String res)
+    public Response getResourceGET(@PathParam("path") String res,
+            @HeaderParam("If-None-Match") String ifNoneMatch)
     {
         try
         {
+            String etag = getETag( res );
+            if ( ETag.match( ifNoneMatch, etag ) )
+            {
+                return ETag.notModified( etag );
+            }
             return getResourceResponse( res, false );
         } catch (EngineException ex)
         {
@@ -101,10 +108,16 @@ public class LdpRequestAPI {
 
     @HEAD
     @Path("{path:.+}")
-    public Response getResourceHEAD(@PathParam("path") String resource)
+    public Response getResourceHEAD(@PathParam("path") String resource,
+            @HeaderParam("If-None-Match") String ifNoneMatch)
     {
         try
         {
+            String etag = getETag( resource );
+            if ( ETag.match( ifNoneMatch, etag ) )
+            {
+                return ETag.notModified( etag );
+            }
             return getResourceResponse( resource, false );
         } catch (EngineException ex)
         {
@@ -170,6 +183,14 @@ public class LdpRequestAPI {
         return new Context();
     }
 
+    /**
+     * Entity tag changes when endpoint graph changes
+     */
+    String getETag(String res)
+    {
+        return ETag.create( SPARQLRestAPI.getTripleStore(), "ldp", res );
+    }
+
     private Response getResourceResponse(String res, boolean head) throws EngineException
     {
         String content = "";
@@ -194,7 +215,7 @@ public class LdpRequestAPI {
         }
 
         ResponseBuilder rb = Response.ok( content );
-        rb.tag( "" + res.hashCode() );//eTag
+        rb.header( ETag.HEADER, getETag( res ) );
         rb.header( "Content-type", "text/turtle; charset=utf-8" );
         //TODO, check the resource type:LDPR, LDP-NR, LDPC, etc..
         rb.header( "Link", "<http://www.w3.org/ns/ldp#RDFResource>; rel = \"type\"" );
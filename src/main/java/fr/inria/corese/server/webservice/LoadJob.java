@@ -0,0 +1,329 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fr.inria.corese.core.GraphStore;
+
+/**
+ * Asynchronous load job
+ * POST /sparql/load/job returns a job id, the job runs on a bounded executor
+ * separate from query threads, its status (triples loaded, bytes read, rate,
+ * ETA) is polled with GET /sparql/load/job/{id}, DELETE cancels the job
+ * N-Triples/N-Quads documents are loaded by BulkLoader, other formats by
+ * standard load (bytes read and ETA are unknown)
+ * A running bulk load is cancelled at next line, data already loaded remain
+ * except in snapshot mode; a running standard load cannot be cancelled
+ * Server options:
+ * -loadthreads n number of jobs running at the same time
+ * -loadqueue n max number of pending jobs
+ */
+public class LoadJob implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(LoadJob.class);
+    // finished jobs kept for status
+    static final int HISTORY = 100;
+
+    enum Status {
+        PENDING, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    private static int threads = 2;
+    private static int maxQueue = 100;
+    private static ThreadPoolExecutor executor;
+    private static final AtomicInteger count = new AtomicInteger();
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    // id -> job, in submission order
+    private static final Map<String, LoadJob> jobs = new LinkedHashMap<>();
+
+    private String id;
+    private TripleStore store;
+    private String path;
+    private String source;
+    private volatile Status status = Status.PENDING;
+    private String error;
+    private long submitted = System.currentTimeMillis();
+    private long started;
+    private volatile long ended;
+    // document size, -1 when unknown
+    private long size = -1;
+    private BulkLoader bulk;
+    // standard load: graph being loaded and its size before load
+    private GraphStore graph;
+    private int initialSize;
+    private Future<?> future;
+
+    LoadJob(TripleStore store, String path, String source) {
+        this.id = Integer.toString(count.incrementAndGet());
+        this.store = store;
+        this.path = path;
+        this.source = source;
+        File file = new File(path);
+        if (file.isFile()) {
+            size = file.length();
+        }
+        if (BulkLoader.accept(path) && store.getDataManager() == null) {
+            bulk = new BulkLoader(path, source);
+        }
+    }
+
+    static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(maxQueue), r -> {
+                        Thread t = new Thread(r, "corese-load-" + threadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Submit load job
+     *
+     * @throws RejectedExecutionException when the queue of pending jobs is full
+     */
+    static LoadJob submit(TripleStore store, String path, String source) {
+        LoadJob job = new LoadJob(store, path, source);
+        synchronized (jobs) {
+            job.future = getExecutor().submit(job);
+            jobs.put(job.getId(), job);
+            clean();
+        }
+        logger.info("Load job " + job.getId() + ": " + path);
+        return job;
+    }
+
+    /**
+     * Load job run by current thread, progress is reported as for submitted
+     * jobs
+     */
+    static LoadJob execute(TripleStore store, String path, String source) {
+        LoadJob job = new LoadJob(store, path, source);
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+            clean();
+        }
+        logger.info("Load job " + job.getId() + ": " + path);
+        job.run();
+        return job;
+    }
+
+    /**
+     * Remove oldest finished jobs
+     */
+    static void clean() {
+        int finished = 0;
+        for (LoadJob job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+        Iterator<LoadJob> it = jobs.values().iterator();
+        while (finished > HISTORY && it.hasNext()) {
+            if (it.next().isFinished()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    static LoadJob get(String id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    static List<LoadJob> getJobs() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    synchronized boolean start() {
+        if (status == Status.CANCELLED) {
+            return false;
+        }
+        started = System.currentTimeMillis();
+        status = Status.RUNNING;
+        return true;
+    }
+
+    @Override
+    public void run() {
+        if (!start()) {
+            return;
+        }
+        try {
+            if (bulk != null) {
+                store.bulkLoad(bulk, source);
+            } else {
+                store.write(g -> {
+                    graph = g;
+                    initialSize = g.size();
+                    store.load(g, path, source);
+                });
+            }
+            end(Status.DONE, null);
+        } catch (Exception ex) {
+            if (end(Status.FAILED, ex.getMessage())) {
+                logger.error("Load job " + id + " failed: " + path, ex);
+            }
+        } finally {
+            ended = System.currentTimeMillis();
+        }
+        logger.info(String.format("Load job %s %s: %s triples in %s ms", id, status, getTriples(), getTime()));
+    }
+
+    /**
+     * Running job ends with status, unless it has been cancelled meanwhile
+     */
+    synchronized boolean end(Status st, String mes) {
+        if (status != Status.RUNNING) {
+            return false;
+        }
+        status = st;
+        error = mes;
+        return true;
+    }
+
+    /**
+     * Return false when job is finished or is a running standard load
+     */
+    synchronized boolean cancel() {
+        if (!isCancellable()) {
+            return false;
+        }
+        Status previous = status;
+        status = Status.CANCELLED;
+        if (previous == Status.PENDING) {
+            if (future != null) {
+                future.cancel(false);
+            }
+            ended = System.currentTimeMillis();
+        } else {
+            bulk.cancel();
+        }
+        logger.info("Load job " + id + " cancelled");
+        return true;
+    }
+
+    /**
+     * Pending job or running bulk load
+     */
+    synchronized boolean isCancellable() {
+        return status == Status.PENDING || (status == Status.RUNNING && bulk != null);
+    }
+
+    boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED
+                || (status == Status.CANCELLED && ended != 0);
+    }
+
+    String getId() {
+        return id;
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    long getTriples() {
+        if (bulk != null) {
+            return bulk.getTriples();
+        }
+        if (graph != null) {
+            return Math.max(0, graph.size() - initialSize);
+        }
+        return 0;
+    }
+
+    /**
+     * Bytes read, -1 when unknown
+     */
+    long getBytes() {
+        return (bulk == null) ? -1 : bulk.getBytes();
+    }
+
+    /**
+     * Running time in ms
+     */
+    long getTime() {
+        if (started == 0) {
+            return 0;
+        }
+        return ((ended == 0) ? System.currentTimeMillis() : ended) - started;
+    }
+
+    long getRate() {
+        long time = getTime();
+        return (time == 0) ? 0 : getTriples() * 1000 / time;
+    }
+
+    /**
+     * Remaining time in ms estimated from bytes read, -1 when unknown
+     */
+    long getETA() {
+        long bytes = getBytes();
+        if (status != Status.RUNNING || size <= 0 || bytes <= 0) {
+            return -1;
+        }
+        return getTime() * Math.max(0, size - bytes) / bytes;
+    }
+
+    JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("path", path);
+        if (source != null) {
+            json.put("source", source);
+        }
+        json.put("status", status.name());
+        json.put("submitted", submitted);
+        json.put("triples", getTriples());
+        json.put("bytes", getBytes());
+        json.put("size", size);
+        json.put("timeMs", getTime());
+        json.put("triplesPerSecond", getRate());
+        json.put("etaMs", getETA());
+        json.put("cancellable", isCancellable());
+        if (error != null) {
+            json.put("error", error);
+        }
+        return json;
+    }
+
+    static JSONArray listJSON() {
+        JSONArray array = new JSONArray();
+        for (LoadJob job : getJobs()) {
+            array.put(job.toJSON());
+        }
+        return array;
+    }
+
+    static void setThreads(int n) {
+        threads = n;
+    }
+
+    static void setMaxQueue(int n) {
+        maxQueue = n;
+    }
+
+}
@@ -116,6 +116,17 @@ public class Manager {
         return ts;
     }
 
+    /**
+     * serv is the name or URI of a named endpoint
+     * Does not initialize the manager
+     */
+    static boolean isEndpoint(String serv) {
+        if (mapURI == null || mapService == null) {
+            return false;
+        }
+        return mapURI.containsKey(getURIOrName(serv));
+    }
+
     static String getURIOrName(String serv) {
         String uri = getURI(serv);
         if (uri == null) {
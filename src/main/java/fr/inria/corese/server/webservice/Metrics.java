@@ -0,0 +1,316 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Server metrics in Prometheus text format: GET /metrics
+ * Per route (/sparql, /template, /service/{serv}, /rdf-graph-store, /ldp)
+ * and per named endpoint: request count, latency histogram, in-flight
+ * requests, errors (status >= 400)
+ * Query phases: compile, evaluate, format, transform; result size
+ * Compile phase is measured when the server compiles the query (plan cache),
+ * otherwise query parsing is part of evaluate phase
+ * Streamed results are formatted while the response is written: their
+ * formatting time is part of request latency only
+ */
+@Path("metrics")
+public class Metrics {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final String ATTRIBUTE = Metrics.class.getName();
+    static final String DEFAULT = "default";
+    static final String OTHER = "other";
+    static final String COMPILE = "compile";
+    static final String EVALUATE = "evaluate";
+    static final String FORMAT = "format";
+    static final String TRANSFORM = "transform";
+    static final String[] PHASES = { COMPILE, EVALUATE, FORMAT, TRANSFORM };
+    // seconds
+    static final double[] LATENCY = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+    // number of results or triples
+    static final double[] SIZE = { 0, 1, 10, 100, 1000, 10000, 100000, 1000000 };
+    // max number of distinct endpoint labels, others are labeled "other"
+    static final int MAX_ENDPOINT = 100;
+
+    private static final Family<LongAdder> requests = new Family<>("corese_http_requests_total", "counter",
+            "Number of HTTP requests", k -> new LongAdder());
+    private static final Family<Histogram> duration = new Family<>("corese_http_request_duration_seconds",
+            "histogram", "HTTP request latency", k -> new Histogram(LATENCY));
+    private static final Family<AtomicLong> inFlight = new Family<>("corese_http_requests_in_flight", "gauge",
+            "Number of requests being processed", k -> new AtomicLong());
+    private static final Family<LongAdder> errors = new Family<>("corese_http_errors_total", "counter",
+            "Number of responses with status >= 400", k -> new LongAdder());
+    private static final Family<Histogram> phases = new Family<>("corese_query_phase_duration_seconds",
+            "histogram", "Time spent in query phase", k -> new Histogram(LATENCY));
+    private static final Family<Histogram> results = new Family<>("corese_query_result_size", "histogram",
+            "Number of query results or triples", k -> new Histogram(SIZE));
+
+    private static final Set<String> endpoints = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Metric with one series per label set
+     */
+    static class Family<T> {
+        String name, type, help;
+        Function<String, T> factory;
+        Map<String, T> series = new ConcurrentHashMap<>();
+
+        Family(String name, String type, String help, Function<String, T> factory) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.factory = factory;
+        }
+
+        T get(String labels) {
+            return series.computeIfAbsent(labels, factory);
+        }
+
+        void print(StringBuilder sb) {
+            sb.append("# HELP ").append(name).append(" ").append(help).append("\n");
+            sb.append("# TYPE ").append(name).append(" ").append(type).append("\n");
+            for (Map.Entry<String, T> e : new TreeMap<>(series).entrySet()) {
+                T value = e.getValue();
+                if (value instanceof Histogram) {
+                    ((Histogram) value).print(sb, name, e.getKey());
+                } else {
+                    sb.append(name).append("{").append(e.getKey()).append("} ")
+                            .append(((Number) value).longValue()).append("\n");
+                }
+            }
+        }
+    }
+
+    static class Histogram {
+        double[] bounds;
+        LongAdder[] buckets;
+        LongAdder count = new LongAdder();
+        DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            buckets = new LongAdder[bounds.length];
+            for (int i = 0; i < bounds.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            for (int i = 0; i < bounds.length; i++) {
+                if (value <= bounds[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        void print(StringBuilder sb, String name, String labels) {
+            long cumul = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumul += buckets[i].sum();
+                sb.append(name).append("_bucket{").append(labels).append(",le=\"").append(format(bounds[i]))
+                        .append("\"} ").append(cumul).append("\n");
+            }
+            long total = count.sum();
+            sb.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(total).append("\n");
+            sb.append(name).append("_sum{").append(labels).append("} ").append(sum.sum()).append("\n");
+            sb.append(name).append("_count{").append(labels).append("} ").append(total).append("\n");
+        }
+
+        static String format(double d) {
+            return (d == Math.rint(d)) ? Long.toString((long) d) : Double.toString(d);
+        }
+    }
+
+    /**
+     * Metrics of one request, recorded as request attribute
+     */
+    static class Timer {
+        String route;
+        String endpoint;
+        String labels;
+        long start = System.nanoTime();
+        // compile time spent in current evaluation
+        long compile;
+        // time per phase, in PHASES order
+        long[] phases = new long[PHASES.length];
+        int size = -1;
+        // query recorded by slow query log
+        SlowQueryLog.Entry slow;
+        AtomicBoolean done = new AtomicBoolean();
+
+        Timer(String route, String endpoint) {
+            this.route = route;
+            this.endpoint = endpoint;
+            labels = labels("route", route, "endpoint", endpoint);
+        }
+    }
+
+    @GET
+    @Produces("text/plain")
+    public Response getMetrics() {
+        return Response.status(200).header("Access-Control-Allow-Origin", "*")
+                .header("Content-Type", CONTENT_TYPE).entity(print()).build();
+    }
+
+    static String print() {
+        StringBuilder sb = new StringBuilder();
+        requests.print(sb);
+        duration.print(sb);
+        inFlight.print(sb);
+        errors.print(sb);
+        phases.print(sb);
+        results.print(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Start of request
+     */
+    static Timer start(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String[] route = route(path);
+        Timer timer = new Timer(route[0], route[1]);
+        request.setAttribute(ATTRIBUTE, timer);
+        inFlight.get(timer.labels).incrementAndGet();
+        return timer;
+    }
+
+    /**
+     * End of request, response has been written
+     */
+    static void end(Timer timer, int status) {
+        if (!timer.done.compareAndSet(false, true)) {
+            return;
+        }
+        long nanos = System.nanoTime() - timer.start;
+        inFlight.get(timer.labels).decrementAndGet();
+        requests.get(timer.labels).increment();
+        duration.get(timer.labels).observe(seconds(nanos));
+        if (status >= 400) {
+            errors.get(timer.labels + "," + labels("status", Integer.toString(status))).increment();
+        }
+        SlowQueryLog.end(timer, nanos, status);
+    }
+
+    /**
+     * route and endpoint label of request path
+     */
+    static String[] route(String path) {
+        String[] seg = path.replaceAll("^/+", "").split("/");
+        switch (seg[0]) {
+            case "sparql":
+            case "template":
+            case "rdf-graph-store":
+            case "ldp":
+                return new String[] { "/" + seg[0], DEFAULT };
+            case "service":
+                if (seg.length > 1) {
+                    return new String[] { "/service/{serv}", endpoint(seg[1]) };
+                }
+                break;
+            default:
+                // named endpoint {name}/sparql managed by SPARQLService
+                if (seg.length > 1 && Manager.isEndpoint(seg[0])) {
+                    return new String[] { "/sparql", endpoint(seg[0]) };
+                }
+        }
+        return new String[] { OTHER, DEFAULT };
+    }
+
+    static String endpoint(String name) {
+        if (endpoints.contains(name)) {
+            return name;
+        }
+        if (endpoints.size() < MAX_ENDPOINT) {
+            endpoints.add(name);
+            return name;
+        }
+        return OTHER;
+    }
+
+    static Timer getTimer(HttpServletRequest request) {
+        if (request == null) {
+            return null;
+        }
+        Object obj = request.getAttribute(ATTRIBUTE);
+        return (obj instanceof Timer) ? (Timer) obj : null;
+    }
+
+    /**
+     * Time spent in query phase
+     */
+    static void phase(HttpServletRequest request, String phase, long nanos) {
+        Timer timer = getTimer(request);
+        String labels = (timer == null) ? labels("route", OTHER, "endpoint", DEFAULT) : timer.labels;
+        if (timer != null) {
+            if (phase.equals(COMPILE)) {
+                timer.compile += nanos;
+            }
+            for (int i = 0; i < PHASES.length; i++) {
+                if (PHASES[i].equals(phase)) {
+                    timer.phases[i] += nanos;
+                }
+            }
+        }
+        phases.get(labels + "," + labels("phase", phase)).observe(seconds(nanos));
+    }
+
+    /**
+     * Evaluation time, compile time recorded since start is removed
+     */
+    static void evaluate(HttpServletRequest request, long start) {
+        long nanos = System.nanoTime() - start;
+        Timer timer = getTimer(request);
+        if (timer != null) {
+            nanos = Math.max(0, nanos - timer.compile);
+            timer.compile = 0;
+        }
+        phase(request, EVALUATE, nanos);
+    }
+
+    static void resultSize(HttpServletRequest request, int size) {
+        Timer timer = getTimer(request);
+        String labels = (timer == null) ? labels("route", OTHER, "endpoint", DEFAULT) : timer.labels;
+        if (timer != null) {
+            timer.size = size;
+        }
+        results.get(labels).observe(size);
+    }
+
+    static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    static String labels(String... pairs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(pairs[i]).append("=\"").append(escape(pairs[i + 1])).append("\"");
+        }
+        return sb.toString();
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
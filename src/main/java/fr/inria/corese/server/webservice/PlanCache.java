@@ -0,0 +1,176 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import fr.inria.corese.core.kgram.core.Query;
+
+/**
+ * Cache of compiled queries of a TripleStore
+ * A compiled Query is not thread safe: it is leased to one request at a time
+ * and given back when the response has been written, because the query result
+ * Mappings refers to its Query until it is serialized
+ * Each key has a pool of idle compiled queries, a request that finds the pool
+ * empty compiles its own Query and gives it to the pool at the end
+ * Server option -plancache n: max number of keys, default 0: no cache
+ */
+public class PlanCache {
+
+    private static int defaultSize = 0;
+    // max idle compiled queries per key
+    static final int POOL_SIZE = 8;
+
+    private int maxSize;
+    private final LinkedHashMap<String, Pool> table;
+
+    private final AtomicLong hit = new AtomicLong();
+    private final AtomicLong miss = new AtomicLong();
+    private final AtomicLong compileNanos = new AtomicLong();
+    private final AtomicLong savedNanos = new AtomicLong();
+    // compiled queries in use by requests
+    private final AtomicInteger leased = new AtomicInteger();
+
+    /**
+     * Idle compiled queries of one key
+     */
+    static class Pool {
+        ArrayDeque<Query> idle = new ArrayDeque<>();
+        // compile time of first Query of the pool
+        long nanos;
+        // update queries are not cached
+        boolean update = false;
+
+        Pool(long nanos) {
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Exclusive use of a compiled Query, close() gives it back to the cache
+     */
+    class Lease implements AutoCloseable {
+        String key;
+        Query query;
+        boolean closed = false;
+
+        Lease(String key, Query query) {
+            this.key = key;
+            this.query = query;
+        }
+
+        Query getQuery() {
+            return query;
+        }
+
+        /**
+         * Compiled query is not given back: Mappings refers to it and the
+         * request has no end callback (RequestResources) to give it back
+         */
+        void discard() {
+            if (!closed) {
+                closed = true;
+                leased.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(this);
+            }
+        }
+    }
+
+    PlanCache() {
+        this(defaultSize);
+    }
+
+    PlanCache(int maxSize) {
+        this.maxSize = maxSize;
+        table = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pool> eldest) {
+                return size() > PlanCache.this.maxSize;
+            }
+        };
+    }
+
+    static void setDefaultSize(int n) {
+        defaultSize = n;
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Return idle compiled query or null
+     */
+    synchronized Lease borrow(String key) {
+        Pool pool = table.get(key);
+        if (pool == null || pool.update || pool.idle.isEmpty()) {
+            miss.incrementAndGet();
+            return null;
+        }
+        hit.incrementAndGet();
+        savedNanos.addAndGet(pool.nanos);
+        leased.incrementAndGet();
+        return new Lease(key, pool.idle.pop());
+    }
+
+    /**
+     * Record a Query compiled by the caller, return its lease
+     * Return null for an update: it is not cached
+     */
+    synchronized Lease compiled(String key, Query query, long nanos) {
+        compileNanos.addAndGet(nanos);
+        Pool pool = table.get(key);
+        if (pool == null) {
+            pool = new Pool(nanos);
+            table.put(key, pool);
+        }
+        pool.update = query.getAST().isUpdate();
+        if (pool.update) {
+            return null;
+        }
+        leased.incrementAndGet();
+        return new Lease(key, query);
+    }
+
+    synchronized boolean isUpdate(String key) {
+        Pool pool = table.get(key);
+        return pool != null && pool.update;
+    }
+
+    synchronized void release(Lease lease) {
+        leased.decrementAndGet();
+        Pool pool = table.get(lease.key);
+        if (pool != null && !pool.update && pool.idle.size() < POOL_SIZE) {
+            pool.idle.push(lease.getQuery());
+        }
+    }
+
+    synchronized void clear() {
+        table.clear();
+    }
+
+    synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("enabled", isEnabled());
+        json.put("maxSize", maxSize);
+        json.put("entries", table.size());
+        json.put("hit", hit.get());
+        json.put("miss", miss.get());
+        json.put("leased", leased.get());
+        json.put("compileTimeMs", compileNanos.get() / 1_000_000);
+        json.put("savedCompileTimeMs", savedNanos.get() / 1_000_000);
+        return json;
+    }
+
+}
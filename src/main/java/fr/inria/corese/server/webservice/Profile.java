@@ -334,6 +334,39 @@ public class Profile {
         localFederation(g);
         initParameter(g);
         defNamespace(g);
+        initStoredQuery(g);
+    }
+
+    /**
+     * Stored query with parameters called with /sparql/stored/name?$var=value
+     * [] a st:StoredQuery ; st:name "name" ; st:query <query/name.rq> ; st:variable "?var"
+     * st:query may also be the text of the query
+     */
+    void initStoredQuery(Graph g) throws EngineException {
+        String str = "select ?n ?b (aggregate(?v) as ?list) where {"
+                + "?q a st:StoredQuery ; st:name ?n ; st:query ?b "
+                + "optional { ?q st:variable ?v } "
+                + "} group by ?q ?n ?b";
+        QueryProcess exec = QueryProcess.create(g);
+        Mappings map = exec.query(str);
+        for (Mapping m : map) {
+            IDatatype name = getValue(m, "?n");
+            IDatatype body = getValue(m, "?b");
+            IDatatype list = getValue(m, "?list");
+            ArrayList<String> variables = new ArrayList<>();
+            if (list != null) {
+                for (IDatatype var : list) {
+                    variables.add(var.getLabel());
+                }
+            }
+            try {
+                String query = body.isURI() ? loadQuery(body.getLabel()) : body.getLabel();
+                StoredQuery.define(name.getLabel(), query, variables);
+                logger.info("Stored query: " + name.getLabel() + " " + variables);
+            } catch (IOException | LoadException | EngineException ex) {
+                logger.error("Stored query: " + name.getLabel() + " " + ex.getMessage());
+            }
+        }
     }
     
     /**
@@ -0,0 +1,239 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Query evaluation pools, separate from Jetty connection handling threads
+ * SPARQL handlers suspend the request (AsyncResponse) and evaluate the query
+ * on the pool of the endpoint, the Jetty thread is released at once
+ * Server options:
+ * -querythreads n[,name=m]* threads of default pool, threads of endpoint pool
+ * default pool has one thread per processor
+ * -queryqueue n max number of queries waiting for a thread
+ * -queryreject abort|caller|oldest when queue is full: reject new query with
+ * 503, evaluate it on the Jetty thread, or reject oldest waiting query
+ * 0 thread: query is evaluated on the Jetty thread, or on a virtual thread
+ * with server option -virtualquery
+ * Query deadline (QueryTimeout) is checked on the evaluation thread, a
+ * cancelled query is answered with 503 when it is cancelled
+ * kgram evaluation is not interruptible: a CPU bound evaluation goes on until
+ * it returns, hence queries are evaluated on a pool by default so that the
+ * Jetty thread is released at once and the client is answered at the deadline
+ */
+public class QueryExecutor {
+
+    private static final Logger logger = LogManager.getLogger(QueryExecutor.class);
+    private static final String headerAccept = "Access-Control-Allow-Origin";
+    static final String DEFAULT = "default";
+
+    enum Policy {
+        ABORT, CALLER, OLDEST
+    }
+
+    // -1: one thread per processor, or virtual thread with -virtualquery
+    private static int defaultThreads = -1;
+    private static int maxQueue = 100;
+    private static Policy policy = Policy.ABORT;
+    // virtual thread per query of endpoint without pool, null: Jetty thread
+    private static ExecutorService virtual;
+    // endpoint name -> number of threads
+    private static Map<String, Integer> threadMap = new HashMap<>();
+    private static final Map<String, QueryExecutor> executors = new ConcurrentHashMap<>();
+
+    private String name;
+    private ThreadPoolExecutor pool;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    /**
+     * Query evaluation that resumes suspended response
+     */
+    class Task implements Runnable {
+        HttpServletRequest request;
+        AsyncResponse async;
+        Supplier<Response> eval;
+
+        Task(HttpServletRequest request, AsyncResponse async, Supplier<Response> eval) {
+            this.request = request;
+            this.async = async;
+            this.eval = eval;
+        }
+
+        /**
+         * Request resources are kept until evaluation ends, even when response
+         * is written before
+         * Cancelled query is answered at once by the QueryTimeout watchdog, the
+         * response of the evaluation is then ignored
+         */
+        @Override
+        public void run() {
+            if (request != null) {
+                request.setAttribute(QueryTimeout.LISTENER, (QueryTimeout.Listener) this::cancelled);
+            }
+            try (RequestResources.Work work = RequestResources.begin(request)) {
+                async.resume(eval.get());
+            } catch (RuntimeException | Error ex) {
+                async.resume(ex);
+            }
+        }
+
+        void cancelled(String message) {
+            async.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(headerAccept, "*")
+                    .entity(message).build());
+        }
+
+        void reject() {
+            rejected.incrementAndGet();
+            async.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(headerAccept, "*")
+                    .header("Retry-After", "1")
+                    .entity("Server busy, retry later").build());
+        }
+    }
+
+    QueryExecutor(String name, int threads) {
+        this.name = name;
+        if (threads > 0) {
+            AtomicInteger count = new AtomicInteger();
+            pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, maxQueue)), r -> {
+                        Thread t = new Thread(r, "corese-eval-" + name + "-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            logger.info("Query executor " + name + ": " + threads + " threads");
+        }
+    }
+
+    static QueryExecutor get(String name) {
+        String key = (name == null) ? DEFAULT : name;
+        return executors.computeIfAbsent(key,
+                k -> new QueryExecutor(k, threadMap.getOrDefault(k, getDefaultThreads())));
+    }
+
+    static int getDefaultThreads() {
+        if (defaultThreads >= 0) {
+            return defaultThreads;
+        }
+        return (virtual == null) ? Runtime.getRuntime().availableProcessors() : 0;
+    }
+
+    /**
+     * Evaluate on the pool of endpoint name and resume response
+     */
+    static void submit(HttpServletRequest request, AsyncResponse async, String name, Supplier<Response> eval) {
+        get(name).execute(request, async, eval);
+    }
+
+    void execute(HttpServletRequest request, AsyncResponse async, Supplier<Response> eval) {
+        Task task = new Task(request, async, eval);
+        if (pool == null) {
+            if (virtual == null) {
+                task.run();
+            } else {
+                virtual.execute(task);
+            }
+            return;
+        }
+        submitted.incrementAndGet();
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException ex) {
+            reject(task);
+        }
+    }
+
+    void reject(Task task) {
+        switch (policy) {
+            case CALLER:
+                callerRuns.incrementAndGet();
+                task.run();
+                break;
+            case OLDEST:
+                Runnable oldest = pool.getQueue().poll();
+                if (oldest instanceof Task) {
+                    ((Task) oldest).reject();
+                }
+                try {
+                    pool.execute(task);
+                } catch (RejectedExecutionException ex) {
+                    task.reject();
+                }
+                break;
+            default:
+                logger.warn("Query executor " + name + " busy: query rejected");
+                task.reject();
+        }
+    }
+
+    JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("endpoint", name);
+        json.put("threads", pool == null ? 0 : pool.getMaximumPoolSize());
+        json.put("policy", policy.name().toLowerCase());
+        json.put("maxQueue", maxQueue);
+        json.put("active", pool == null ? 0 : pool.getActiveCount());
+        json.put("queued", pool == null ? 0 : pool.getQueue().size());
+        json.put("completed", pool == null ? 0 : pool.getCompletedTaskCount());
+        json.put("submitted", submitted.get());
+        json.put("rejected", rejected.get());
+        json.put("callerRuns", callerRuns.get());
+        return json;
+    }
+
+    static JSONObject listJSON() {
+        JSONObject json = new JSONObject();
+        for (QueryExecutor qe : executors.values()) {
+            json.put(qe.name, qe.toJSON());
+        }
+        return json;
+    }
+
+    /**
+     * n[,name=m]*
+     */
+    static void setThreads(String value) {
+        for (String item : value.split(",")) {
+            String[] pair = item.split("=");
+            if (pair.length == 2) {
+                threadMap.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+            } else {
+                defaultThreads = Integer.parseInt(item.trim());
+            }
+        }
+    }
+
+    static void setMaxQueue(int n) {
+        maxQueue = n;
+    }
+
+    static void setPolicy(String value) {
+        policy = Policy.valueOf(value.trim().toUpperCase());
+    }
+
+    static void setVirtual(ExecutorService exec) {
+        virtual = exec;
+    }
+
+}
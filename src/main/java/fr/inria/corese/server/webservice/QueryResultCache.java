@@ -0,0 +1,159 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * Cache of serialized SPARQL query results
+ * Key: endpoint, graph version, normalized query, dataset, access level, format
+ * Entries of a previous graph version are never hit again: TripleStore update
+ * and load change the version, stale entries leave the cache by LRU eviction
+ * Cache is bounded by the size of cached results (in bytes)
+ * Server option -cache n: cache size in MB, 0 or absent: no cache
+ */
+public class QueryResultCache {
+
+    private static QueryResultCache singleton = new QueryResultCache(0);
+
+    // approximate size of entry object, key and map node
+    static final int OVERHEAD = 128;
+
+    private long maxSize;
+    private long size = 0;
+    private final LinkedHashMap<String, Entry> table;
+
+    private final AtomicLong hit = new AtomicLong();
+    private final AtomicLong miss = new AtomicLong();
+    private final AtomicLong bypass = new AtomicLong();
+    private final AtomicLong eviction = new AtomicLong();
+
+    static class Entry {
+        String result;
+        String contentType;
+        long size;
+
+        Entry(String result, String contentType, long size) {
+            this.result = result;
+            this.contentType = contentType;
+            this.size = size;
+        }
+
+        String getResult() {
+            return result;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+    }
+
+    QueryResultCache(long maxSize) {
+        this.maxSize = maxSize;
+        // access order: iteration starts with least recently used entry
+        table = new LinkedHashMap<>(256, 0.75f, true);
+    }
+
+    static QueryResultCache getSingleton() {
+        return singleton;
+    }
+
+    static void setSingleton(QueryResultCache cache) {
+        singleton = cache;
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Return key, null when cache is disabled
+     */
+    String key(TripleStore store, String query, List<String> defaut, List<String> named,
+            Object level, String format, int type) {
+        if (!isEnabled()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(store.getName()).append("\n")
+                .append(store.getVersion()).append("\n")
+                .append(level).append("\n")
+                .append(format).append("\n")
+                .append(type).append("\n")
+                .append(defaut).append("\n")
+                .append(named).append("\n")
+                .append(QueryText.normalize(query));
+        return sb.toString();
+    }
+
+    synchronized Entry get(String key) {
+        Entry e = table.get(key);
+        if (e == null) {
+            miss.incrementAndGet();
+        } else {
+            hit.incrementAndGet();
+        }
+        return e;
+    }
+
+    synchronized void put(String key, String result, String contentType) {
+        // java String: 2 bytes per char
+        long esize = 2L * (key.length() + result.length()) + OVERHEAD;
+        if (esize > maxSize / 4) {
+            // do not flush the cache for one huge result
+            return;
+        }
+        Entry old = table.put(key, new Entry(result, contentType, esize));
+        if (old != null) {
+            size -= old.size;
+        }
+        size += esize;
+        evict();
+    }
+
+    void evict() {
+        Iterator<Map.Entry<String, Entry>> it = table.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            size -= it.next().getValue().size;
+            it.remove();
+            eviction.incrementAndGet();
+        }
+    }
+
+    void bypass() {
+        if (isEnabled()) {
+            bypass.incrementAndGet();
+        }
+    }
+
+    synchronized void clear() {
+        table.clear();
+        size = 0;
+    }
+
+    long getHit() {
+        return hit.get();
+    }
+
+    long getMiss() {
+        return miss.get();
+    }
+
+    synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("enabled", isEnabled());
+        json.put("maxSize", maxSize);
+        json.put("size", size);
+        json.put("entries", table.size());
+        json.put("hit", hit.get());
+        json.put("miss", miss.get());
+        json.put("bypass", bypass.get());
+        json.put("eviction", eviction.get());
+        return json;
+    }
+
+}
@@ -0,0 +1,207 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lexical processing of SPARQL query text used by server side caches
+ * Query text is not parsed: string literals and IRIs are skipped, whitespace
+ * and comments are normalized elsewhere
+ */
+public class QueryText {
+
+    // annotation such as @federate, not language tag: in code() a literal
+    // is replaced by "" and a language tag follows it
+    static final String ANNOTATION = "(?<!\")@[a-z]";
+    // functions whose value differs from one evaluation to another
+    // service, load, function definition and annotation may have side effect
+    static final Pattern NON_DETERMINISTIC = Pattern.compile(
+            "\\b(rand|now|uuid|struuid|bnode)\\s*\\(|\\b(service|load|function)\\b|" + ANNOTATION,
+            Pattern.CASE_INSENSITIVE);
+
+    // function definition and annotation are processed at compile time
+    static final Pattern DEFINITION = Pattern.compile("\\bfunction\\b|" + ANNOTATION,
+            Pattern.CASE_INSENSITIVE);
+
+    // first keyword after prologue and annotations
+    static final Pattern FIRST_KEYWORD = Pattern.compile(
+            "^\\s*(?:(?:prefix\\s+[^\\s:]*:\\s*<>|base\\s*<>|@[^\\s]+(?:\\s*<>)*)\\s*)*([a-z]+)",
+            Pattern.CASE_INSENSITIVE);
+    // prefix and base declarations at the beginning of query text
+    static final Pattern PROLOGUE = Pattern.compile(
+            "^(?:\\s+|#[^\\n]*|prefix\\s+[^\\s:]*:\\s*<[^>]*>|base\\s*<[^>]*>)*",
+            Pattern.CASE_INSENSITIVE);
+    static final List<String> UPDATE = List.of("insert", "delete", "load", "clear", "create", "drop",
+            "copy", "move", "add", "with");
+
+    // INSERT DATA and DELETE DATA only, without blank node nor annotation
+    static final Pattern DATA_OPERATION = Pattern.compile("\\b(insert|delete)\\s+data\\b",
+            Pattern.CASE_INSENSITIVE);
+    static final List<String> NOT_DATA = List.of("where", "using", "with", "load", "clear", "drop", "create",
+            "copy", "move", "add", "service");
+    // tokens of code(): literal "", IRI <>, blank node _:, language tag or
+    // annotation, prefixed name (ex:add is not a keyword), word, other char
+    static final Pattern TOKEN = Pattern.compile(
+            "\"\"|<>|_:|@[a-z][a-z0-9-]*|[\\w.-]*:[\\w.-]*|\\w+|\\S", Pattern.CASE_INSENSITIVE);
+
+    private QueryText() {
+    }
+
+    /**
+     * Collapse whitespace and remove comments outside string literals and IRIs
+     * Two queries with the same normalized text are the same query
+     */
+    static String normalize(String query) {
+        StringBuilder sb = new StringBuilder(query.length());
+        int n = query.length();
+        boolean space = false;
+        for (int i = 0; i < n; i++) {
+            char c = query.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = literal(sb, query, i, space);
+                space = false;
+            } else if (c == '<' && isIRI(query, i)) {
+                int end = query.indexOf('>', i);
+                append(sb, space);
+                sb.append(query, i, end + 1);
+                i = end;
+                space = false;
+            } else if (c == '#') {
+                while (i + 1 < n && query.charAt(i + 1) != '\n') {
+                    i++;
+                }
+                space = true;
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                append(sb, space);
+                sb.append(c);
+                space = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    static void append(StringBuilder sb, boolean space) {
+        if (space && sb.length() > 0) {
+            sb.append(' ');
+        }
+    }
+
+    /**
+     * Copy string literal starting at i, return index of its last char
+     */
+    static int literal(StringBuilder sb, String query, int i, boolean space) {
+        append(sb, space);
+        char quote = query.charAt(i);
+        sb.append(quote);
+        int j = i + 1;
+        while (j < query.length()) {
+            char c = query.charAt(j);
+            sb.append(c);
+            if (c == '\\' && j + 1 < query.length()) {
+                sb.append(query.charAt(++j));
+            } else if (c == quote) {
+                return j;
+            }
+            j++;
+        }
+        return j;
+    }
+
+    /**
+     * IRI <...> with no whitespace, otherwise < is an operator
+     */
+    static boolean isIRI(String query, int i) {
+        for (int j = i + 1; j < query.length(); j++) {
+            char c = query.charAt(j);
+            if (c == '>') {
+                return true;
+            }
+            if (Character.isWhitespace(c) || c == '<' || c == '"' || c == '{' || c == '}') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Text without string literals and IRIs, used to search keywords
+     */
+    static String code(String query) {
+        StringBuilder sb = new StringBuilder(query.length());
+        int n = query.length();
+        for (int i = 0; i < n; i++) {
+            char c = query.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = literal(new StringBuilder(), query, i, false);
+                sb.append("\"\"");
+            } else if (c == '<' && isIRI(query, i)) {
+                i = query.indexOf('>', i);
+                sb.append("<>");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prefix and base declarations of query
+     */
+    static String prologue(String query) {
+        Matcher m = PROLOGUE.matcher(query);
+        return m.lookingAt() ? query.substring(0, m.end()) : "";
+    }
+
+    /**
+     * Query compilation has side effect such as function definition
+     */
+    static boolean hasDefinition(String query) {
+        return DEFINITION.matcher(code(query)).find();
+    }
+
+    /**
+     * SPARQL Update, decided on the first keyword of the query
+     */
+    static boolean isUpdate(String query) {
+        Matcher m = FIRST_KEYWORD.matcher(code(query).replaceAll("#[^\\n]*", " "));
+        return m.find() && UPDATE.contains(m.group(1).toLowerCase());
+    }
+
+    /**
+     * Update made of INSERT DATA and DELETE DATA operations that can be
+     * grouped with other such updates in one request
+     */
+    static boolean isDataUpdate(String query) {
+        String text = code(query).replaceAll("#[^\\n]*", " ");
+        return isUpdate(query) && DATA_OPERATION.matcher(text).find() && isData(text);
+    }
+
+    /**
+     * Code of update has no keyword of other operations, no blank node and no
+     * annotation, language tag follows a literal
+     */
+    static boolean isData(String text) {
+        Matcher m = TOKEN.matcher(text);
+        String previous = null;
+        while (m.find()) {
+            String token = m.group();
+            if (NOT_DATA.contains(token.toLowerCase()) || token.equals("_:") || token.equals("[")
+                    || (token.startsWith("@") && !"\"\"".equals(previous))) {
+                return false;
+            }
+            previous = token;
+        }
+        return true;
+    }
+
+    /**
+     * Query result may change from one evaluation to another on the same graph
+     */
+    static boolean isNonDeterministic(String query) {
+        return NON_DETERMINISTIC.matcher(code(query)).find();
+    }
+
+}
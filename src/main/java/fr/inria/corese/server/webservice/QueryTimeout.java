@@ -0,0 +1,294 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+import fr.inria.corese.core.sparql.triple.parser.Access;
+import fr.inria.corese.core.sparql.triple.parser.Access.Level;
+import fr.inria.corese.core.sparql.triple.parser.Context;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Query deadline
+ * /sparql?query=...&timeout=ms
+ * Server options: -timeout ms default timeout, -timeoutmax ms max timeout,
+ * -timeoutkey ms max timeout of request with access key
+ * Query is evaluated by the thread of the request (query executor or Jetty
+ * thread), a watchdog checks deadlines and client connections every SLICE ms
+ * When deadline is passed or client is gone, query is cancelled: the thread
+ * is interrupted (lock wait, service call) and the request fails with
+ * QueryTimeoutException at the next check of the evaluation
+ * kgram evaluation itself is not interrupted: a CPU bound evaluation goes on
+ * until it returns on its executor thread (QueryExecutor), while its client is
+ * answered 503 at the deadline
+ * Request resources (admission permit, compiled query, graph lock) are kept
+ * until evaluation ends
+ * Asynchronous request registers a Listener as request attribute: the watchdog
+ * answers 503 when the query is cancelled, without waiting for the evaluation
+ * Update that has started to modify the graph is not cancelled: it is not
+ * applied when its deadline is passed before
+ */
+public class QueryTimeout {
+
+    private static final Logger logger = LogManager.getLogger(QueryTimeout.class);
+    static final String TIMEOUT = "timeout";
+    static final String LISTENER = QueryTimeout.class.getName() + ".listener";
+    // check deadlines and client connections every SLICE ms
+    static final long SLICE = 200;
+
+    // 0: no timeout
+    private static long defaultTimeout = 0;
+    private static long maxTimeout = 0;
+    private static long maxTimeoutKey = 0;
+
+    // deadline of query evaluated by current thread
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+    private static final Set<Deadline> running = ConcurrentHashMap.newKeySet();
+    private static ScheduledExecutorService watchdog;
+
+    /**
+     * Notified by the watchdog when query is cancelled
+     */
+    interface Listener {
+        void cancelled(String message);
+    }
+
+    /**
+     * Deadline of a query evaluation
+     */
+    static class Deadline {
+        HttpServletRequest request;
+        Listener listener;
+        Thread thread = Thread.currentThread();
+        long timeout;
+        long end;
+        String message;
+        // update has started to modify the graph
+        boolean committed = false;
+        boolean done = false;
+
+        Deadline(HttpServletRequest request, long timeout) {
+            this.request = request;
+            this.timeout = timeout;
+            Object obj = (request == null) ? null : request.getAttribute(LISTENER);
+            if (obj instanceof Listener) {
+                listener = (Listener) obj;
+            }
+            this.end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - end >= 0;
+        }
+
+        synchronized boolean isCancelled() {
+            return message != null;
+        }
+
+        /**
+         * Called by watchdog: cancel evaluation unless it is done or committed
+         */
+        synchronized boolean cancel(String mes) {
+            if (done || committed || message != null) {
+                return false;
+            }
+            message = mes;
+            logger.warn(mes);
+            thread.interrupt();
+            return true;
+        }
+
+        /**
+         * Called by evaluation thread
+         */
+        synchronized void check() throws QueryTimeoutException {
+            if (message == null && !committed && isExpired()) {
+                message = "Query timeout: " + timeout + " ms";
+                logger.warn(message);
+            }
+            if (message != null) {
+                throw new QueryTimeoutException(message);
+            }
+        }
+
+        synchronized void commit() throws QueryTimeoutException {
+            check();
+            committed = true;
+        }
+
+        synchronized void finish() {
+            done = true;
+        }
+    }
+
+    private QueryTimeout() {
+    }
+
+    /**
+     * Timeout in ms of request, 0 means no timeout
+     * timeout parameter is bounded by max timeout of access level
+     */
+    static long getTimeout(HttpServletRequest request, Context c) {
+        long timeout = defaultTimeout;
+        String param = (request == null) ? null : request.getParameter(TIMEOUT);
+        if (param != null) {
+            try {
+                timeout = Long.parseLong(param);
+            } catch (NumberFormatException ex) {
+                logger.warn("Incorrect timeout: " + param);
+            }
+        }
+        long max = isPrivileged(c) && maxTimeoutKey > 0 ? maxTimeoutKey : maxTimeout;
+        if (max > 0 && (timeout <= 0 || timeout > max)) {
+            timeout = max;
+        }
+        return timeout;
+    }
+
+    /**
+     * Request with access key has higher access level than public query
+     */
+    static boolean isPrivileged(Context c) {
+        Level level = c.getLevel();
+        return level != null && level == Access.getQueryAccessLevel(true, true)
+                && level != Access.getQueryAccessLevel(true, false);
+    }
+
+    /**
+     * Evaluate task by current thread with deadline and client connection
+     * check
+     */
+    static <T> T run(HttpServletRequest request, long timeout, Callable<T> task) throws EngineException {
+        if (timeout <= 0 || current.get() != null) {
+            // nested evaluation is checked by deadline of request
+            return call(task);
+        }
+        Deadline deadline = new Deadline(request, timeout);
+        current.set(deadline);
+        running.add(deadline);
+        startWatchdog();
+        try {
+            T res = call(task);
+            deadline.check();
+            return res;
+        } catch (QueryTimeoutException ex) {
+            throw ex;
+        } catch (EngineException ex) {
+            // interrupted lock wait or service call
+            deadline.check();
+            throw ex;
+        } finally {
+            running.remove(deadline);
+            current.remove();
+            deadline.finish();
+            // clear interrupt of cancellation, thread is reused
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Check deadline of current thread, throw QueryTimeoutException when
+     * passed or cancelled
+     */
+    static void check() throws QueryTimeoutException {
+        Deadline deadline = current.get();
+        if (deadline != null) {
+            deadline.check();
+        }
+    }
+
+    /**
+     * Update of current thread starts to modify the graph: it is not cancelled
+     * any more, throw QueryTimeoutException when deadline is already passed
+     */
+    static void commit() throws QueryTimeoutException {
+        Deadline deadline = current.get();
+        if (deadline != null) {
+            deadline.commit();
+        }
+    }
+
+    static synchronized void startWatchdog() {
+        if (watchdog == null) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "corese-query-watchdog");
+                t.setDaemon(true);
+                return t;
+            });
+            watchdog.scheduleWithFixedDelay(QueryTimeout::watch, SLICE, SLICE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancel queries whose deadline is passed or whose client is gone
+     */
+    static void watch() {
+        for (Deadline deadline : running) {
+            try {
+                String mes = null;
+                if (deadline.isExpired()) {
+                    mes = "Query timeout: " + deadline.timeout + " ms";
+                } else if (!isConnected(deadline.request)) {
+                    mes = "Query cancelled: client disconnected";
+                }
+                if (mes != null && deadline.cancel(mes) && deadline.listener != null) {
+                    deadline.listener.cancelled(mes);
+                }
+            } catch (RuntimeException ex) {
+                logger.error(ex.getMessage());
+            }
+        }
+    }
+
+    static int getRunning() {
+        return running.size();
+    }
+
+    static <T> T call(Callable<T> task) throws EngineException {
+        try {
+            return task.call();
+        } catch (EngineException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new EngineException(ex);
+        }
+    }
+
+    /**
+     * Jetty connection of request is still open
+     */
+    static boolean isConnected(HttpServletRequest request) {
+        if (request == null) {
+            return true;
+        }
+        Request base = Request.getBaseRequest(request);
+        if (base == null) {
+            return true;
+        }
+        HttpChannel channel = base.getHttpChannel();
+        return channel == null || channel.getEndPoint() == null || channel.getEndPoint().isOpen();
+    }
+
+    static void setDefaultTimeout(long t) {
+        defaultTimeout = t;
+    }
+
+    static void setMaxTimeout(long t) {
+        maxTimeout = t;
+    }
+
+    static void setMaxTimeoutKey(long t) {
+        maxTimeoutKey = t;
+    }
+
+}
@@ -0,0 +1,17 @@
+package fr.inria.corese.server.webservice;
+
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+
+/**
+ * Query evaluation exceeded its deadline or its client disconnected
+ * SPARQL endpoint returns 503 Service Unavailable
+ */
+public class QueryTimeoutException extends EngineException {
+
+    private static final long serialVersionUID = 1L;
+
+    public QueryTimeoutException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,79 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.IOException;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet filter that records request count, latency, errors and in-flight
+ * requests in Metrics
+ * Asynchronous request: recorded when the async response completes
+ */
+public class RequestMetrics implements Filter {
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletResponse resp = (HttpServletResponse) response;
+        Metrics.Timer timer = Metrics.start((HttpServletRequest) request);
+        boolean async = false;
+        int status = 500;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new Listener(timer));
+                async = true;
+            }
+            status = resp.getStatus();
+        } finally {
+            if (!async) {
+                // exception: recorded as error 500
+                Metrics.end(timer, status);
+            }
+        }
+    }
+
+    static class Listener implements AsyncListener {
+        private Metrics.Timer timer;
+
+        Listener(Metrics.Timer timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            ServletResponse response = event.getSuppliedResponse();
+            int status = (response instanceof HttpServletResponse) ? ((HttpServletResponse) response).getStatus()
+                    : 500;
+            Metrics.end(timer, status);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            Metrics.end(timer, 503);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            Metrics.end(timer, 500);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+}
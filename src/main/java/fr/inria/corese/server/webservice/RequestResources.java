@@ -0,0 +1,193 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+
+/**
+ * Servlet filter that closes resources held by a request once its response
+ * has been written, e.g. compiled query leased from PlanCache
+ * Query result Mappings is serialized after TripleStore query returns, the
+ * resources it depends on must live until then
+ * Asynchronous request (query evaluated by QueryExecutor): resources are
+ * closed when the async response completes
+ * An evaluation in progress (begin/close of Work) keeps the resources: when
+ * the response is written before evaluation ends (timeout), resources are
+ * closed when evaluation ends
+ */
+public class RequestResources implements Filter {
+
+    private static final Logger logger = LogManager.getLogger(RequestResources.class);
+    static final String ATTRIBUTE = RequestResources.class.getName();
+
+    /**
+     * Resources of a request, closed when response is written and no
+     * evaluation is in progress
+     */
+    static class Resources {
+        private final List<AutoCloseable> list = new ArrayList<>();
+        // response not written yet + evaluations in progress
+        private int users = 1;
+        private boolean ended = false;
+
+        synchronized boolean add(AutoCloseable res) {
+            if (users == 0) {
+                return false;
+            }
+            list.add(res);
+            return true;
+        }
+
+        synchronized boolean enter() {
+            if (users == 0) {
+                return false;
+            }
+            users++;
+            return true;
+        }
+
+        void leave() {
+            synchronized (this) {
+                if (--users > 0) {
+                    return;
+                }
+            }
+            closeAll(list);
+        }
+
+        /**
+         * Response is written, called once
+         */
+        void end() {
+            synchronized (this) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+            }
+            leave();
+        }
+    }
+
+    /**
+     * Evaluation in progress, close() when evaluation ends
+     */
+    static class Work implements AutoCloseable {
+        private Resources resources;
+
+        Work(Resources resources) {
+            this.resources = resources;
+        }
+
+        @Override
+        public void close() {
+            if (resources != null) {
+                resources.leave();
+                resources = null;
+            }
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        // registered by evaluation thread when request is asynchronous
+        Resources resources = new Resources();
+        request.setAttribute(ATTRIBUTE, resources);
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new Closer(resources));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                resources.end();
+            }
+        }
+    }
+
+    /**
+     * Close resources at the end of async request
+     */
+    static class Closer implements AsyncListener {
+        private Resources resources;
+
+        Closer(Resources resources) {
+            this.resources = resources;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            resources.end();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            resources.end();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            resources.end();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // async context is reused: keep listening
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    static Resources getResources(ServletRequest request) {
+        if (request == null) {
+            return null;
+        }
+        Object obj = request.getAttribute(ATTRIBUTE);
+        return (obj instanceof Resources) ? (Resources) obj : null;
+    }
+
+    /**
+     * Register resource to be closed at the end of request
+     * Return false when request is not managed by the filter: caller is in
+     * charge of the resource
+     */
+    static boolean register(ServletRequest request, AutoCloseable res) {
+        Resources resources = getResources(request);
+        return resources != null && resources.add(res);
+    }
+
+    /**
+     * Evaluation of request starts: resources are kept until it ends, even if
+     * response is written before
+     */
+    static Work begin(ServletRequest request) {
+        Resources resources = getResources(request);
+        return new Work((resources != null && resources.enter()) ? resources : null);
+    }
+
+    static void closeAll(List<AutoCloseable> list) {
+        // last in first out
+        for (int i = list.size() - 1; i >= 0; i--) {
+            try {
+                list.get(i).close();
+            } catch (Exception e) {
+                logger.error(e.getMessage());
+            }
+        }
+        list.clear();
+    }
+
+}
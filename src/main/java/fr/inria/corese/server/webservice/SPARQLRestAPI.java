@@ -3,9 +3,11 @@ package fr.inria.corese.server.webservice;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
 
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.load.LoadException;
@@ -14,6 +16,7 @@ import fr.inria.corese.core.print.JSONFormat;
 import fr.inria.corese.core.print.ResultFormat;
 import fr.inria.corese.core.query.QueryProcess;
 import fr.inria.corese.core.kgram.core.Eval;
+import fr.inria.corese.core.kgram.core.Mapping;
 import fr.inria.corese.core.kgram.core.Mappings;
 import fr.inria.corese.core.sparql.api.ResultFormatDef;
 import fr.inria.corese.core.sparql.exceptions.EngineException;
@@ -22,6 +25,7 @@ import fr.inria.corese.core.sparql.triple.parser.NSManager;
 import fr.inria.corese.core.sparql.triple.parser.URLParam;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.FormParam;
 import jakarta.ws.rs.GET;
@@ -31,8 +35,11 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
 
 /**
  * KGRAM SPARQL endpoint exposed as a rest web service.
@@ -235,13 +242,7 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @FormParam("source") String source) {
         logger.traceEntry("loadRDF");
         String output = "File Uploaded";
-        if (source != null) {
-            if (source.isEmpty()) {
-                source = null;
-            } else if (!source.startsWith("http://")) {
-                source = "http://" + source;
-            }
-        }
+        source = getSource(source);
 
         if (remotePath == null) {
             String error = "Null remote path";
@@ -266,6 +267,147 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
         return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(output).build();
     }
 
+    /**
+     * Named graph of loaded data, null for default graph
+     */
+    static String getSource(String source) {
+        if (source == null || source.isEmpty()) {
+            return null;
+        }
+        return (source.startsWith("http://") || source.startsWith("https://")) ? source : "http://" + source;
+    }
+
+    /**
+     * Parallel load of N-Triples/N-Quads document (.nt .nq, possibly .gz)
+     * Other formats are loaded by standard load
+     * Return load statistics: triples, time, triples per second
+     */
+    @POST
+    @Path("/load/bulk")
+    @Produces({ JSON })
+    public Response bulkLoadRDF(
+            @FormParam("remote_path") String remotePath,
+            @FormParam("source") String source) {
+        if (remotePath == null) {
+            return Response.status(404).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity("Null remote path")
+                    .build();
+        }
+        if (getTripleStore().isProtect()) {
+            return Response.status(Response.Status.FORBIDDEN).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Protected server").build();
+        }
+        source = getSource(source);
+        try {
+            if (!BulkLoader.accept(remotePath)) {
+                getTripleStore().load(remotePath, source);
+                return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                        .entity("File Uploaded").build();
+            }
+            BulkLoader loader = new BulkLoader(remotePath, source);
+            getTripleStore().bulkLoad(loader, source);
+            return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity(loader.toJSON().toString(2)).build();
+        } catch (LoadException ex) {
+            logger.error(ex);
+            return Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity(ex.getMessage()).build();
+        }
+    }
+
+    /**
+     * Submit asynchronous load job
+     * Return 202 with job status, Location is the URL of the job
+     * source: named graph, http:// is added as for /load
+     */
+    @POST
+    @Path("/load/job")
+    @Produces({ JSON })
+    public Response submitLoadJob(@jakarta.ws.rs.core.Context UriInfo uriInfo,
+            @FormParam("remote_path") String remotePath,
+            @FormParam("source") String source) {
+        if (remotePath == null) {
+            return Response.status(404).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity("Null remote path")
+                    .build();
+        }
+        if (getTripleStore().isProtect()) {
+            return Response.status(Response.Status.FORBIDDEN).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Protected server").build();
+        }
+        source = getSource(source);
+        try {
+            LoadJob job = LoadJob.submit(getTripleStore(), remotePath, source);
+            return Response.status(Response.Status.ACCEPTED).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .location(uriInfo.getAbsolutePathBuilder().path(job.getId()).build())
+                    .entity(job.toJSON().toString(2)).build();
+        } catch (RejectedExecutionException ex) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .header("Retry-After", "60")
+                    .entity("Too many load jobs").build();
+        }
+    }
+
+    /**
+     * List of load jobs: pending, running and last finished ones
+     */
+    @GET
+    @Path("/load/job")
+    @Produces({ JSON })
+    public Response getLoadJobs() {
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(LoadJob.listJSON().toString(2)).build();
+    }
+
+    @GET
+    @Path("/load/job/{id}")
+    @Produces({ JSON })
+    public Response getLoadJob(@PathParam("id") String id) {
+        LoadJob job = LoadJob.get(id);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Undefined load job: " + id).build();
+        }
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(job.toJSON().toString(2)).build();
+    }
+
+    /**
+     * Cancel load job: pending job or running bulk load, 409 otherwise
+     */
+    @DELETE
+    @Path("/load/job/{id}")
+    @Produces({ JSON })
+    public Response cancelLoadJob(@PathParam("id") String id) {
+        LoadJob job = LoadJob.get(id);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Undefined load job: " + id).build();
+        }
+        if (getTripleStore().isProtect()) {
+            return Response.status(Response.Status.FORBIDDEN).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Protected server").build();
+        }
+        if (!job.cancel()) {
+            JSONObject json = job.toJSON();
+            json.put("message", job.isFinished() ? "Load job is finished"
+                    : "Running standard load cannot be cancelled, only N-Triples/N-Quads bulk load");
+            return Response.status(Response.Status.CONFLICT).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity(json.toString(2)).build();
+        }
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(job.toJSON().toString(2)).build();
+    }
+
+    /**
+     * Progress of running bulk loads
+     */
+    @GET
+    @Path("/load/bulk")
+    @Produces({ JSON })
+    public Response getBulkLoad() {
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(BulkLoader.listJSON().toString(2)).build();
+    }
+
     @GET
     @Path("/debug")
     public Response setDebug(@QueryParam("value") String debug, @QueryParam("detail") String detail) {
@@ -279,6 +421,172 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
                 .entity("debug: " + isDebug + " ; " + "detail: " + isDetail).build();
     }
 
+    /**
+     * Query result cache and compiled query cache statistics of default endpoint
+     * clear=true empties the caches
+     */
+    @GET
+    @Path("/cache")
+    @Produces({ JSON })
+    public Response getCache(@QueryParam("clear") String clear) {
+        if ("true".equals(clear) && !isProtected) {
+            QueryResultCache.getSingleton().clear();
+            getTripleStore().getPlanCache().clear();
+        }
+        JSONObject json = QueryResultCache.getSingleton().toJSON();
+        json.put("plan", getTripleStore().getPlanCache().toJSON());
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(json.toString(2)).build();
+    }
+
+    /**
+     * Admission control statistics per endpoint: active requests, queue depth,
+     * wait time, rejected requests
+     */
+    @GET
+    @Path("/admission")
+    @Produces({ JSON })
+    public Response getAdmission() {
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(AdmissionController.listJSON().toString(2)).build();
+    }
+
+    /**
+     * Slow query log: last slow queries, most recent first
+     * limit: max number of queries, min: min latency in ms
+     * Protected server: requires access key
+     */
+    @GET
+    @Path("/slow")
+    @Produces({ JSON })
+    public Response getSlowQueries(@jakarta.ws.rs.core.Context HttpServletRequest request,
+            @QueryParam("access") String access,
+            @DefaultValue("50") @QueryParam("limit") int limit,
+            @DefaultValue("0") @QueryParam("min") long min) {
+        if (isProtected && !hasKey(request, access)) {
+            return Response.status(403).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Slow query log requires access key").build();
+        }
+        JSONObject json = new JSONObject();
+        json.put("threshold", SlowQueryLog.getThreshold());
+        json.put("queries", SlowQueryLog.listJSON(limit, min));
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(json.toString(2)).build();
+    }
+
+    /**
+     * Query executor statistics per endpoint: threads, active and queued
+     * queries, rejected queries
+     */
+    @GET
+    @Path("/executor")
+    @Produces({ JSON })
+    public Response getExecutor() {
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(QueryExecutor.listJSON().toString(2)).build();
+    }
+
+    /**
+     * Readers-writer lock statistics of an endpoint: lock acquisition count,
+     * wait time and timeout of queries and updates
+     * Snapshot mode: pinned and retained graph versions
+     * Update batches: batch size and commit latency
+     */
+    @GET
+    @Path("/lock")
+    @Produces({ JSON })
+    public Response getLock(@QueryParam("name") String name) {
+        TripleStore ts = getTripleStore(name);
+        if (ts == null) {
+            return Response.status(Response.Status.NOT_FOUND).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Undefined endpoint: " + name).build();
+        }
+        JSONObject json = ts.getLock().toJSON();
+        json.put("snapshot", ts.isSnapshot());
+        if (ts.isSnapshot()) {
+            json.put("snapshots", ts.getSnapshot().toJSON());
+        }
+        if (UpdateBatcher.isEnabled()) {
+            json.put("batch", ts.getBatcher().toJSON());
+        }
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(json.toString(2)).build();
+    }
+
+    /**
+     * List of stored queries
+     */
+    @GET
+    @Path("/stored")
+    @Produces({ JSON })
+    public Response getStoredQueries() {
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(StoredQuery.listJSON().toString(2)).build();
+    }
+
+    /**
+     * Evaluate stored query with parameter values
+     * /sparql/stored/person?$person=<http://ex.org/a>
+     * Result format is format parameter or Accept header
+     */
+    @GET
+    @Path("/stored/{id}")
+    public void getStoredQuery(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
+            @PathParam("id") String id,
+            @QueryParam("access") String access,
+            @QueryParam("format") String format) {
+        StoredQuery sq = StoredQuery.get(id);
+        if (sq == null) {
+            async.resume(Response.status(404).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Undefined stored query: " + id).build());
+            return;
+        }
+        Mapping bind;
+        try {
+            bind = sq.bind(request.getParameterMap());
+        } catch (EngineException ex) {
+            async.resume(Response.status(400).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity(ex.getMessage()).build());
+            return;
+        }
+        String ft = (format == null) ? request.getHeader("Accept") : format;
+        QueryExecutor.submit(request, async, null, () -> new SPARQLResult(request).setVisitor(getVisitor())
+                .getResultFormat(null, sq, bind, access, ft));
+    }
+
+    /**
+     * Register stored query
+     * variable is a declared parameter such as ?person
+     * Protected server: requires access key
+     */
+    @POST
+    @Path("/stored/{id}")
+    public Response defineStoredQuery(@jakarta.ws.rs.core.Context HttpServletRequest request,
+            @PathParam("id") String id,
+            @FormParam("query") String query,
+            @FormParam("variable") List<String> variables,
+            @FormParam("access") String access) {
+        if (isProtected && !hasKey(request, access)) {
+            return Response.status(403).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Stored query definition requires access key").build();
+        }
+        if (query == null) {
+            return Response.status(400).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity("Undefined query parameter").build();
+        }
+        StoredQuery sq;
+        try {
+            sq = StoredQuery.define(id, query, variables);
+        } catch (EngineException ex) {
+            return Response.status(400).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                    .entity(ex.getMessage()).build();
+        }
+        logger.info("Stored query: " + id + " " + sq.getVariables());
+        return Response.status(200).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*")
+                .entity(sq.toJSON().toString(2)).build();
+    }
+
     // ----------------------------------------------------
     // SPARQL QUERY - SELECT and ASK with HTTP GET
     // ----------------------------------------------------
@@ -299,7 +607,8 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
      */
     @GET
     @Produces({ SPARQL_RESULTS_XML, XML })
-    public Response getSPARQLXMLForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getSPARQLXMLForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             // name of server from SPARQLService
             @PathParam("name") String name,
             // name of federation from SPARQLService
@@ -323,7 +632,7 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
         // in this case, the value of format is taken into account
         // if there is header accept, the value of format is overloaded by header accept
         // if there is no header and no format, default format is chosen (xml or turtle)
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, format,
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, format,
                 UNDEF_FORMAT, transform);
     }
 
@@ -344,6 +653,27 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
         return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, null, type, null);
     }
 
+    /**
+     * Evaluate on query executor of endpoint name and resume async response
+     * Jetty thread is released while query is evaluated
+     */
+    public void getResultFormat(AsyncResponse async, HttpServletRequest request,
+            String name, String oper, List<String> uri, List<String> param, List<String> mode,
+            String query, String access,
+            List<String> defaut, List<String> named,
+            String format, int type, List<String> transform) {
+        QueryExecutor.submit(request, async, name, () -> getResultFormat(request, name, oper, uri, param, mode, query,
+                access, defaut, named, format, type, transform));
+    }
+
+    public void getResultFormat(AsyncResponse async, HttpServletRequest request,
+            String name, String oper, List<String> uri, List<String> param, List<String> mode,
+            String query, String access,
+            List<String> defaut, List<String> named,
+            int type) {
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, null, type, null);
+    }
+
     /**
      * parameter format=application/sparql-results+json
      * format may be null: return default format wrt map kind
@@ -386,7 +716,8 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
     @GET
     @Produces({ HTML })
-    public Response getHTMLForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getHTMLForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             // name of server from SPARQLService
             @PathParam("name") String name,
             // name of federation from SPARQLService
@@ -404,7 +735,7 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
         if ((query == null || query.isEmpty()) &&
                 (mode == null || mode.isEmpty())) {
             query = "select * where {?s ?p ?o} limit 5";
-            return new Transformer()
+            async.resume(new Transformer()
                     .queryGETHTML(
                             request,
                             oper,
@@ -420,15 +751,17 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
                             null,
                             null,
                             defaut,
-                            named);
+                            named));
+            return;
         }
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, null, HTML_FORMAT,
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, null, HTML_FORMAT,
                 transform);
     }
 
     @GET
     @Produces({ "text/plain" })
-    public Response getPlainTextForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getPlainTextForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @QueryParam("query") String query,
             @QueryParam("access") String access,
             @PathParam("name") String name,
@@ -439,12 +772,13 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TEXT_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TEXT_FORMAT);
     }
 
     @GET
     @Produces(SPARQL_RESULTS_JSON)
-    public Response getTriplesJSONForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesJSONForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -456,13 +790,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, null, JSON_FORMAT,
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, null, JSON_FORMAT,
                 transform);
     }
 
     @GET
     @Produces(SPARQL_RESULTS_CSV)
-    public Response getTriplesCSVForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesCSVForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -473,12 +808,13 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, CSV_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, CSV_FORMAT);
     }
 
     @GET
     @Produces(SPARQL_RESULTS_TSV)
-    public Response getTriplesTSVForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesTSVForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -489,12 +825,13 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TSV_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TSV_FORMAT);
     }
 
     @GET
     @Produces(SPARQL_RESULTS_MD)
-    public Response getTriplesMDForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesMDForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -505,7 +842,7 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, MARKDOWN_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, MARKDOWN_FORMAT);
     }
 
     // ----------------------------------------------------
@@ -514,7 +851,8 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
     @GET
     @Produces(RDF_XML)
-    public Response getRDFGraphXMLForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphXMLForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -525,12 +863,13 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, RDF_XML_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, RDF_XML_FORMAT);
     }
 
     @GET
     @Produces({ TURTLE_TEXT, TURTLE, NT_TEXT })
-    public Response getRDFGraphNTripleForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphNTripleForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -541,12 +880,13 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TURTLE_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TURTLE_FORMAT);
     }
 
     @GET
     @Produces({ TRIG_TEXT, TRIG })
-    public Response getRDFGraphTrigForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphTrigForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -557,12 +897,13 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TRIG_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TRIG_FORMAT);
     }
 
     @GET
     @Produces({ JSON, JSON_LD })
-    public Response getRDFGraphJsonLDForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphJsonLDForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -573,12 +914,13 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, JSONLD_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, JSONLD_FORMAT);
     }
 
     @GET
     @Produces({ N_TRIPLES })
-    public Response getRDFGraphNTriplesForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphNTriplesForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -589,12 +931,13 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, NTRIPLES_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, NTRIPLES_FORMAT);
     }
 
     @GET
     @Produces({ N_QUADS })
-    public Response getRDFGraphNQuadsForGet(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphNQuadsForGet(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @QueryParam("query") String query,
@@ -611,17 +954,19 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
         for (String profile : profiles) {
             if (profile.equals(this.CN10_SHA) || profile.equals(this.CN10_SHA256)) {
 
-                return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named,
+                getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named,
                         RDFC10_FORMAT);
+                return;
             }
             if (profile.equals(this.CN10_SHA384)) {
 
-                return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named,
+                getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named,
                         RDFC10_SHA384_FORMAT);
+                return;
             }
         }
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, NQUADS_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, NQUADS_FORMAT);
     }
 
     // ----------------------------------------------------
@@ -639,7 +984,8 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
     @POST
     @Produces({ SPARQL_RESULTS_XML, XML })
     @Consumes(SPARQL_QUERY)
-    public Response getXMLForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getXMLForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -654,13 +1000,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, XML_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, XML_FORMAT);
     }
 
     @POST
     @Produces({ SPARQL_RESULTS_CSV })
     @Consumes(SPARQL_QUERY)
-    public Response getCSVForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getCSVForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -675,13 +1022,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, CSV_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, CSV_FORMAT);
     }
 
     @POST
     @Produces({ SPARQL_RESULTS_TSV })
     @Consumes(SPARQL_QUERY)
-    public Response getTSVForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTSVForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -696,13 +1044,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TSV_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TSV_FORMAT);
     }
 
     @POST
     @Produces({ SPARQL_RESULTS_MD })
     @Consumes(SPARQL_QUERY)
-    public Response getMDForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getMDForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -717,13 +1066,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, MARKDOWN_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, MARKDOWN_FORMAT);
     }
 
     @POST
     @Produces({ TURTLE, TURTLE_TEXT })
     @Consumes(SPARQL_QUERY)
-    public Response getTurtleForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTurtleForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -738,13 +1088,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TURTLE_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TURTLE_FORMAT);
     }
 
     @POST
     @Produces({ RDF_XML })
     @Consumes(SPARQL_QUERY)
-    public Response getRDFXMLForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFXMLForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -759,13 +1110,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, RDF_XML_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, RDF_XML_FORMAT);
     }
 
     @POST
     @Produces({ TRIG })
     @Consumes(SPARQL_QUERY)
-    public Response getTrigForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTrigForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -780,13 +1132,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TRIG_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TRIG_FORMAT);
     }
 
     @POST
     @Produces({ JSON_LD })
     @Consumes(SPARQL_QUERY)
-    public Response getJSONLDForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getJSONLDForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -801,13 +1154,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, JSONLD_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, JSONLD_FORMAT);
     }
 
     @POST
     @Produces({ NT_TEXT, N_TRIPLES })
     @Consumes(SPARQL_QUERY)
-    public Response getNTriplesForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getNTriplesForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -822,13 +1176,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, NTRIPLES_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, NTRIPLES_FORMAT);
     }
 
     @POST
     @Produces({ N_QUADS })
     @Consumes(SPARQL_QUERY)
-    public Response getNQuadsForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getNQuadsForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -843,13 +1198,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, NQUADS_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, NQUADS_FORMAT);
     }
 
     @POST
     @Produces({ TEXT })
     @Consumes(SPARQL_QUERY)
-    public Response getXMLForPostText(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getXMLForPostText(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -864,13 +1220,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TEXT_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TEXT_FORMAT);
     }
 
     @POST
     @Produces(SPARQL_RESULTS_JSON)
     @Consumes(SPARQL_QUERY)
-    public Response getTriplesJSONForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesJSONForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @QueryParam("query") String query,
@@ -884,7 +1241,7 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             String message) {
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, JSON_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, JSON_FORMAT);
     }
 
     /**
@@ -894,7 +1251,8 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
     @POST
     @Produces({ SPARQL_RESULTS_XML, XML })
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getTriplesXMLForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesXMLForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             // name of server with a specific rdf graph (SPARQLService)
             @PathParam("name") String name,
             // name of federation (SPARQLFederate)
@@ -921,7 +1279,7 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
         }
 
         // dataset(defaut, using), dataset(named, usingNamed)
-        return getResultFormat(request, name, oper, uri, param, mode, query,
+        getResultFormat(async, request, name, oper, uri, param, mode, query,
                 access, defaut, named, format, UNDEF_FORMAT, transform);
     }
 
@@ -935,7 +1293,8 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
     @POST
     @Produces(HTML)
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getHTMLForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getHTMLForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -950,13 +1309,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, HTML_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, HTML_FORMAT);
     }
 
     @POST
     @Produces(TEXT)
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getTriplesTEXTForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesTEXTForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -970,13 +1330,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             String message) {
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TEXT_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TEXT_FORMAT);
     }
 
     @POST
     @Produces(SPARQL_RESULTS_JSON)
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getTriplesJSONForPostFormUrlEncoded(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesJSONForPostFormUrlEncoded(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -991,14 +1352,15 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             String message) {
 
         query = getQuery(query, update, message);
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, null, JSON_FORMAT,
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, null, JSON_FORMAT,
                 transform);
     }
 
     @POST
     @Produces(SPARQL_RESULTS_CSV)
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getTriplesCSVForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesCSVForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1014,14 +1376,15 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, null, CSV_FORMAT,
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, null, CSV_FORMAT,
                 transform);
     }
 
     @POST
     @Produces(SPARQL_RESULTS_TSV)
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getTriplesTSVForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getTriplesTSVForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1036,7 +1399,7 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             String message) {
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, null, TSV_FORMAT,
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, null, TSV_FORMAT,
                 transform);
     }
 
@@ -1047,7 +1410,8 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
     @POST
     @Produces(RDF_XML)
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getRDFGraphXMLForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphXMLForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1062,13 +1426,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, RDF_XML_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, RDF_XML_FORMAT);
     }
 
     @POST
     @Produces({ TURTLE_TEXT, TURTLE, NT_TEXT })
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getRDFGraphNTripleForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphNTripleForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1083,13 +1448,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TURTLE_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TURTLE_FORMAT);
     }
 
     @POST
     @Produces({ SPARQL_RESULTS_MD })
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getRDFGraphMDForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphMDForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1104,13 +1470,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
 
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, MARKDOWN_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, MARKDOWN_FORMAT);
     }
 
     @POST
     @Produces({ JSON, JSON_LD })
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getRDFGraphJsonLDForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphJsonLDForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1124,13 +1491,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             String message) {
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, JSONLD_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, JSONLD_FORMAT);
     }
 
     @POST
     @Produces({ N_TRIPLES })
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getRDFGraphNTriplesForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphNTriplesForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1144,13 +1512,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             String message) {
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, NTRIPLES_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, NTRIPLES_FORMAT);
     }
 
     @POST
     @Produces({ TRIG, TRIG_TEXT })
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getRDFGraphTrigForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphTrigForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1164,13 +1533,14 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             String message) {
         query = getQuery(query, update, message);
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, TRIG_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, TRIG_FORMAT);
     }
 
     @POST
     @Produces({ N_QUADS })
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public Response getRDFGraphNQuadsForPost(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void getRDFGraphNQuadsForPost(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             @PathParam("name") String name,
             @PathParam("oper") String oper,
             @DefaultValue("") @FormParam("query") String query,
@@ -1190,17 +1560,19 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
         for (String profile : profiles) {
             if (profile.equals(this.CN10_SHA) || profile.equals(this.CN10_SHA256)) {
 
-                return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named,
+                getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named,
                         RDFC10_FORMAT);
+                return;
             }
             if (profile.equals(this.CN10_SHA384)) {
 
-                return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named,
+                getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named,
                         RDFC10_SHA384_FORMAT);
+                return;
             }
         }
 
-        return getResultFormat(request, name, oper, uri, param, mode, query, access, defaut, named, NQUADS_FORMAT);
+        getResultFormat(async, request, name, oper, uri, param, mode, query, access, defaut, named, NQUADS_FORMAT);
     }
 
     // ----------------------------------------------------
@@ -1222,7 +1594,8 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
     @POST
     @Consumes(SPARQL_UPDATE_QUERY)
     @Produces(SPARQL_RESULTS_XML)
-    public Response updateTriplesDirectXML(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void updateTriplesDirectXML(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             String message, // standard parameter, do not add @QueryParam()
             @PathParam("name") String name,
             @PathParam("oper") String oper,
@@ -1233,18 +1606,19 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
         if (message != null) {
-            return getResultFormat(request, name, oper, uri, param, mode, message, access, defaut, named, XML_FORMAT);
+            getResultFormat(async, request, name, oper, uri, param, mode, message, access, defaut, named, XML_FORMAT);
         } else {
             logger.warn("Null update query !");
-            return Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
-                    .build();
+            async.resume(Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
+                    .build());
         }
     }
 
     @POST
     @Consumes(SPARQL_UPDATE_QUERY)
     @Produces(SPARQL_RESULTS_CSV)
-    public Response updateTriplesDirectCSV(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void updateTriplesDirectCSV(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             String message, // standard parameter, do not add @QueryParam()
             @PathParam("name") String name,
             @PathParam("oper") String oper,
@@ -1255,18 +1629,19 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
         if (message != null) {
-            return getResultFormat(request, name, oper, uri, param, mode, message, access, defaut, named, CSV_FORMAT);
+            getResultFormat(async, request, name, oper, uri, param, mode, message, access, defaut, named, CSV_FORMAT);
         } else {
             logger.warn("Null update query !");
-            return Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
-                    .build();
+            async.resume(Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
+                    .build());
         }
     }
 
     @POST
     @Consumes(SPARQL_UPDATE_QUERY)
     @Produces(SPARQL_RESULTS_TSV)
-    public Response updateTriplesDirectTSV(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void updateTriplesDirectTSV(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             String message, // standard parameter, do not add @QueryParam()
             @PathParam("name") String name,
             @PathParam("oper") String oper,
@@ -1277,18 +1652,19 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
         if (message != null) {
-            return getResultFormat(request, name, oper, uri, param, mode, message, access, defaut, named, TSV_FORMAT);
+            getResultFormat(async, request, name, oper, uri, param, mode, message, access, defaut, named, TSV_FORMAT);
         } else {
             logger.warn("Null update query !");
-            return Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
-                    .build();
+            async.resume(Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
+                    .build());
         }
     }
 
     @POST
     @Consumes(SPARQL_UPDATE_QUERY)
     @Produces(SPARQL_RESULTS_JSON)
-    public Response updateTriplesDirectJSON(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void updateTriplesDirectJSON(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             String message, // standard parameter, do not add @QueryParam()
             @PathParam("name") String name,
             @PathParam("oper") String oper,
@@ -1299,18 +1675,19 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
         if (message != null) {
-            return getResultFormat(request, name, oper, uri, param, mode, message, access, defaut, named, JSON_FORMAT);
+            getResultFormat(async, request, name, oper, uri, param, mode, message, access, defaut, named, JSON_FORMAT);
         } else {
             logger.warn("Null update query !");
-            return Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
-                    .build();
+            async.resume(Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
+                    .build());
         }
     }
 
     @POST
     @Consumes(SPARQL_UPDATE_QUERY)
     @Produces(SPARQL_RESULTS_MD)
-    public Response updateTriplesDirectMD(@jakarta.ws.rs.core.Context HttpServletRequest request,
+    public void updateTriplesDirectMD(@Suspended AsyncResponse async,
+            @jakarta.ws.rs.core.Context HttpServletRequest request,
             String message, // standard parameter, do not add @QueryParam()
             @PathParam("name") String name,
             @PathParam("oper") String oper,
@@ -1321,11 +1698,12 @@ public class SPARQLRestAPI implements ResultFormatDef, URLParam {
             @QueryParam("mode") List<String> mode,
             @QueryParam("uri") List<String> uri) {
         if (message != null) {
-            return getResultFormat(request, name, oper, uri, param, mode, message, access, defaut, named, MARKDOWN_FORMAT);
+            getResultFormat(async, request, name, oper, uri, param, mode, message, access, defaut, named,
+                    MARKDOWN_FORMAT);
         } else {
             logger.warn("Null update query !");
-            return Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
-                    .build();
+            async.resume(Response.status(ERROR).header(HEADER_ACCESS_CONTROL_ALLOW_ORIGIN, "*").entity(ERROR_ENDPOINT)
+                    .build());
         }
     }
 
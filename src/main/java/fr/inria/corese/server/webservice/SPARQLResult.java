@@ -9,12 +9,16 @@ import java.util.Optional;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
 
+import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.compiler.federate.FederateVisitor;
 import fr.inria.corese.core.print.ResultFormat;
 import fr.inria.corese.core.print.rdfc10.CanonicalRdf10.CanonicalizationException;
+import fr.inria.corese.core.kgram.core.Mapping;
 import fr.inria.corese.core.kgram.core.Mappings;
 import fr.inria.corese.server.webservice.message.LinkedResult;
+import fr.inria.corese.server.webservice.message.TripleStoreExplain;
 import fr.inria.corese.core.sparql.api.IDatatype;
 import fr.inria.corese.core.sparql.api.ResultFormatDef;
 import fr.inria.corese.core.sparql.datatype.DatatypeMap;
@@ -39,11 +43,18 @@ public class SPARQLResult implements ResultFormatDef, URLParam {
     private static final String ERROR_ENDPOINT = "Error while querying Corese.Core.Sparql endpoint";
     private static final String OPER = "operation";
     private static final String URL = Context.URL;
+    // mode=analyze: return plan tree with standalone rows and time of operators
+    static final String ANALYZE = "analyze";
     static final int ERROR = 500;
     private static SPARQLResult singleton;
 
     private HttpServletRequest request;
     QuerySolverVisitorServer visitor;
+    // entity tag of GET response or null
+    private String etag;
+    // stored query and binding of its parameters or null
+    private StoredQuery stored;
+    private Mapping bind;
 
     static {
         setSingleton(new SPARQLResult());
@@ -91,35 +102,103 @@ public class SPARQLResult implements ResultFormatDef, URLParam {
             String query, String access,
             List<String> defaut, List<String> named,
             String format, int type, List<String> transform) {
+        AdmissionController ac = AdmissionController.get(getTripleStore(name));
+        AdmissionController.Permit permit = ac.admit();
+        if (permit == null) {
+            return ac.reject();
+        }
+        // streamed result is written after return: permit is released by
+        // RequestResources when response is written and evaluation ends
+        boolean registered = RequestResources.register(getRequest(), permit);
+        try {
+            return process(name, oper, uri, param, mode, query, access, defaut, named, format, type, transform);
+        } finally {
+            if (!registered) {
+                permit.close();
+            }
+        }
+    }
+
+    Response process(String name, String oper,
+            List<String> uri, List<String> param, List<String> mode,
+            String query, String access,
+            List<String> defaut, List<String> named,
+            String format, int type, List<String> transform) {
 
         try {
-            logger.info("Endpoint URL: " + getRequest().getRequestURL());
+            // slow queries are recorded by SlowQueryLog
+            logger.debug("Endpoint URL: " + getRequest().getRequestURL());
 
             query = getQuery(query, mode);
             if (query == null) {
                 throw new EngineException("Undefined query parameter ");
             }
-            logger.info("Query: " + query);
+            logger.debug("Query: " + query);
+            SlowQueryLog.query(getRequest(), name, query, defaut, named);
+            if (stored != null) {
+                SlowQueryLog.stored(getRequest(), stored.getId(), bind);
+            }
 
             beforeRequest(getRequest(), query);
             Dataset ds = createDataset(getRequest(), defaut, named, access);
 
             beforeParameter(ds, oper, uri, param, mode, transform);
-            Mappings map = getTripleStore(name).query(getRequest(), query, ds);
+            TripleStore store = getTripleStore(name);
+            // version of entity tag and cache key, read before the query
+            long version = store.getVersion();
+            boolean cacheable = isCacheable(ds, query, uri, param, mode, transform);
+            etag = getETag(store, ds, cacheable, type);
+            if (etag != null && ETag.match(getRequest().getHeader(ETag.IF_NONE_MATCH), etag)) {
+                return ETag.notModified(etag);
+            }
+            // result of stored query depends on parameter binding
+            String text = (bind == null) ? query : query + "\n" + bind;
+            String key = getCacheKey(cacheable, store, ds, text, uri, param, mode, defaut, named, format, type,
+                    transform);
+            if (key != null) {
+                QueryResultCache.Entry entry = getCache().get(key);
+                if (entry != null) {
+                    return cached(entry, query, ds, format);
+                }
+            }
+
+            long start = System.nanoTime();
+            Mappings map = (stored == null) ? store.query(getRequest(), query, ds)
+                    : store.query(getRequest(), stored, bind, ds);
+            double elapsed = (System.nanoTime() - start) / 1_000_000.0;
             complete(map, ds.getContext());
             afterParameter(ds, map);
+            Metrics.resultSize(getRequest(), size(map));
+            SlowQueryLog.capture(getRequest(), map);
 
+            if (isAnalyze(mode) && map.getQuery() != null && !store.isUpdate(map)) {
+                return analyze(store, map, ds, query, elapsed);
+            }
+
+            int streamFormat = getStreamFormat(map, ds, format, type, transform);
+            if (streamFormat != UNDEF_FORMAT) {
+                return stream(map, ds, query, format, streamFormat);
+            }
+
+            long time = System.nanoTime();
             ResultFormat rf = getFormat(map, ds, format, type, transform);
             String res = rf.toString();
+            boolean transformed = isNotEmpty(getValue(ds.getContext(), TRANSFORM, transform));
+            Metrics.phase(getRequest(), transformed ? Metrics.TRANSFORM : Metrics.FORMAT, System.nanoTime() - time);
+            SlowQueryLog.capture(getRequest(), map);
 
-            ResponseBuilder rb = Response.status(Response.Status.OK).header(headerAccept, "*");
+            ResponseBuilder rb = ok();
 
-            if (format != null) {
+            if (format != null || stored != null) {
                 // real content type of result, possibly different from @Produces
                 rb = rb.header("Content-Type", rf.getContentType());
             }
             Response resp = rb.entity(res).build();
 
+            // graph published during the query: result may be newer than key
+            if (key != null && !store.isUpdate(map) && store.getVersion() == version) {
+                getCache().put(key, res, rf.getContentType());
+            }
             afterRequest(getRequest(), resp, query, map, res, ds);
 
             return resp;
@@ -130,6 +209,9 @@ public class SPARQLResult implements ResultFormatDef, URLParam {
                     .header(headerAccept, "*")
                     .entity(errorMessage)
                     .build();
+        } catch (QueryTimeoutException ex) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header(headerAccept, "*")
+                    .entity(ex.getMessage()).build();
         } catch (EngineException ex) {
             logger.error("query:");
             logger.error(query);
@@ -139,6 +221,185 @@ public class SPARQLResult implements ResultFormatDef, URLParam {
         }
     }
 
+    /**
+     * Stored query evaluated with parameter binding, processed as a sparql
+     * query: admission control, entity tag, result cache, slow query log
+     * 
+     * @bind is binding of query parameters or null
+     * @format is format parameter or Accept header
+     */
+    public Response getResultFormat(String name, StoredQuery sq, Mapping bind, String access, String format) {
+        logger.info("Stored query: " + sq.getId() + " " + bind);
+        this.stored = sq;
+        this.bind = bind;
+        return getResultFormat(name, null, null, null, null, sq.getQuery(), access, null, null, format, UNDEF_FORMAT,
+                null);
+    }
+
+    /**
+     * Select/ask result written row by row, construct/describe result graph
+     * written edge by edge on the output stream
+     * instead of being serialized as a String (server option -stream)
+     */
+    Response stream(Mappings map, Dataset ds, String query, String format, int streamFormat) {
+        ResponseBuilder rb = ok();
+        if (StreamingGraph.accept(streamFormat)) {
+            StreamingGraph sg = new StreamingGraph((Graph) map.getGraph(), streamFormat);
+            rb = rb.header("Content-Type", sg.getContentType()).entity(sg);
+        } else {
+            StreamingResult sr = new StreamingResult(map, streamFormat);
+            // content type of negotiated stream format, also when format is undefined
+            rb = rb.header("Content-Type", sr.getContentType()).entity(sr);
+        }
+        Response resp = rb.build();
+        afterRequest(getRequest(), resp, query, map, "", ds);
+        return resp;
+    }
+
+    /**
+     * Streaming is for std result format only: no transformation and no linked
+     * result
+     */
+    int getStreamFormat(Mappings map, Dataset ds, String format, int type, List<String> transform) {
+        Context c = ds.getContext();
+        List<String> transformList = getValue(c, TRANSFORM, transform);
+        if ((transformList != null && !transformList.isEmpty())
+                || c.hasValue(LINK) || c.hasValue(LINK_REST)
+                || c.hasValue(EXPLAIN) || c.hasValue(DOCUMENT)
+                || c.hasValue(LOG) || c.hasValue(LOG_QUERY) || c.hasValue(MES)
+                || c.hasValue(WHY) || c.hasValue(COMPILE) || c.hasValue(TRACE)) {
+            return UNDEF_FORMAT;
+        }
+        int ft = StreamingResult.streamFormat(map, format, type);
+        if (ft == UNDEF_FORMAT) {
+            ft = StreamingGraph.streamFormat(map, format, type);
+        }
+        return ft;
+    }
+
+    QueryResultCache getCache() {
+        return QueryResultCache.getSingleton();
+    }
+
+    /**
+     * Query result cache key, null when query result is not cached:
+     * mode, param, uri and transform parameters may have side effects or
+     * return links to documents generated for this request
+     */
+    String getCacheKey(boolean cacheable, TripleStore store, Dataset ds, String query,
+            List<String> uri, List<String> param, List<String> mode,
+            List<String> defaut, List<String> named,
+            String format, int type, List<String> transform) {
+        if (!getCache().isEnabled()) {
+            return null;
+        }
+        if (!cacheable) {
+            getCache().bypass();
+            return null;
+        }
+        return getCache().key(store, query, defaut, named, ds.getContext().getLevel(), format, type);
+    }
+
+    /**
+     * Same query on same graph version gives same result
+     * mode, param, uri and transform parameters may have side effects or
+     * return links to documents generated for this request
+     */
+    boolean isCacheable(Dataset ds, String query,
+            List<String> uri, List<String> param, List<String> mode, List<String> transform) {
+        Context c = ds.getContext();
+        return !(isNotEmpty(uri) || isNotEmpty(param) || isNotEmpty(mode) || isNotEmpty(transform)
+                || c.hasValue(TRANSFORM) || c.hasValue(FEDERATE) || c.hasValue(SHACL)
+                || c.hasValue(CONSTRUCT) || c.hasValue(TO_SPIN)
+                || c.hasValue(LINK) || c.hasValue(LINK_REST)
+                || c.hasValue(EXPLAIN) || c.hasValue(DOCUMENT)
+                || c.hasValue(LOG) || c.hasValue(LOG_QUERY) || c.hasValue(MES)
+                || c.hasValue(WHY) || c.hasValue(COMPILE) || c.hasValue(TRACE)
+                || QueryText.isNonDeterministic(query));
+    }
+
+    /**
+     * Entity tag of GET response: graph version and request fingerprint
+     * Request URL contains query and parameters, Accept header and type select
+     * result format
+     */
+    String getETag(TripleStore store, Dataset ds, boolean cacheable, int type) {
+        if (!cacheable || !"GET".equals(getRequest().getMethod())) {
+            return null;
+        }
+        return ETag.create(store, getRequest().getRequestURI(), getRequest().getQueryString(),
+                getRequest().getHeader("Accept"), type, ds.getContext().getLevel());
+    }
+
+    ResponseBuilder ok() {
+        ResponseBuilder rb = Response.status(Response.Status.OK).header(headerAccept, "*");
+        if (etag != null) {
+            rb = rb.header(ETag.HEADER, etag);
+        }
+        return rb;
+    }
+
+    boolean isAnalyze(List<String> mode) {
+        if (mode != null) {
+            for (String kw : mode) {
+                for (String value : decode(kw).split(";")) {
+                    if (value.trim().equals(ANALYZE)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plan tree of query as JSON: each operator is evaluated alone with its
+     * standalone rows and time, edge with estimated cardinality from graph
+     * statistics
+     * Operators are evaluated with the timeout of the request, under the
+     * admission permit of the request
+     */
+    Response analyze(TripleStore store, Mappings map, Dataset ds, String query, double time)
+            throws EngineException {
+        long timeout = QueryTimeout.getTimeout(getRequest(), ds.getCreateContext());
+        JSONObject json = QueryTimeout.run(getRequest(), timeout, () -> {
+            try (GraphLock.Hold hold = store.readLock()) {
+                return new TripleStoreExplain(store.getQueryProcess(), ds.getContext(), map)
+                        .setChecker(QueryTimeout::check)
+                        .analyze(QueryText.prologue(query), ds, time);
+            }
+        });
+        json.put("query", query);
+        return ok().header("Content-Type", ResultFormat.JSON).entity(json.toString(2)).build();
+    }
+
+    /**
+     * Number of results or triples of construct result
+     */
+    int size(Mappings map) {
+        if (map.getGraph() instanceof Graph) {
+            return ((Graph) map.getGraph()).size();
+        }
+        return map.size();
+    }
+
+    boolean isNotEmpty(List<String> list) {
+        return list != null && !list.isEmpty();
+    }
+
+    /**
+     * Return cached query result
+     */
+    Response cached(QueryResultCache.Entry entry, String query, Dataset ds, String format) {
+        ResponseBuilder rb = ok();
+        if (format != null || stored != null) {
+            rb = rb.header("Content-Type", entry.getContentType());
+        }
+        Response resp = rb.entity(entry.getResult()).build();
+        afterRequest(getRequest(), resp, query, new Mappings(), entry.getResult(), ds);
+        return resp;
+    }
+
     String getQuery(String query, List<String> mode) {
         if (query == null && mode != null) {
             query = getContext().getDefaultValue(mode, QUERY);
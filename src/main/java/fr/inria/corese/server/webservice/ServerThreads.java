@@ -0,0 +1,86 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Threads of the server
+ * Virtual thread mode: Jetty runs request handling on virtual threads,
+ * optionally query evaluation of endpoints without query executor pool runs
+ * on virtual threads
+ * A blocked request (slow client, federated service call) does not hold a
+ * platform thread
+ * Virtual threads require Java 21, with an older JVM the server falls back to
+ * platform threads
+ * Server options:
+ * -virtual request handling on virtual threads
+ * -virtualquery query evaluation on virtual threads, except endpoints with
+ * -querythreads pool
+ */
+public class ServerThreads {
+
+    private static final Logger logger = LogManager.getLogger(ServerThreads.class);
+    static final String POOL_NAME = "corese-server";
+
+    private ServerThreads() {
+    }
+
+    static boolean isSupported() {
+        return VirtualThreads.areSupported();
+    }
+
+    /**
+     * Jetty thread pool, selectors and acceptors remain platform threads
+     */
+    static QueuedThreadPool createPool(boolean virtual) {
+        QueuedThreadPool pool = new QueuedThreadPool();
+        pool.setName(POOL_NAME);
+        if (virtual) {
+            if (isSupported()) {
+                pool.setUseVirtualThreads(true);
+                logger.info("Request handling on virtual threads");
+            } else {
+                logger.warn("Virtual threads not supported by JVM " + System.getProperty("java.version")
+                        + ": request handling on platform threads");
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Executor that starts a virtual thread per task, null when not supported
+     * Java 21 API is called by reflection: the server is compiled for Java 11
+     */
+    static ExecutorService createVirtualExecutor() {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            logger.warn("Virtual thread executor not available: " + ex);
+            return null;
+        }
+    }
+
+    /**
+     * Query evaluation on virtual threads
+     */
+    static void setVirtualQuery() {
+        ExecutorService exec = createVirtualExecutor();
+        if (exec == null) {
+            logger.warn("Virtual threads not supported by JVM " + System.getProperty("java.version")
+                    + ": query evaluation on platform threads");
+        } else {
+            QueryExecutor.setVirtual(exec);
+            logger.info("Query evaluation on virtual threads");
+        }
+    }
+
+}
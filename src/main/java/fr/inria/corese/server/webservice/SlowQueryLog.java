@@ -0,0 +1,192 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.sparql.triple.function.term.Binding;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Slow query log: /sparql and /template requests whose latency is at least
+ * threshold ms are recorded with query, dataset, endpoint, client host,
+ * stored query id and parameter binding (/sparql/stored/{id}),
+ * phase timing (Metrics), result size, compiled query plan and explain trace
+ * (mode=explain)
+ * Entries are written by the logger of this class: log4j2.xml routes it to an
+ * asynchronous rolling file (log/slow_query.log)
+ * Last entries are kept in memory for GET /sparql/slow
+ * Plan is captured when the query is already slow after evaluation or
+ * formatting: a request that becomes slow while its result is streamed is
+ * recorded without plan
+ * Server option:
+ * -slowquery ms threshold, -1 (default): no slow query log
+ */
+public class SlowQueryLog {
+
+    private static final Logger logger = LogManager.getLogger(SlowQueryLog.class);
+    // entries kept in memory
+    static final int HISTORY = 200;
+
+    private static long threshold = -1;
+    private static final Deque<JSONObject> entries = new ArrayDeque<>();
+
+    /**
+     * Query of a request, recorded at the end of request when slow
+     */
+    static class Entry {
+        String endpoint;
+        String query;
+        // stored query id and binding of its parameters or null
+        String stored, bind;
+        List<String> defaut, named;
+        String host;
+        String plan;
+        String explain;
+        int size = -1;
+    }
+
+    static boolean isEnabled() {
+        return threshold >= 0;
+    }
+
+    /**
+     * Record query of request, to be logged at the end of request if slow
+     */
+    static void query(HttpServletRequest request, String name, String query, List<String> defaut,
+            List<String> named) {
+        Metrics.Timer timer = Metrics.getTimer(request);
+        if (!isEnabled() || timer == null) {
+            return;
+        }
+        Entry entry = new Entry();
+        entry.endpoint = (name == null) ? timer.endpoint : name;
+        entry.query = query;
+        entry.defaut = defaut;
+        entry.named = named;
+        entry.host = request.getRemoteHost();
+        timer.slow = entry;
+    }
+
+    /**
+     * Record stored query id and parameter binding of request query
+     */
+    static void stored(HttpServletRequest request, String id, Mapping bind) {
+        Metrics.Timer timer = Metrics.getTimer(request);
+        if (timer == null || timer.slow == null) {
+            return;
+        }
+        timer.slow.stored = id;
+        timer.slow.bind = (bind == null) ? null : bind.toString();
+    }
+
+    /**
+     * Capture plan and explain trace when query is already slow
+     * Called while compiled query is still owned by the request
+     */
+    static void capture(HttpServletRequest request, Mappings map) {
+        Metrics.Timer timer = Metrics.getTimer(request);
+        if (timer == null || timer.slow == null || map == null) {
+            return;
+        }
+        timer.slow.size = timer.size;
+        if (timer.slow.plan != null || elapsed(timer) < threshold) {
+            return;
+        }
+        if (map.getQuery() != null) {
+            timer.slow.plan = map.getQuery().toString();
+        }
+        if (map.getBinding() instanceof Binding) {
+            Binding bind = (Binding) map.getBinding();
+            if (bind.getTrace().length() > 0) {
+                timer.slow.explain = bind.getTrace().toString();
+            }
+        }
+    }
+
+    static long elapsed(Metrics.Timer timer) {
+        return (System.nanoTime() - timer.start) / 1_000_000;
+    }
+
+    /**
+     * End of request
+     */
+    static void end(Metrics.Timer timer, long nanos, int status) {
+        Entry entry = timer.slow;
+        if (entry == null || !isEnabled() || nanos / 1_000_000 < threshold) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("date", System.currentTimeMillis());
+        json.put("route", timer.route);
+        json.put("endpoint", entry.endpoint);
+        json.put("host", entry.host);
+        json.put("status", status);
+        json.put("timeMs", nanos / 1_000_000.0);
+        JSONObject phases = new JSONObject();
+        for (int i = 0; i < Metrics.PHASES.length; i++) {
+            phases.put(Metrics.PHASES[i], timer.phases[i] / 1_000_000.0);
+        }
+        json.put("phasesMs", phases);
+        json.put("resultSize", entry.size);
+        json.put("query", entry.query);
+        json.putOpt("stored", entry.stored);
+        json.putOpt("binding", entry.bind);
+        if (entry.defaut != null && !entry.defaut.isEmpty()) {
+            json.put("default-graph-uri", entry.defaut);
+        }
+        if (entry.named != null && !entry.named.isEmpty()) {
+            json.put("named-graph-uri", entry.named);
+        }
+        if (entry.plan != null) {
+            json.put("plan", entry.plan);
+        }
+        if (entry.explain != null) {
+            json.put("explain", entry.explain);
+        }
+        synchronized (entries) {
+            entries.addFirst(json);
+            if (entries.size() > HISTORY) {
+                entries.removeLast();
+            }
+        }
+        logger.warn(json.toString());
+    }
+
+    /**
+     * Last slow queries, most recent first
+     *
+     * @limit max number of entries
+     * @min   min latency in ms
+     */
+    static JSONArray listJSON(int limit, long min) {
+        JSONArray array = new JSONArray();
+        synchronized (entries) {
+            Iterator<JSONObject> it = entries.iterator();
+            while (it.hasNext() && array.length() < limit) {
+                JSONObject json = it.next();
+                if (json.getDouble("timeMs") >= min) {
+                    array.put(json);
+                }
+            }
+        }
+        return array;
+    }
+
+    static long getThreshold() {
+        return threshold;
+    }
+
+    static void setThreshold(long ms) {
+        threshold = ms;
+    }
+
+}
@@ -0,0 +1,205 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.tool.NodeImpl;
+import fr.inria.corese.core.sparql.api.IDatatype;
+import fr.inria.corese.core.sparql.datatype.DatatypeMap;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+import fr.inria.corese.core.sparql.triple.parser.NSManager;
+
+/**
+ * Registry of stored queries with declared parameters
+ * Declared in profile.ttl:
+ * [] a st:StoredQuery ; st:name "person" ; st:query <query/person.rq> ;
+ * st:variable "?person"
+ * or registered with POST /sparql/stored/{id}
+ * Call: /sparql/stored/person?$person=<http://ex.org/a>
+ * Parameter values are bound as initial binding of query variables: one value
+ * per parameter, as a one row values table (several values of a parameter are
+ * rejected, a multi row values table is not supported)
+ * Query text is never modified: compiled queries are kept in a pool of the
+ * stored query, whether TripleStore plan cache is enabled or not
+ * A stored query is not an update: GET evaluates it with the read lock
+ */
+public class StoredQuery {
+
+    static final String PARAMETER = "$";
+    static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    // keys of compiled queries: triple stores and datasets a stored query is
+    // evaluated with
+    static final int PLANS = 4;
+
+    private static final Map<String, StoredQuery> registry = new ConcurrentHashMap<>();
+
+    private String id;
+    private String query;
+    // variable names with ?
+    private List<String> variables;
+    private final PlanCache planCache = new PlanCache(PLANS);
+
+    StoredQuery(String id, String query, List<String> variables) {
+        this.id = id;
+        this.query = query;
+        this.variables = variables;
+    }
+
+    static StoredQuery define(String id, String query, List<String> variables) throws EngineException {
+        if (QueryText.isUpdate(query)) {
+            throw new EngineException("Stored query is an update: " + id);
+        }
+        List<String> list = new ArrayList<>();
+        if (variables != null) {
+            for (String var : variables) {
+                list.add(variable(var));
+            }
+        }
+        StoredQuery sq = new StoredQuery(id, query, list);
+        registry.put(id, sq);
+        return sq;
+    }
+
+    static StoredQuery get(String id) {
+        return registry.get(id);
+    }
+
+    static StoredQuery remove(String id) {
+        return registry.remove(id);
+    }
+
+    static Collection<StoredQuery> getStoredQueries() {
+        return registry.values();
+    }
+
+    /**
+     * person | ?person | $person -> ?person
+     */
+    static String variable(String name) {
+        if (name.startsWith("?") || name.startsWith(PARAMETER)) {
+            name = name.substring(1);
+        }
+        return "?" + name;
+    }
+
+    /**
+     * Binding of declared parameters given as $var=value in URL
+     * Return null when there is no binding
+     */
+    Mapping bind(Map<String, String[]> parameters) throws EngineException {
+        List<Node> vars = new ArrayList<>();
+        List<Node> values = new ArrayList<>();
+        for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+            if (!entry.getKey().startsWith(PARAMETER)) {
+                continue;
+            }
+            String var = variable(entry.getKey());
+            if (!getVariables().contains(var)) {
+                throw new EngineException("Undeclared parameter: " + entry.getKey());
+            }
+            if (entry.getValue().length != 1) {
+                throw new EngineException("One value expected for parameter: " + entry.getKey());
+            }
+            vars.add(NodeImpl.createVariable(var));
+            values.add(term(entry.getValue()[0]));
+        }
+        if (vars.isEmpty()) {
+            return null;
+        }
+        return Mapping.create(vars, values);
+    }
+
+    /**
+     * Parameter value in SPARQL syntax: <uri>, prefix:name, "text"@lang,
+     * "text"^^<datatype>, number, boolean
+     * Otherwise string literal
+     */
+    static IDatatype term(String str) throws EngineException {
+        str = str.trim();
+        if (str.startsWith("<") && str.endsWith(">")) {
+            return DatatypeMap.newResource(str.substring(1, str.length() - 1));
+        }
+        if (str.startsWith("\"")) {
+            int end = str.lastIndexOf("\"");
+            if (end == 0) {
+                throw new EngineException("Incorrect literal: " + str);
+            }
+            String label = str.substring(1, end);
+            String rest = str.substring(end + 1);
+            if (rest.isEmpty()) {
+                return DatatypeMap.newInstance(label);
+            } else if (rest.startsWith("@")) {
+                return DatatypeMap.createLiteral(label, null, rest.substring(1));
+            } else if (rest.startsWith("^^")) {
+                String type = rest.substring(2);
+                if (type.startsWith("<") && type.endsWith(">")) {
+                    type = type.substring(1, type.length() - 1);
+                } else {
+                    type = NSManager.nsm().toNamespace(type);
+                }
+                return DatatypeMap.createLiteral(label, type, null);
+            }
+            throw new EngineException("Incorrect literal: " + str);
+        }
+        if (str.equals("true") || str.equals("false")) {
+            return DatatypeMap.newInstance(Boolean.parseBoolean(str));
+        }
+        if (str.matches("[+-]?[0-9]+")) {
+            return DatatypeMap.createLiteral(str, XSD + "integer", null);
+        }
+        if (str.matches("[+-]?[0-9]*\\.[0-9]+")) {
+            return DatatypeMap.createLiteral(str, XSD + "decimal", null);
+        }
+        if (str.startsWith("_:")) {
+            throw new EngineException("Blank node parameter: " + str);
+        }
+        if (str.contains(":") && !str.contains(" ")) {
+            String uri = NSManager.nsm().toNamespace(str);
+            return DatatypeMap.newResource(uri);
+        }
+        return DatatypeMap.newInstance(str);
+    }
+
+    JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("id", getId());
+        json.put("parameters", new JSONArray(getVariables()));
+        json.put("query", getQuery());
+        json.put("plan", getPlanCache().toJSON());
+        return json;
+    }
+
+    static JSONArray listJSON() {
+        JSONArray array = new JSONArray();
+        for (StoredQuery sq : getStoredQueries()) {
+            array.put(sq.toJSON());
+        }
+        return array;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    PlanCache getPlanCache() {
+        return planCache;
+    }
+
+}
@@ -0,0 +1,279 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.print.ResultFormat;
+import fr.inria.corese.core.sparql.api.ResultFormatDef;
+import fr.inria.corese.core.sparql.triple.parser.ASTQuery;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.StreamingOutput;
+
+/**
+ * Write graph edges on the HTTP output stream as they are iterated
+ * N-Triples and N-Quads are written line by line, Turtle is written by blocks
+ * of consecutive edges that share subject and predicate
+ * Response has no Content-Length: Jetty sends it with chunked transfer encoding
+ * Use case: Graph Store Protocol GET, construct/describe result graph
+ * Named graph: edges are iterated with the graph index of the named graph
+ * Default graph: union of named graphs, N-Triples and Turtle write a triple
+ * once as a construct query, N-Quads write a quad per named graph
+ */
+public class StreamingGraph implements StreamingOutput, ResultFormatDef {
+
+    private static final Logger logger = LogManager.getLogger(StreamingGraph.class);
+    static final String DEFAULT_GRAPH = "http://ns.inria.fr/corese/kgram/default";
+    // flush every BLOCK edges
+    static final int BLOCK = 1000;
+
+    private Graph graph;
+    private int format;
+    // named graph URI or null for every edge
+    private String name;
+    // edges copied under the read lock, otherwise graph edges are iterated
+    private List<Edge> list;
+    // pinned snapshot of the graph, released when edges are written
+    private AutoCloseable pin;
+    private long edges = 0;
+    private Node subject, predicate;
+    // last written triple, skip duplicate triples of the union
+    private Node lastSubject, lastPredicate, lastObject;
+
+    StreamingGraph(Graph graph, int format) {
+        this(graph, format, null);
+    }
+
+    StreamingGraph(Graph graph, int format, String name) {
+        this.graph = graph;
+        this.format = format;
+        this.name = name;
+    }
+
+    /**
+     * Return format of streamed construct/describe result graph, UNDEF_FORMAT if
+     * result is not streamed
+     *
+     * @format is format parameter (mime type) or null
+     * @type is format specified by content negotiation
+     */
+    static int streamFormat(Mappings map, String format, int type) {
+        if (!StreamingResult.isStreaming() || map.getQuery() == null || !(map.getGraph() instanceof Graph)) {
+            return UNDEF_FORMAT;
+        }
+        ASTQuery ast = map.getQuery().getAST();
+        if (ast == null || !(ast.isConstruct() || ast.isDescribe())
+                || ((Graph) map.getGraph()).size() < StreamingResult.getThreshold()) {
+            return UNDEF_FORMAT;
+        }
+        int ft = (type == UNDEF_FORMAT) ? getFormat(format) : type;
+        return accept(ft) ? ft : UNDEF_FORMAT;
+    }
+
+    static int getFormat(String format) {
+        if (format == null) {
+            return UNDEF_FORMAT;
+        } else if (format.contains(ResultFormat.N_TRIPLES)) {
+            return NTRIPLES_FORMAT;
+        } else if (format.contains(ResultFormat.N_QUADS)) {
+            return NQUADS_FORMAT;
+        } else if (format.contains(ResultFormat.TURTLE_TEXT)) {
+            return TURTLE_FORMAT;
+        }
+        return UNDEF_FORMAT;
+    }
+
+    static boolean accept(int format) {
+        switch (format) {
+            case NTRIPLES_FORMAT:
+            case NQUADS_FORMAT:
+            case TURTLE_FORMAT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    String getContentType() {
+        switch (format) {
+            case NTRIPLES_FORMAT:
+                return ResultFormat.N_TRIPLES + "; charset=utf-8";
+            case NQUADS_FORMAT:
+                return ResultFormat.N_QUADS + "; charset=utf-8";
+            default:
+                return ResultFormat.TURTLE_TEXT + "; charset=utf-8";
+        }
+    }
+
+    /**
+     * Copy edges with the read lock of the triple store, the lock is not held
+     * while edges are written on the client connection
+     */
+    StreamingGraph copy(GraphLock lock) throws QueryTimeoutException {
+        try (GraphLock.Hold hold = lock.acquire(false)) {
+            list = new ArrayList<>();
+            for (Edge edge : iterate()) {
+                if (!duplicate(edge)) {
+                    list.add(edge);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Edges of the named graph, or of every named graph
+     */
+    Iterable<Edge> iterate() {
+        if (name == null) {
+            return graph.getEdges();
+        }
+        Node node = graph.getGraphNode(name);
+        if (node == null) {
+            return List.of();
+        }
+        return graph.getNamed().from(node).iterate();
+    }
+
+    /**
+     * Triple of the union already written from another named graph
+     * Edges are sorted by subject, object and graph within a predicate: same
+     * triples of different named graphs are consecutive
+     */
+    boolean duplicate(Edge edge) {
+        if (name != null || format == NQUADS_FORMAT) {
+            return false;
+        }
+        Node s = edge.getNode(0);
+        Node p = edge.getEdgeNode();
+        Node o = edge.getNode(1);
+        boolean same = lastSubject != null && lastSubject.same(s) && lastPredicate.same(p) && lastObject.same(o);
+        lastSubject = s;
+        lastPredicate = p;
+        lastObject = o;
+        return same;
+    }
+
+    /**
+     * Snapshot mode: graph is pinned until edges are written
+     */
+    StreamingGraph setPin(AutoCloseable pin) {
+        this.pin = pin;
+        return this;
+    }
+
+    /**
+     * Number of edges to write, -1 if unknown before writing
+     */
+    int size() {
+        if (list != null) {
+            return list.size();
+        }
+        // duplicate triples of the union are known when written
+        return (name == null && format == NQUADS_FORMAT) ? graph.size() : -1;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException, WebApplicationException {
+        try {
+            edges(out);
+        } finally {
+            release();
+        }
+    }
+
+    void release() {
+        if (pin != null) {
+            try {
+                pin.close();
+            } catch (Exception ex) {
+                logger.error(ex.getMessage());
+            }
+        }
+    }
+
+    void edges(OutputStream out) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+
+        for (Edge edge : (list == null) ? iterate() : list) {
+            if (list == null && duplicate(edge)) {
+                continue;
+            }
+            switch (format) {
+                case TURTLE_FORMAT:
+                    turtle(sb, edge);
+                    break;
+                default:
+                    triple(sb, edge);
+            }
+            if (++edges % BLOCK == 0) {
+                w.append(sb);
+                sb.setLength(0);
+                w.flush();
+                out.flush();
+            }
+        }
+        if (format == TURTLE_FORMAT && subject != null) {
+            sb.append(" .\n");
+        }
+        w.append(sb);
+        w.flush();
+        out.flush();
+        logger.debug("Streamed edges: " + edges);
+    }
+
+    void triple(StringBuilder sb, Edge edge) {
+        TermFormat.nt(sb, edge.getNode(0).getDatatypeValue()).append(" ");
+        TermFormat.nt(sb, edge.getEdgeNode().getDatatypeValue()).append(" ");
+        TermFormat.nt(sb, edge.getNode(1).getDatatypeValue());
+        if (format == NQUADS_FORMAT && edge.getGraph() != null
+                && !edge.getGraph().getLabel().equals(DEFAULT_GRAPH)) {
+            sb.append(" ");
+            TermFormat.nt(sb, edge.getGraph().getDatatypeValue());
+        }
+        sb.append(" .\n");
+    }
+
+    /**
+     * s p o1 , o2 ; q o3 .
+     */
+    void turtle(StringBuilder sb, Edge edge) {
+        Node s = edge.getNode(0);
+        Node p = edge.getEdgeNode();
+        if (subject != null && subject.same(s)) {
+            if (predicate.same(p)) {
+                sb.append(" ,\n        ");
+            } else {
+                sb.append(" ;\n    ");
+                TermFormat.nt(sb, p.getDatatypeValue()).append(" ");
+            }
+        } else {
+            if (subject != null) {
+                sb.append(" .\n");
+            }
+            TermFormat.nt(sb, s.getDatatypeValue()).append(" ");
+            TermFormat.nt(sb, p.getDatatypeValue()).append(" ");
+        }
+        TermFormat.nt(sb, edge.getNode(1).getDatatypeValue());
+        subject = s;
+        predicate = p;
+    }
+
+    public long getEdges() {
+        return edges;
+    }
+
+}
@@ -0,0 +1,368 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.kgram.core.Mapping;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.print.ResultFormat;
+import fr.inria.corese.core.sparql.api.IDatatype;
+import fr.inria.corese.core.sparql.api.ResultFormatDef;
+import fr.inria.corese.core.sparql.triple.parser.ASTQuery;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.StreamingOutput;
+
+/**
+ * Write select/ask query result on the HTTP output stream row by row
+ * instead of building the whole result String with ResultFormat
+ * Formats: SPARQL XML, JSON, CSV, TSV
+ * Server option -stream n: stream results with at least n rows
+ * Limitation: rows are streamed from the Mappings of a completed evaluation,
+ * kgram does not produce them incrementally; the whole Mappings is in memory
+ * and time to first byte includes evaluation time. Streaming saves the
+ * result String and its copies, not the Mappings
+ */
+public class StreamingResult implements StreamingOutput, ResultFormatDef {
+
+    private static final Logger logger = LogManager.getLogger(StreamingResult.class);
+    static final String NS = "http://www.w3.org/2005/sparql-results#";
+    // flush writer every FLUSH rows
+    static final int FLUSH = 1000;
+
+    // -1: no streaming
+    private static int threshold = -1;
+
+    private Mappings map;
+    private int format;
+    private List<Node> select;
+    private long rows = 0;
+
+    StreamingResult(Mappings map, int format) {
+        this.map = map;
+        this.format = format;
+        this.select = map.getSelect();
+    }
+
+    /**
+     * Return result format of streamed result, UNDEF_FORMAT if result is not
+     * streamed
+     *
+     * @format is format parameter (mime type) or null
+     * @type is format specified by content negotiation
+     */
+    static int streamFormat(Mappings map, String format, int type) {
+        if (!isStreaming() || map.size() < getThreshold() || map.getQuery() == null) {
+            return UNDEF_FORMAT;
+        }
+        ASTQuery ast = map.getQuery().getAST();
+        if (ast == null || !(ast.isSelect() || ast.isAsk())) {
+            return UNDEF_FORMAT;
+        }
+        int ft = (type == UNDEF_FORMAT) ? getFormat(format) : type;
+        switch (ft) {
+            case XML_FORMAT:
+            case JSON_FORMAT:
+            case CSV_FORMAT:
+            case TSV_FORMAT:
+                return ft;
+            default:
+                return UNDEF_FORMAT;
+        }
+    }
+
+    static int getFormat(String format) {
+        if (format == null || format.contains(ResultFormat.SPARQL_RESULTS_XML)) {
+            return XML_FORMAT;
+        } else if (format.contains(ResultFormat.SPARQL_RESULTS_JSON)) {
+            return JSON_FORMAT;
+        } else if (format.contains(ResultFormat.SPARQL_RESULTS_CSV)) {
+            return CSV_FORMAT;
+        } else if (format.contains(ResultFormat.SPARQL_RESULTS_TSV)) {
+            return TSV_FORMAT;
+        }
+        return UNDEF_FORMAT;
+    }
+
+    static String getContentType(int format) {
+        switch (format) {
+            case JSON_FORMAT:
+                return ResultFormat.SPARQL_RESULTS_JSON;
+            case CSV_FORMAT:
+                return ResultFormat.SPARQL_RESULTS_CSV;
+            case TSV_FORMAT:
+                return ResultFormat.SPARQL_RESULTS_TSV;
+            default:
+                return ResultFormat.SPARQL_RESULTS_XML;
+        }
+    }
+
+    String getContentType() {
+        return getContentType(format) + "; charset=utf-8";
+    }
+
+    boolean isAsk() {
+        return map.getQuery().getAST().isAsk();
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException, WebApplicationException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        header(sb);
+        // send first bytes as soon as possible
+        flush(w, out, sb);
+
+        if (!isAsk()) {
+            for (Mapping m : map) {
+                row(sb, m);
+                rows++;
+                if (rows % FLUSH == 0) {
+                    w.append(sb);
+                    sb.setLength(0);
+                }
+            }
+        }
+        trailer(sb);
+        flush(w, out, sb);
+        logger.debug("Streamed rows: " + rows);
+    }
+
+    void flush(Writer w, OutputStream out, StringBuilder sb) throws IOException {
+        w.append(sb);
+        sb.setLength(0);
+        w.flush();
+        out.flush();
+    }
+
+    String name(Node var) {
+        String label = var.getLabel();
+        return label.startsWith("?") || label.startsWith("$") ? label.substring(1) : label;
+    }
+
+    IDatatype value(Mapping m, Node var) {
+        return m.getValue(var.getLabel());
+    }
+
+    void header(StringBuilder sb) {
+        switch (format) {
+            case JSON_FORMAT:
+                sb.append("{\n\"head\": { \"vars\": [");
+                if (!isAsk()) {
+                    for (int i = 0; i < select.size(); i++) {
+                        sb.append(i == 0 ? "" : ", ").append("\"");
+                        TermFormat.escapeJSON(sb, name(select.get(i)));
+                        sb.append("\"");
+                    }
+                }
+                sb.append("] },\n");
+                if (!isAsk()) {
+                    sb.append("\"results\": { \"bindings\": [\n");
+                }
+                break;
+
+            case CSV_FORMAT:
+            case TSV_FORMAT:
+                if (!isAsk()) {
+                    String sep = (format == CSV_FORMAT) ? "," : "\t";
+                    for (int i = 0; i < select.size(); i++) {
+                        sb.append(i == 0 ? "" : sep);
+                        sb.append(format == CSV_FORMAT ? "" : "?").append(name(select.get(i)));
+                    }
+                    sb.append(format == CSV_FORMAT ? "\r\n" : "\n");
+                }
+                break;
+
+            default:
+                sb.append("<?xml version=\"1.0\"?>\n");
+                sb.append("<sparql xmlns=\"").append(NS).append("\">\n");
+                sb.append("<head>\n");
+                if (!isAsk()) {
+                    for (Node var : select) {
+                        sb.append("<variable name=\"");
+                        TermFormat.escapeXML(sb, name(var));
+                        sb.append("\"/>\n");
+                    }
+                }
+                sb.append("</head>\n");
+                if (!isAsk()) {
+                    sb.append("<results>\n");
+                }
+        }
+    }
+
+    void trailer(StringBuilder sb) {
+        boolean ask = isAsk();
+        switch (format) {
+            case JSON_FORMAT:
+                if (ask) {
+                    sb.append("\"boolean\": ").append(map.size() > 0).append("\n}\n");
+                } else {
+                    sb.append("\n] }\n}\n");
+                }
+                break;
+
+            case CSV_FORMAT:
+            case TSV_FORMAT:
+                if (ask) {
+                    sb.append(map.size() > 0).append("\n");
+                }
+                break;
+
+            default:
+                if (ask) {
+                    sb.append("<boolean>").append(map.size() > 0).append("</boolean>\n");
+                } else {
+                    sb.append("</results>\n");
+                }
+                sb.append("</sparql>\n");
+        }
+    }
+
+    void row(StringBuilder sb, Mapping m) {
+        switch (format) {
+            case JSON_FORMAT:
+                json(sb, m);
+                break;
+            case CSV_FORMAT:
+                csv(sb, m);
+                break;
+            case TSV_FORMAT:
+                tsv(sb, m);
+                break;
+            default:
+                xml(sb, m);
+        }
+    }
+
+    void xml(StringBuilder sb, Mapping m) {
+        sb.append("<result>\n");
+        for (Node var : select) {
+            IDatatype dt = value(m, var);
+            if (dt == null) {
+                continue;
+            }
+            sb.append("<binding name=\"");
+            TermFormat.escapeXML(sb, name(var));
+            sb.append("\">");
+            if (dt.isURI()) {
+                sb.append("<uri>");
+                TermFormat.escapeXML(sb, dt.getLabel());
+                sb.append("</uri>");
+            } else if (dt.isBlank()) {
+                sb.append("<bnode>");
+                TermFormat.escapeXML(sb, TermFormat.blankLabel(dt));
+                sb.append("</bnode>");
+            } else {
+                sb.append("<literal");
+                if (TermFormat.hasLang(dt)) {
+                    sb.append(" xml:lang=\"");
+                    TermFormat.escapeXML(sb, dt.getLang());
+                    sb.append("\"");
+                } else if (TermFormat.getDatatype(dt) != null) {
+                    sb.append(" datatype=\"");
+                    TermFormat.escapeXML(sb, TermFormat.getDatatype(dt));
+                    sb.append("\"");
+                }
+                sb.append(">");
+                TermFormat.escapeXML(sb, dt.getLabel());
+                sb.append("</literal>");
+            }
+            sb.append("</binding>\n");
+        }
+        sb.append("</result>\n");
+    }
+
+    void json(StringBuilder sb, Mapping m) {
+        sb.append(rows == 0 ? "{" : ",\n{");
+        boolean first = true;
+        for (Node var : select) {
+            IDatatype dt = value(m, var);
+            if (dt == null) {
+                continue;
+            }
+            sb.append(first ? " \"" : ", \"");
+            first = false;
+            TermFormat.escapeJSON(sb, name(var));
+            sb.append("\": { \"type\": ");
+            if (dt.isURI()) {
+                sb.append("\"uri\", \"value\": \"");
+                TermFormat.escapeJSON(sb, dt.getLabel());
+                sb.append("\"");
+            } else if (dt.isBlank()) {
+                sb.append("\"bnode\", \"value\": \"");
+                TermFormat.escapeJSON(sb, TermFormat.blankLabel(dt));
+                sb.append("\"");
+            } else {
+                sb.append("\"literal\", \"value\": \"");
+                TermFormat.escapeJSON(sb, dt.getLabel());
+                sb.append("\"");
+                if (TermFormat.hasLang(dt)) {
+                    sb.append(", \"xml:lang\": \"");
+                    TermFormat.escapeJSON(sb, dt.getLang());
+                    sb.append("\"");
+                } else if (TermFormat.getDatatype(dt) != null) {
+                    sb.append(", \"datatype\": \"");
+                    TermFormat.escapeJSON(sb, TermFormat.getDatatype(dt));
+                    sb.append("\"");
+                }
+            }
+            sb.append(" }");
+        }
+        sb.append(" }");
+    }
+
+    void csv(StringBuilder sb, Mapping m) {
+        for (int i = 0; i < select.size(); i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            IDatatype dt = value(m, select.get(i));
+            if (dt != null) {
+                TermFormat.escapeCSV(sb, dt.isBlank() ? TermFormat.BLANK + TermFormat.blankLabel(dt) : dt.getLabel());
+            }
+        }
+        sb.append("\r\n");
+    }
+
+    void tsv(StringBuilder sb, Mapping m) {
+        for (int i = 0; i < select.size(); i++) {
+            if (i > 0) {
+                sb.append("\t");
+            }
+            IDatatype dt = value(m, select.get(i));
+            if (dt != null) {
+                TermFormat.nt(sb, dt);
+            }
+        }
+        sb.append("\n");
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    static boolean isStreaming() {
+        return threshold >= 0;
+    }
+
+    static int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param n minimum number of rows for streaming, -1 for no streaming
+     */
+    static void setThreshold(int n) {
+        threshold = n;
+    }
+
+}
@@ -0,0 +1,209 @@
+package fr.inria.corese.server.webservice;
+
+import fr.inria.corese.core.sparql.api.IDatatype;
+
+/**
+ * RDF term encoding shared by streaming result writers
+ * SPARQL XML/JSON/CSV/TSV results and N-Triples/N-Quads/Turtle
+ */
+public class TermFormat {
+
+    static final String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
+    static final String RDF_LANG_STRING = "http://www.w3.org/1999/02/22-rdf-syntax-ns#langString";
+    static final String BLANK = "_:";
+
+    private TermFormat() {
+    }
+
+    static boolean hasLang(IDatatype dt) {
+        return dt.getLang() != null && !dt.getLang().isEmpty();
+    }
+
+    /**
+     * Datatype URI to be printed, null for simple literal
+     */
+    static String getDatatype(IDatatype dt) {
+        if (hasLang(dt)) {
+            return null;
+        }
+        String type = dt.getDatatypeURI();
+        if (type == null || type.equals(XSD_STRING) || type.equals(RDF_LANG_STRING)) {
+            return null;
+        }
+        return type;
+    }
+
+    /**
+     * Blank node label without _: prefix
+     */
+    static String blankLabel(IDatatype dt) {
+        String label = dt.getLabel();
+        return label.startsWith(BLANK) ? label.substring(BLANK.length()) : label;
+    }
+
+    /**
+     * N-Triples syntax of a term, also used by TSV and Turtle
+     */
+    static StringBuilder nt(StringBuilder sb, IDatatype dt) {
+        if (dt.isURI()) {
+            sb.append("<");
+            escapeIRI(sb, dt.getLabel());
+            sb.append(">");
+        } else if (dt.isBlank()) {
+            sb.append(BLANK).append(blankLabel(dt));
+        } else {
+            sb.append("\"");
+            escapeString(sb, dt.getLabel());
+            sb.append("\"");
+            if (hasLang(dt)) {
+                sb.append("@").append(dt.getLang());
+            } else {
+                String type = getDatatype(dt);
+                if (type != null) {
+                    sb.append("^^<");
+                    escapeIRI(sb, type);
+                    sb.append(">");
+                }
+            }
+        }
+        return sb;
+    }
+
+    static String nt(IDatatype dt) {
+        return nt(new StringBuilder(), dt).toString();
+    }
+
+    static void escapeIRI(StringBuilder sb, String str) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '<':
+                case '>':
+                case '"':
+                case '{':
+                case '}':
+                case '|':
+                case '^':
+                case '`':
+                case '\\':
+                    unicode(sb, c);
+                    break;
+                default:
+                    if (c <= 0x20) {
+                        unicode(sb, c);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+    }
+
+    /**
+     * N-Triples/Turtle/TSV string literal escape
+     */
+    static void escapeString(StringBuilder sb, String str) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    static void escapeXML(StringBuilder sb, String str) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '\'':
+                    sb.append("&apos;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    static void escapeJSON(StringBuilder sb, String str) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        unicode(sb, c);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+    }
+
+    /**
+     * SPARQL CSV: quote field when it contains comma, quote or newline
+     */
+    static void escapeCSV(StringBuilder sb, String str) {
+        boolean quote = false;
+        for (int i = 0; i < str.length() && !quote; i++) {
+            char c = str.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quote) {
+            sb.append("\"").append(str.replace("\"", "\"\"")).append("\"");
+        } else {
+            sb.append(str);
+        }
+    }
+
+    static void unicode(StringBuilder sb, char c) {
+        sb.append(String.format("\\u%04X", (int) c));
+    }
+
+}
@@ -186,6 +186,16 @@ public class Transformer {
     }
 
     public Response template(TripleStore store, Param par) {
+        AdmissionController ac = AdmissionController.get(store);
+        try (AdmissionController.Permit permit = ac.admit()) {
+            if (permit == null) {
+                return ac.reject();
+            }
+            return process(store, par);
+        }
+    }
+
+    Response process(TripleStore store, Param par) {
         Context context = null;
         try {
 
@@ -210,8 +220,17 @@ public class Transformer {
                         .build();
             }
 
-            Data data = engine.process();
+            Data data;
+            SlowQueryLog.query(par.getRequest(), null, describe(par), par.getFrom(), par.getNamed());
+            long time = System.nanoTime();
+            try (GraphLock.Hold hold = store.readLock()) {
+                data = engine.process();
+            }
+            Metrics.phase(par.getRequest(), Metrics.TRANSFORM, System.nanoTime() - time);
             return process(data, par, context);
+        } catch (QueryTimeoutException ex) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header(headerAccept, "*")
+                    .entity(ex.getMessage()).build();
         } catch (Exception ex) {
             logger.error("Error while querying the remote corese server");
             ex.printStackTrace();
@@ -249,6 +268,16 @@ public class Transformer {
         }
     }
 
+    /**
+     * Query or profile and transformation of template request, for slow query log
+     */
+    String describe(Param par) {
+        if (par.getQuery() != null) {
+            return par.getQuery();
+        }
+        return String.format("profile=%s transform=%s uri=%s", par.getProfile(), par.getTransform(), par.getUri());
+    }
+
     String getContentType(Data data) {
         String trans = data.getProcess().getTransformation();
         if (trans != null) {
@@ -3,6 +3,8 @@ package fr.inria.corese.server.webservice;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +18,7 @@ import fr.inria.corese.core.rule.RuleEngine;
 import fr.inria.corese.core.shacl.Shacl;
 import fr.inria.corese.core.storage.api.dataManager.DataManager;
 import fr.inria.corese.core.util.SPINProcess;
+import fr.inria.corese.core.kgram.core.Mapping;
 import fr.inria.corese.core.kgram.core.Mappings;
 import fr.inria.corese.core.kgram.core.Query;
 import fr.inria.corese.server.webservice.message.TripleStoreLog;
@@ -40,7 +43,13 @@ public class TripleStore implements URLParam {
 
     public static org.slf4j.Logger logger = LoggerFactory.getLogger(TripleStore.class);
     static HashMap<String, Integer> metaMap;
-    GraphStore graph = GraphStore.create(false);
+    // graph version generator shared by triple stores: a new store never
+    // reuses the version of a previous one
+    private static final AtomicLong VERSION = new AtomicLong();
+    // identity of triple store in keys of compiled queries shared by stores
+    private static final AtomicLong STORE = new AtomicLong();
+    private final long id = STORE.incrementAndGet();
+    volatile GraphStore graph = GraphStore.create(false);
     // QueryProcess exec;// = QueryProcess.create(graph);
     boolean rdfs = false;
     boolean owl = false;
@@ -48,6 +57,19 @@ public class TripleStore implements URLParam {
     private boolean protect = false;
     private String name = Manager.DEFAULT;
     private DataManager dataManager;
+    // changed by update and load, used by query result cache
+    private volatile long version = VERSION.incrementAndGet();
+    private PlanCache planCache = new PlanCache();
+    // readers-writer isolation of queries, update and load
+    private GraphLock lock = new GraphLock();
+    // copy-on-write snapshot mode: -snapshot
+    private static boolean snapshotMode = false;
+    private GraphSnapshot snapshot = new GraphSnapshot();
+    // graph of request evaluated by current thread: pinned snapshot or copy
+    // being updated
+    private final ThreadLocal<GraphStore> local = new ThreadLocal<>();
+    // group commit of INSERT DATA/DELETE DATA
+    private UpdateBatcher batcher = new UpdateBatcher(this);
 
     static {
         init();
@@ -69,6 +91,7 @@ public class TripleStore implements URLParam {
 
     TripleStore(boolean rdfs, boolean owl, boolean b) {
         graph = GraphStore.create(rdfs);
+        this.rdfs = rdfs;
         init(graph);
         setMatch(b);
         this.owl = owl;
@@ -115,7 +138,8 @@ public class TripleStore implements URLParam {
     }
 
     GraphStore getGraph() {
-        return graph;
+        GraphStore g = local.get();
+        return (g == null) ? graph : g;
     }
 
     void setGraph(GraphStore g) {
@@ -134,6 +158,7 @@ public class TripleStore implements URLParam {
 
     void init(boolean b) {
         setProtect(b);
+        updated();
 
         if (rdfs) {
             logger.info("Endpoint successfully reset with RDFS entailments.");
@@ -165,11 +190,68 @@ public class TripleStore implements URLParam {
     // }
 
     void load(String path, String src) throws LoadException {
-        Load ld = Load.create(getGraph());
+        write(g -> load(g, path, src));
+    }
+
+    /**
+     * Load into graph g, caller holds the write lock
+     */
+    void load(GraphStore g, String path, String src) throws LoadException {
+        Load ld = Load.create(g);
         ld.setDataManager(getDataManager());
         ld.parse(path, src, Load.TURTLE_FORMAT);
     }
 
+    /**
+     * Parallel load of N-Triples/N-Quads document
+     * External DataManager: standard load
+     * Snapshot mode: load on a copy of the graph, published at the end
+     * Otherwise chunks are inserted under short write lock holds, hence a load
+     * of hours does not block queries: they see the triples already loaded
+     */
+    void bulkLoad(BulkLoader loader, String src) throws LoadException {
+        if (getDataManager() != null) {
+            load(loader.getPath(), src);
+        } else if (isSnapshot()) {
+            write(loader::load);
+        } else {
+            loader.load(getGraph(), this::insert);
+        }
+    }
+
+    /**
+     * Insert chunk of bulk load with the write lock, new graph version
+     * Waiting requests are served before next chunk
+     */
+    void insert(Runnable task) {
+        try (GraphLock.Hold hold = getLock().acquireWrite()) {
+            task.run();
+        } finally {
+            updated();
+        }
+        getLock().yield();
+    }
+
+    /**
+     * Graph modification with the write lock, on a copy of the graph in
+     * snapshot mode
+     */
+    void write(GraphTask task) throws LoadException {
+        try (GraphLock.Hold hold = getLock().acquireWrite()) {
+            GraphStore g = isSnapshot() ? copy(graph) : getGraph();
+            task.process(g);
+            if (isSnapshot()) {
+                publish(g);
+            }
+        } finally {
+            updated();
+        }
+    }
+
+    interface GraphTask {
+        void process(GraphStore g) throws LoadException;
+    }
+
     /**
      * Extended SPARQL Endpoint
      * 
@@ -180,6 +262,142 @@ public class TripleStore implements URLParam {
      * sh:conforms ?b }
      */
     Mappings query(HttpServletRequest request, String query, Dataset ds) throws EngineException {
+        if (isBatch(query, ds)) {
+            complete(ds.getContext(), request);
+            EventManager.getSingleton().call(ds.getContext());
+            return getBatcher().submit(request, query, ds, QueryTimeout.getTimeout(request, ds.getCreateContext()));
+        }
+        long timeout = QueryTimeout.getTimeout(request, ds.getCreateContext());
+        boolean write = isWrite(query, ds);
+        return QueryTimeout.run(request, timeout, () -> locked(write, () -> process(request, query, ds)));
+    }
+
+    /**
+     * Evaluate task with read or write lock of the graph
+     * Lock is acquired by the thread that evaluates the query
+     */
+    <T> T locked(boolean write, Callable<T> task) throws EngineException {
+        if (isSnapshot()) {
+            return snapshot(write, task);
+        }
+        try (GraphLock.Hold hold = getLock().acquire(write)) {
+            if (write) {
+                // update modifies the graph in place: it is not cancelled any more
+                QueryTimeout.commit();
+            } else {
+                QueryTimeout.check();
+            }
+            return QueryTimeout.call(task);
+        }
+    }
+
+    /**
+     * Snapshot mode: query evaluates on the graph published when it starts,
+     * update evaluates on a copy of the graph published when update succeeds
+     * Writers are serialized by the write lock
+     */
+    <T> T snapshot(boolean write, Callable<T> task) throws EngineException {
+        if (local.get() != null) {
+            if (write && !getLock().isWriteLockedByCurrentThread()) {
+                // pinned graph is shared with other queries
+                throw new IllegalStateException(GraphLock.UPGRADE);
+            }
+            // nested call: graph is already pinned
+            return QueryTimeout.call(task);
+        }
+        if (!write) {
+            try (GraphSnapshot.Pin pin = getSnapshot().pin(this)) {
+                local.set(pin.getGraph());
+                QueryTimeout.check();
+                return QueryTimeout.call(task);
+            } finally {
+                local.remove();
+            }
+        }
+        try (GraphLock.Hold hold = getLock().acquire(true)) {
+            QueryTimeout.check();
+            GraphStore copy = copy(graph);
+            local.set(copy);
+            T res = QueryTimeout.call(task);
+            // cancelled update is not published
+            QueryTimeout.commit();
+            publish(copy);
+            return res;
+        } finally {
+            local.remove();
+        }
+    }
+
+    /**
+     * Copy of graph with same entailments, edges are copied
+     */
+    GraphStore copy(GraphStore g) {
+        long time = System.nanoTime();
+        GraphStore copy = GraphStore.create(rdfs);
+        init(copy);
+        copy.copy(g);
+        if (owl) {
+            RuleEngine re = RuleEngine.create(copy);
+            re.setProfile(RuleEngine.OWL_RL);
+            copy.addEngine(re);
+        }
+        getSnapshot().copied(System.nanoTime() - time);
+        return copy;
+    }
+
+    /**
+     * Updated copy becomes the graph of the triple store
+     * Graph and new version are published together: a request that pins
+     * meanwhile has either previous graph and version or new ones
+     */
+    void publish(GraphStore g) {
+        getSnapshot().publish(this, g);
+    }
+
+    /**
+     * Read lock, except in snapshot mode where readers do not lock
+     */
+    GraphLock.Hold readLock() throws QueryTimeoutException {
+        return isSnapshot() ? getLock().none() : getLock().acquire(false);
+    }
+
+    /**
+     * Small update grouped with concurrent ones by UpdateBatcher: plain
+     * INSERT DATA/DELETE DATA without mode, before/after query nor trace
+     */
+    boolean isBatch(String query, Dataset ds) {
+        if (!UpdateBatcher.isEnabled() || !QueryText.isDataUpdate(query)) {
+            return false;
+        }
+        Context c = ds.getCreateContext();
+        return !isFederate(ds) && !isShacl(c) && !isConstruct(c) && !isSpin(c)
+                && !isBefore(c) && !isAfter(c) && !c.isDebug()
+                && !c.hasValue(TRACE) && !c.hasValue(EXPLAIN) && !c.hasValue(MES);
+    }
+
+    /**
+     * Update evaluated with the write lock, called by UpdateBatcher
+     */
+    Mappings update(String query, Dataset ds) throws EngineException {
+        return locked(true, () -> {
+            try {
+                return getQueryProcess().query(query, ds);
+            } finally {
+                updated();
+            }
+        });
+    }
+
+    /**
+     * Request needs the write lock: update, or before/after query that may
+     * be an update
+     */
+    boolean isWrite(String query, Dataset ds) {
+        Context c = ds.getCreateContext();
+        return QueryText.isUpdate(query) || isBefore(c) || isAfter(c);
+    }
+
+    Mappings process(HttpServletRequest request, String query, Dataset ds) throws EngineException {
         if (ds.getCreateContext().hasValue(TRACE)) {
             trace(request);
         }
@@ -192,12 +410,13 @@ public class TripleStore implements URLParam {
         QueryProcess exec = getQueryProcess();
         exec.setDebug(c.isDebug());
 
-        Mappings map;
+        Mappings map = null;
         try {
             before(exec, query, ds);
             TripleStoreLog tsl = new TripleStoreLog(exec, c);
 
             Date d1 = new Date();
+            long start = System.nanoTime();
 
             try {
                 if (isFederate(ds)) {
@@ -216,7 +435,7 @@ public class TripleStore implements URLParam {
                 } else if (isSpin(c)) {
                     map = spin(query, ds);
                 } else {
-                    map = exec.query(query, ds);
+                    map = query(request, exec, query, null, ds);
                 }
             } catch (EngineException e) {
                 if (c.hasEveryValue(MES, CATCH)) {
@@ -229,6 +448,7 @@ public class TripleStore implements URLParam {
                 }
             }
 
+            Metrics.evaluate(request, start);
             // add param=value parameter to Context
             // Context is sent back to client as JSON message Linked Result
             // when mode=message
@@ -245,10 +465,166 @@ public class TripleStore implements URLParam {
             after(exec, query, ds);
         } catch (LoadException ex) {
             throw new EngineException(ex);
+        } finally {
+            if (isUpdated(map, query)) {
+                updated();
+            }
         }
         return map;
     }
 
+    /**
+     * New graph version after successful update, or after failed update that
+     * may be partially done; a failed query does not change the version
+     */
+    boolean isUpdated(Mappings map, String query) {
+        return (map == null) ? QueryText.isUpdate(query) : isUpdate(map);
+    }
+
+    boolean isUpdate(Mappings map) {
+        return map.getQuery() != null && map.getQuery().getAST() != null
+                && map.getQuery().getAST().isUpdate();
+    }
+
+    /**
+     * Graph may have changed: new graph version
+     */
+    void updated() {
+        version = VERSION.incrementAndGet();
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Stored query with parameter binding, evaluated with compiled query from
+     * the pool of the stored query, whether plan cache is enabled or not
+     * Stored query is not an update: it is evaluated with the read lock
+     */
+    Mappings query(HttpServletRequest request, StoredQuery sq, Mapping bind, Dataset ds) throws EngineException {
+        long timeout = QueryTimeout.getTimeout(request, ds.getCreateContext());
+        return QueryTimeout.run(request, timeout, () -> locked(false, () -> process(request, sq, bind, ds)));
+    }
+
+    Mappings process(HttpServletRequest request, StoredQuery sq, Mapping bind, Dataset ds) throws EngineException {
+        Context c = ds.getContext();
+        complete(c, request);
+        EventManager.getSingleton().call(c);
+        QueryProcess exec = getQueryProcess();
+        Date d1 = new Date();
+        long start = System.nanoTime();
+        Mappings map = query(request, exec, sq.getPlanCache(), sq.getQuery(), bind, ds);
+        Metrics.evaluate(request, start);
+        double time = (new Date().getTime() - d1.getTime()) / 1000.0;
+        c.set(URLParam.TIME, DatatypeMap.newInstance(time));
+        return map;
+    }
+
+    Mappings query(HttpServletRequest request, QueryProcess exec, String query, Mapping bind, Dataset ds)
+            throws EngineException {
+        return query(request, exec, getPlanCache(), query, bind, ds);
+    }
+
+    /**
+     * Evaluate query with a compiled query leased from plan cache
+     * The lease is given back when the response has been written
+     * 
+     * @bind is initial binding of query variables or null
+     */
+    Mappings query(HttpServletRequest request, QueryProcess exec, PlanCache cache, String query, Mapping bind,
+            Dataset ds) throws EngineException {
+        String key = getPlanKey(cache, query, ds);
+        if (key == null || cache.isUpdate(key)) {
+            return eval(exec, query, bind, ds);
+        }
+        PlanCache.Lease lease = cache.borrow(key);
+        if (lease == null) {
+            long time = System.nanoTime();
+            Query q = exec.compile(query, ds);
+            lease = cache.compiled(key, q, System.nanoTime() - time);
+            Metrics.phase(request, Metrics.COMPILE, System.nanoTime() - time);
+            if (lease == null) {
+                // update is not cached
+                return eval(exec, query, bind, ds);
+            }
+        } else {
+            // Query is reused as is: evaluation state (environment, stack,
+            // results) is created by QueryProcess for each evaluation; the
+            // dataset and access level it was compiled with are part of the
+            // plan key; only the AST context carries request parameters
+            lease.getQuery().getAST().setContext(ds.getContext());
+        }
+        if (!RequestResources.register(request, lease)) {
+            // no end of request callback: the compiled query is not given
+            // back to the cache, Mappings refers to it
+            lease.discard();
+        }
+        if (bind == null) {
+            return exec.query(lease.getQuery());
+        }
+        return exec.query(lease.getQuery(), bind);
+    }
+
+    Mappings eval(QueryProcess exec, String query, Mapping bind, Dataset ds) throws EngineException {
+        if (bind == null) {
+            return exec.query(query, ds);
+        }
+        return exec.query(query, bind, ds);
+    }
+
+    /**
+     * Plan cache key: triple store, query text and dataset properties used by
+     * compiler
+     * null when query is not cached
+     */
+    String getPlanKey(String query, Dataset ds) {
+        return getPlanKey(getPlanCache(), query, ds);
+    }
+
+    String getPlanKey(PlanCache cache, String query, Dataset ds) {
+        Context c = ds.getContext();
+        if (!cache.isEnabled() || QueryText.hasDefinition(query)
+                || c.isDebug() || c.hasValue(EXPLAIN) || c.hasValue(TRACE) || c.hasValue(WHY)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(id).append("\n")
+                .append(isMatch()).append("\n")
+                .append(c.getLevel()).append("\n")
+                .append(ds.getFromList()).append("\n")
+                .append(ds.getNamedList()).append("\n")
+                .append(QueryText.normalize(query));
+        return sb.toString();
+    }
+
+    PlanCache getPlanCache() {
+        return planCache;
+    }
+
+    GraphLock getLock() {
+        return lock;
+    }
+
+    UpdateBatcher getBatcher() {
+        return batcher;
+    }
+
+    GraphSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Snapshots are copies of local graph, not of external DataManager
+     */
+    boolean isSnapshot() {
+        return snapshotMode && getDataManager() == null;
+    }
+
+    static void setSnapshotMode(boolean b) {
+        snapshotMode = b;
+    }
+
     void complete(Context c, HttpServletRequest request) {
         c.setService(getName());
         c.setUserQuery(true);
@@ -0,0 +1,366 @@
+package fr.inria.corese.server.webservice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+import fr.inria.corese.core.sparql.triple.parser.Dataset;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Group commit of concurrent small updates of a TripleStore
+ * INSERT DATA and DELETE DATA updates are queued, a committer thread collects
+ * queued updates during window ms or up to size updates and evaluates them
+ * as one SPARQL Update request (operations separated by ;) with one write
+ * lock acquisition (one graph copy in snapshot mode)
+ * Each caller is acknowledged when the batch is applied
+ * When the batch fails, its updates are evaluated one by one and each caller
+ * gets its own result or error
+ * Updates with different access levels or datasets are not grouped
+ * Batch is evaluated with the smallest remaining timeout of its updates, an
+ * update whose timeout is passed in the queue is not applied
+ * Server options:
+ * -batch n max number of updates per batch, 0 or 1: no batch
+ * -batchwait ms max time to collect a batch
+ */
+public class UpdateBatcher {
+
+    private static final Logger logger = LogManager.getLogger(UpdateBatcher.class);
+    static final String SEPARATOR = " ;\n";
+    // max waiting time of an update without timeout, longer than default
+    // lock timeout
+    static final long MAX_WAIT = 60000;
+
+    private static int size = 0;
+    private static long window = 2;
+
+    private final TripleStore store;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private Thread committer;
+    // first update of next batch, with another access level than current batch
+    private Pending carry;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong maxBatch = new AtomicLong();
+    private final AtomicLong fallback = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * Queued update and its acknowledgment
+     */
+    static class Pending {
+        static final int QUEUED = 0;
+        static final int STARTED = 1;
+        static final int CANCELLED = 2;
+
+        String query;
+        Dataset dataset;
+        long timeout;
+        long start = System.nanoTime();
+        // start of batch evaluation
+        volatile long evaluation;
+        AtomicInteger state = new AtomicInteger(QUEUED);
+        CompletableFuture<Mappings> result = new CompletableFuture<>();
+
+        Pending(String query, Dataset ds, long timeout) {
+            this.query = query;
+            this.dataset = ds;
+            this.timeout = timeout;
+        }
+
+        /**
+         * Updates with same key are evaluated with the same dataset
+         */
+        String getKey() {
+            return dataset.getContext().getLevel() + "\n" + dataset.getFromList() + "\n" + dataset.getNamedList();
+        }
+
+        boolean isExpired() {
+            return timeout > 0 && System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+
+        /**
+         * Remaining time in ms, 0 means no timeout
+         */
+        long remaining() {
+            if (timeout <= 0) {
+                return 0;
+            }
+            return Math.max(1, timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        boolean begin() {
+            return state.compareAndSet(QUEUED, STARTED);
+        }
+
+        boolean cancel() {
+            return state.compareAndSet(QUEUED, CANCELLED);
+        }
+    }
+
+    UpdateBatcher(TripleStore store) {
+        this.store = store;
+    }
+
+    static boolean isEnabled() {
+        return size > 1;
+    }
+
+    /**
+     * Queue update and wait until its batch is applied, at most timeout ms
+     * (MAX_WAIT ms when timeout is 0)
+     */
+    Mappings submit(HttpServletRequest request, String query, Dataset ds, long timeout) throws EngineException {
+        Pending p = new Pending(query, ds, timeout);
+        start();
+        queue.add(p);
+        try {
+            Mappings map = p.result.get((timeout > 0) ? timeout : MAX_WAIT, TimeUnit.MILLISECONDS);
+            Metrics.evaluate(request, p.evaluation);
+            return map;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw abort(p, "Update interrupted");
+        } catch (TimeoutException ex) {
+            throw abort(p, "Update timeout: " + ((timeout > 0) ? timeout : MAX_WAIT) + " ms");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof EngineException) {
+                throw (EngineException) ex.getCause();
+            }
+            throw new EngineException(new Exception(ex.getCause()));
+        }
+    }
+
+    /**
+     * Caller stops waiting: update is not applied unless its batch has started
+     */
+    QueryTimeoutException abort(Pending p, String mes) {
+        if (p.cancel()) {
+            cancelled.incrementAndGet();
+            mes += ", update not applied";
+        } else {
+            mes += ", update is being applied";
+        }
+        logger.warn(mes);
+        return new QueryTimeoutException(mes);
+    }
+
+    synchronized void start() {
+        if (committer == null) {
+            committer = new Thread(this::run, "corese-update-" + store.getName());
+            committer.setDaemon(true);
+            committer.start();
+        }
+    }
+
+    void run() {
+        try {
+            while (true) {
+                List<Pending> batch;
+                try {
+                    batch = collect();
+                } catch (InterruptedException ex) {
+                    logger.warn("Update committer interrupted");
+                    return;
+                }
+                // interrupted while collecting: commit collected updates and stop
+                boolean stop = Thread.interrupted();
+                try {
+                    commit(batch);
+                } catch (RuntimeException ex) {
+                    logger.error("Update committer", ex);
+                }
+                if (stop) {
+                    logger.warn("Update committer interrupted");
+                    return;
+                }
+            }
+        } finally {
+            stopped();
+        }
+    }
+
+    /**
+     * Next update starts a new committer
+     */
+    synchronized void stopped() {
+        if (committer == Thread.currentThread()) {
+            committer = null;
+        }
+    }
+
+    /**
+     * Wait for a first update, then collect updates with same access level
+     * and dataset until window is elapsed or batch is full
+     */
+    List<Pending> collect() throws InterruptedException {
+        List<Pending> batch = new ArrayList<>();
+        Pending first = (carry == null) ? queue.take() : carry;
+        carry = null;
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(window);
+        while (batch.size() < size) {
+            long remain = deadline - System.nanoTime();
+            if (remain <= 0) {
+                break;
+            }
+            Pending p;
+            try {
+                p = queue.poll(remain, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                // collected updates are committed
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (p == null) {
+                break;
+            }
+            if (!Objects.equals(p.getKey(), first.getKey())) {
+                carry = p;
+                break;
+            }
+            batch.add(p);
+        }
+        return batch;
+    }
+
+    /**
+     * Every update of batch is completed when commit returns
+     */
+    void commit(List<Pending> batch) {
+        long time = System.nanoTime();
+        List<Pending> list = begin(batch);
+        try {
+            if (list.size() == 1) {
+                apply(list.get(0));
+            } else if (list.size() > 1) {
+                StringBuilder sb = new StringBuilder();
+                for (Pending p : list) {
+                    if (sb.length() > 0) {
+                        sb.append(SEPARATOR);
+                    }
+                    sb.append(p.query);
+                    p.evaluation = time;
+                }
+                try {
+                    Mappings map = QueryTimeout.run(null, remaining(list),
+                            () -> store.update(sb.toString(), list.get(0).dataset));
+                    for (Pending p : list) {
+                        // each caller has its own result
+                        done(p, Mappings.create(map.getQuery()));
+                    }
+                } catch (Throwable ex) {
+                    logger.warn("Batch of " + list.size() + " updates failed, apply updates one by one: "
+                            + ex.getMessage());
+                    fallback.incrementAndGet();
+                    for (Pending p : list) {
+                        apply(p);
+                    }
+                }
+            }
+        } finally {
+            for (Pending p : batch) {
+                if (!p.result.isDone()) {
+                    p.result.completeExceptionally(new EngineException("Update not applied"));
+                }
+            }
+            commitNanos.addAndGet(System.nanoTime() - time);
+            batches.incrementAndGet();
+            updates.addAndGet(list.size());
+            maxBatch.accumulateAndGet(list.size(), Math::max);
+        }
+    }
+
+    /**
+     * Updates of batch that are still waiting, updates cancelled by their
+     * caller or whose timeout is passed are not applied
+     */
+    List<Pending> begin(List<Pending> batch) {
+        List<Pending> list = new ArrayList<>();
+        for (Pending p : batch) {
+            if (p.isExpired() && p.cancel()) {
+                cancelled.incrementAndGet();
+                p.result.completeExceptionally(
+                        new QueryTimeoutException("Update timeout: " + p.timeout + " ms, update not applied"));
+            } else if (p.begin()) {
+                list.add(p);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Smallest remaining timeout of batch, 0 means no timeout
+     */
+    long remaining(List<Pending> list) {
+        long min = 0;
+        for (Pending p : list) {
+            long remain = p.remaining();
+            if (remain > 0 && (min == 0 || remain < min)) {
+                min = remain;
+            }
+        }
+        return min;
+    }
+
+    void apply(Pending p) {
+        try {
+            p.evaluation = System.nanoTime();
+            done(p, QueryTimeout.run(null, p.remaining(), () -> store.update(p.query, p.dataset)));
+        } catch (Throwable ex) {
+            p.result.completeExceptionally(ex);
+        }
+    }
+
+    void done(Pending p, Mappings map) {
+        long latency = System.nanoTime() - p.start;
+        latencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        p.result.complete(map);
+    }
+
+    JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        long nb = batches.get();
+        json.put("maxSize", size);
+        json.put("windowMs", window);
+        json.put("queued", queue.size());
+        json.put("batches", nb);
+        json.put("updates", updates.get());
+        json.put("averageBatchSize", nb == 0 ? 0 : (double) updates.get() / nb);
+        json.put("maxBatchSize", maxBatch.get());
+        json.put("fallback", fallback.get());
+        json.put("cancelled", cancelled.get());
+        json.put("commitTimeMs", commitNanos.get() / 1_000_000);
+        json.put("averageLatencyMs", updates.get() == 0 ? 0 : latencyNanos.get() / 1_000_000.0 / updates.get());
+        json.put("maxLatencyMs", maxLatencyNanos.get() / 1_000_000);
+        return json;
+    }
+
+    static void setSize(int n) {
+        size = n;
+    }
+
+    static void setWindow(long ms) {
+        window = ms;
+    }
+
+}
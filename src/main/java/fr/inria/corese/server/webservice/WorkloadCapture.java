@@ -0,0 +1,297 @@
+package fr.inria.corese.server.webservice;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.server.Request;
+import org.json.JSONObject;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Workload capture: requests to /sparql, /template and /service/{serv} are
+ * recorded, one JSON record per line, to be replayed by WorkloadReplay
+ * Record: t (start date in ms), route, method, path, qs (query string),
+ * ct (content type), body, accept, enc (accept encoding), status, ms
+ * (latency), size (number of results or triples, -1 if unknown), bytes
+ * (response size, before compression)
+ * Body of form, sparql-query and sparql-update requests is recorded up to
+ * MAX_BODY bytes, a larger body is marked truncated
+ * Access key is not recorded: access parameter is removed from query string
+ * and form body, the record is marked with access: true
+ * Records are written by the logger of this class: log4j2.xml routes it to
+ * an asynchronous non blocking appender (log/capture.log)
+ * Server option:
+ * -capture rate sampling rate in ]0,1], 1: every request, default: no capture
+ */
+public class WorkloadCapture implements Filter {
+
+    private static final Logger logger = LogManager.getLogger(WorkloadCapture.class);
+    // max size of a recorded request body in bytes
+    static final int MAX_BODY = 1_000_000;
+    static final String FORM = "application/x-www-form-urlencoded";
+    static final String[] BODY_TYPES = { FORM, "application/sparql-query", "application/sparql-update" };
+    // parameter of access key, not recorded
+    static final String ACCESS = "access";
+
+    private static double rate = -1;
+
+    /**
+     * Request being captured
+     */
+    static class Record {
+        long date = System.currentTimeMillis();
+        long start = System.nanoTime();
+        HttpServletRequest request;
+        JSONObject json = new JSONObject();
+        AtomicBoolean done = new AtomicBoolean();
+
+        Record(HttpServletRequest request, String route) {
+            this.request = request;
+            json.put("t", date);
+            json.put("route", route);
+            json.put("method", request.getMethod());
+            json.put("path", request.getRequestURI().substring(request.getContextPath().length()));
+            json.putOpt("qs", strip(request.getQueryString()));
+            json.putOpt("ct", request.getContentType());
+            json.putOpt("accept", request.getHeader("Accept"));
+            json.putOpt("enc", request.getHeader("Accept-Encoding"));
+        }
+
+        /**
+         * Parameters without access key, null if there is no other parameter
+         */
+        String strip(String params) {
+            if (params == null) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String param : params.split("&")) {
+                if (param.equals(ACCESS) || param.startsWith(ACCESS + "=")) {
+                    json.put(ACCESS, true);
+                } else if (!param.isEmpty()) {
+                    sb.append((sb.length() == 0) ? "" : "&").append(param);
+                }
+            }
+            return (sb.length() == 0) ? null : sb.toString();
+        }
+    }
+
+    static boolean isEnabled() {
+        return rate > 0;
+    }
+
+    static void setRate(double value) {
+        if (value > 1) {
+            throw new IllegalArgumentException("Capture rate must be in ]0,1]: " + value);
+        }
+        rate = value;
+    }
+
+    static double getRate() {
+        return rate;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!isEnabled() || !(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)
+                || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest req = (HttpServletRequest) request;
+        String route = Metrics.route(req.getRequestURI().substring(req.getContextPath().length()))[0];
+        if (!route.equals("/sparql") && !route.equals("/template") && !route.equals("/service/{serv}")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Record record = new Record(req, route);
+        if (hasBody(req)) {
+            req = body(req, record);
+        }
+        HttpServletResponse resp = (HttpServletResponse) response;
+        boolean async = false;
+        int status = 500;
+        try {
+            chain.doFilter(req, response);
+            if (req.isAsyncStarted()) {
+                req.getAsyncContext().addListener(new Listener(record));
+                async = true;
+            }
+            status = resp.getStatus();
+        } finally {
+            if (!async) {
+                end(record, status);
+            }
+        }
+    }
+
+    static boolean hasBody(HttpServletRequest request) {
+        String type = request.getContentType();
+        if (type == null) {
+            return false;
+        }
+        for (String name : BODY_TYPES) {
+            if (type.startsWith(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read and record body, return request that reads the recorded body
+     */
+    static HttpServletRequest body(HttpServletRequest request, Record record) throws IOException {
+        InputStream in = request.getInputStream();
+        byte[] bytes = in.readNBytes(MAX_BODY + 1);
+        InputStream stream = new ByteArrayInputStream(bytes);
+        if (bytes.length > MAX_BODY) {
+            record.json.put("truncated", true);
+            stream = new SequenceInputStream(stream, in);
+        } else {
+            String body = new String(bytes, StandardCharsets.UTF_8);
+            if (request.getContentType().startsWith(FORM)) {
+                body = record.strip(body);
+            }
+            record.json.putOpt("body", body);
+        }
+        return new BodyRequest(request, stream);
+    }
+
+    /**
+     * End of request, response has been written
+     */
+    static void end(Record record, int status) {
+        if (!record.done.compareAndSet(false, true)) {
+            return;
+        }
+        JSONObject json = record.json;
+        json.put("status", status);
+        json.put("ms", (System.nanoTime() - record.start) / 1_000_000.0);
+        Metrics.Timer timer = Metrics.getTimer(record.request);
+        json.put("size", (timer == null) ? -1 : timer.size);
+        json.put("bytes", bytes(record.request));
+        logger.info(json.toString());
+    }
+
+    /**
+     * Number of bytes written in response, before compression
+     */
+    static long bytes(HttpServletRequest request) {
+        Request base = Request.getBaseRequest(request);
+        if (base == null || base.getResponse() == null) {
+            return -1;
+        }
+        return base.getResponse().getHttpOutput().getWritten();
+    }
+
+    /**
+     * Request whose body is read from recorded bytes
+     */
+    static class BodyRequest extends HttpServletRequestWrapper {
+        private ServletInputStream stream;
+
+        BodyRequest(HttpServletRequest request, InputStream in) {
+            super(request);
+            stream = new ServletInputStream() {
+                boolean finished = false;
+
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    finished = (b == -1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buf, int off, int len) throws IOException {
+                    int n = in.read(buf, off, len);
+                    finished = (n == -1);
+                    return n;
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return finished;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new IllegalStateException("Non blocking read of captured request");
+                }
+            };
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return stream;
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(stream,
+                    (encoding == null) ? StandardCharsets.UTF_8 : Charset.forName(encoding)));
+        }
+    }
+
+    static class Listener implements AsyncListener {
+        private Record record;
+
+        Listener(Record record) {
+            this.record = record;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            ServletResponse response = event.getSuppliedResponse();
+            int status = (response instanceof HttpServletResponse) ? ((HttpServletResponse) response).getStatus()
+                    : 500;
+            end(record, status);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            end(record, 503);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            end(record, 500);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+}
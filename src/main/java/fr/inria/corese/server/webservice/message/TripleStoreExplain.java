@@ -3,12 +3,19 @@ package fr.inria.corese.server.webservice.message;
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.GraphDistance;
 import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.kgram.api.core.Node;
 import fr.inria.corese.core.kgram.core.Mappings;
 import fr.inria.corese.core.kgram.core.Query;
 import fr.inria.corese.core.sparql.api.IDatatype;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
 import fr.inria.corese.core.sparql.triple.parser.ASTQuery;
+import fr.inria.corese.core.sparql.triple.parser.Atom;
 import fr.inria.corese.core.sparql.triple.parser.Context;
+import fr.inria.corese.core.sparql.triple.parser.Dataset;
+import fr.inria.corese.core.sparql.triple.parser.Exp;
+import fr.inria.corese.core.sparql.triple.parser.Triple;
 import fr.inria.corese.core.sparql.triple.parser.URLParam;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
@@ -16,6 +23,15 @@ import org.json.JSONObject;
  * Search in the graph if there exist property and resource URI 
  * similar to those in the query
  * Return explanation in json object, ready for Linked Result message
+ * 
+ * Analyze query (mode=analyze): plan tree of query body where each operator
+ * (edge, join, optional, minus, union, graph, filter) is evaluated
+ * alone: standaloneRows and standaloneTimeMs are those of the operator
+ * evaluated without the bindings of enclosing and preceding patterns, they
+ * are not the actual cardinalities of the query evaluation
+ * Edge has estimated cardinality from graph statistics (edges of predicate),
+ * join has no estimation
+ * Service is not evaluated, remote endpoints are not called by analyze
  */
 public class TripleStoreExplain {
        
@@ -26,7 +42,23 @@ public class TripleStoreExplain {
     private ASTQuery ast;
     private Context context;
     
-    TripleStoreExplain(QueryProcess exec, Context context, Mappings map) {
+    // max number of operators evaluated by analyze
+    public static int MAX_OPERATOR = 100;
+    // rows of operator evaluated alone
+    static final String ROWS = "standaloneRows";
+    private String prologue = "";
+    private Dataset dataset;
+    private int operators;
+    private Checker checker = () -> {};
+
+    /**
+     * Called before each operator evaluation, throws when analyze is cancelled
+     */
+    public interface Checker {
+        void check() throws EngineException;
+    }
+    
+    public TripleStoreExplain(QueryProcess exec, Context context, Mappings map) {
         setQueryProcess(exec);
         setMappings(map);
         setQuery(map.getQuery());
@@ -51,6 +83,128 @@ public class TripleStoreExplain {
     Graph getGraph() {
         return getQueryProcess().getGraph();
     }
+    
+    /**
+     * Plan tree of query with actual rows and time of each operator
+     * @prologue prefix and base declarations of query text
+     * @time evaluation time of query in ms
+     */
+    public JSONObject analyze(String prologue, Dataset ds, double time) throws EngineException {
+        this.prologue = prologue;
+        this.dataset = ds;
+        operators = 0;
+        JSONObject json = new JSONObject();
+        json.put("rows", getMappings().size());
+        json.put("timeMs", time);
+        json.put("graphSize", getGraph().size());
+        json.put("plan", analyze(getAst().getBody()));
+        if (operators >= MAX_OPERATOR) {
+            json.put("truncated", true);
+        }
+        return json;
+    }
+    
+    JSONObject analyze(Exp exp) throws EngineException {
+        JSONObject json = new JSONObject();
+        json.put("operator", operator(exp));
+        if (exp.isFilter()) {
+            // rows in and out are set by enclosing group
+            json.put("expression", exp.getFilter().toString());
+            return json;
+        }
+        json.put("pattern", exp.toString());
+        if (operator(exp).equals("service")) {
+            // remote endpoint is not called
+            json.put("skipped", true);
+            return json;
+        }
+        evaluate(json, exp.toString());
+        
+        if (exp.isTriple()) {
+            long estimate = estimate(exp.getTriple());
+            json.put("estimated", estimate);
+            return json;
+        }
+        
+        JSONArray children = new JSONArray();
+        StringBuilder unfiltered = new StringBuilder();
+        boolean filter = false;
+        for (int i = 0; i < exp.size(); i++) {
+            Exp e = exp.get(i);
+            JSONObject child = analyze(e);
+            children.put(child);
+            if (e.isFilter()) {
+                filter = true;
+            } else {
+                unfiltered.append(e.toString()).append("\n");
+            }
+        }
+        if (filter && json.has(ROWS)) {
+            // standalone rows before filters of the group
+            JSONObject in = new JSONObject();
+            evaluate(in, "{" + unfiltered + "}");
+            for (int i = 0; i < children.length(); i++) {
+                if (exp.get(i).isFilter()) {
+                    children.getJSONObject(i).put(ROWS + "In", in.opt(ROWS));
+                    children.getJSONObject(i).put(ROWS + "Out", json.get(ROWS));
+                }
+            }
+        }
+        if (children.length() > 0) {
+            json.put("children", children);
+        }
+        return json;
+    }
+    
+    /**
+     * Evaluate pattern alone, record its standalone rows and time
+     */
+    void evaluate(JSONObject json, String pattern) throws EngineException {
+        if (operators++ >= MAX_OPERATOR) {
+            return;
+        }
+        getChecker().check();
+        String query = String.format("%s\nselect * where { %s }", prologue, pattern);
+        long time = System.nanoTime();
+        try {
+            Mappings map = getQueryProcess().query(query, dataset);
+            json.put(ROWS, map.size());
+            json.put("standaloneTimeMs", (System.nanoTime() - time) / 1_000_000.0);
+        } catch (EngineException ex) {
+            // cancelled analyze stops here
+            getChecker().check();
+            json.put("error", ex.getMessage());
+        }
+    }
+    
+    String operator(Exp exp) {
+        if (exp.isTriple()) {
+            return exp.getTriple().isPath() ? "path" : "edge";
+        }
+        if (exp.isFilter()) {
+            return "filter";
+        }
+        switch (exp.getClass().getSimpleName()) {
+            case "BasicGraphPattern": return "join";
+            case "Source": return "graph";
+            case "Binding": return "bind";
+            case "Query": return "subquery";
+            default: return exp.getClass().getSimpleName().toLowerCase();
+        }
+    }
+    
+    /**
+     * Number of edges of the predicate, graph size when predicate is a
+     * variable or a path
+     */
+    long estimate(Triple t) {
+        Atom p = t.getPredicate();
+        if (p == null || t.isPath() || !p.isConstant()) {
+            return getGraph().size();
+        }
+        Node node = getGraph().getPropertyNode(p.getLabel());
+        return (node == null) ? 0 : getGraph().size(node);
+    }
 
 
     public JSONObject getJson() {
@@ -93,6 +247,15 @@ public class TripleStoreExplain {
         this.queryProcess = queryProcess;
     }
 
+    public Checker getChecker() {
+        return checker;
+    }
+
+    public TripleStoreExplain setChecker(Checker checker) {
+        this.checker = checker;
+        return this;
+    }
+
     public Context getContext() {
         return context;
     }
@@ -8,6 +8,9 @@ module fr.inria.corese.corese_server {
     requires org.eclipse.jetty.servlets;
     requires org.eclipse.jetty.util;
     requires org.eclipse.jetty.http;
+    requires org.eclipse.jetty.http2.server;
+    requires org.eclipse.jetty.http2.common;
+    requires org.eclipse.jetty.alpn.server;
     requires org.eclipse.jetty.websocket.servlet;
 
     requires jersey.server;
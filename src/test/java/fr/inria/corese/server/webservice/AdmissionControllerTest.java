@@ -0,0 +1,101 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Admission control: concurrency limit, bounded waiting queue, bounded
+ * waiting time, permit released once
+ */
+public class AdmissionControllerTest {
+
+    @After
+    public void reset() {
+        AdmissionController.setMaxQueue(100);
+        AdmissionController.setMaxWait(5000);
+    }
+
+    @Test
+    public void disabledTest() {
+        AdmissionController ac = new AdmissionController("test", 0);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(ac.admit());
+        }
+        assertEquals(0, ac.getActive());
+    }
+
+    @Test
+    public void limitTest() {
+        AdmissionController.setMaxWait(100);
+        AdmissionController ac = new AdmissionController("test", 2);
+        AdmissionController.Permit p1 = ac.admit();
+        AdmissionController.Permit p2 = ac.admit();
+        assertNotNull(p1);
+        assertNotNull(p2);
+        assertEquals(2, ac.getActive());
+        // waits at most 100 ms and is rejected
+        long start = System.currentTimeMillis();
+        assertNull(ac.admit());
+        assertTrue(System.currentTimeMillis() - start >= 90);
+        assertEquals(1, ac.getRejected());
+        assertEquals(0, ac.getWaiting());
+
+        p1.close();
+        // released once
+        p1.close();
+        assertEquals(1, ac.getActive());
+        AdmissionController.Permit p3 = ac.admit();
+        assertNotNull(p3);
+        assertNull(ac.admit());
+        p2.close();
+        p3.close();
+        assertEquals(0, ac.getActive());
+        assertEquals(3, ac.getAdmitted());
+        assertEquals(503, ac.reject().getStatus());
+    }
+
+    @Test
+    public void waitTest() throws Exception {
+        AdmissionController.setMaxWait(5000);
+        AdmissionController ac = new AdmissionController("test", 1);
+        AdmissionController.Permit p1 = ac.admit();
+        CompletableFuture<AdmissionController.Permit> waiting = CompletableFuture.supplyAsync(ac::admit);
+        while (ac.getWaiting() == 0) {
+            Thread.sleep(10);
+        }
+        // waiting request is admitted when permit is released
+        p1.close();
+        AdmissionController.Permit p2 = waiting.get(2, TimeUnit.SECONDS);
+        assertNotNull(p2);
+        assertEquals(1, ac.getActive());
+        p2.close();
+    }
+
+    @Test
+    public void queueTest() throws Exception {
+        AdmissionController.setMaxQueue(1);
+        AdmissionController.setMaxWait(5000);
+        AdmissionController ac = new AdmissionController("test", 1);
+        AdmissionController.Permit p1 = ac.admit();
+        CompletableFuture<AdmissionController.Permit> waiting = CompletableFuture.supplyAsync(ac::admit);
+        while (ac.getWaiting() == 0) {
+            Thread.sleep(10);
+        }
+        // queue is full: rejected at once
+        long start = System.currentTimeMillis();
+        assertNull(ac.admit());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        p1.close();
+        waiting.get(2, TimeUnit.SECONDS).close();
+        assertEquals(0, ac.getActive());
+    }
+
+}
@@ -0,0 +1,69 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * N-Triples/N-Quads line parser of bulk loader
+ */
+public class BulkLoaderTest {
+
+    static BulkLoader.Term[] parse(String line) {
+        return new BulkLoader("test.nq", null).parse(line, 1);
+    }
+
+    @Test
+    public void escapeTest() {
+        BulkLoader.Term[] quad = parse("<http://ex.org/s> <http://ex.org/p> \"a\\\"b\\tc\\nd\\\\e\" .");
+        assertEquals("a\"b\tc\nd\\e", quad[2].label);
+        quad = parse("<http://ex.org/s\\u00E9> <http://ex.org/p> \"caf\\u00e9 \\U0001F600\" .");
+        assertEquals("http://ex.org/s\u00e9", quad[0].label);
+        assertEquals("caf\u00e9 \uD83D\uDE00", quad[2].label);
+    }
+
+    @Test
+    public void literalTest() {
+        BulkLoader.Term[] quad = parse("<http://ex.org/s> <http://ex.org/p> \"chat\"@en-US .");
+        assertEquals(BulkLoader.Term.LITERAL, quad[2].kind);
+        assertEquals("en-US", quad[2].lang);
+        quad = parse("<http://ex.org/s> <http://ex.org/p> \"1\"^^<http://www.w3.org/2001/XMLSchema#integer>.");
+        assertEquals("http://www.w3.org/2001/XMLSchema#integer", quad[2].datatype);
+        assertNull(quad[3]);
+    }
+
+    @Test
+    public void blankNodeTest() {
+        BulkLoader.Term[] quad = parse("_:b1 <http://ex.org/p> _:b2.");
+        assertEquals(BulkLoader.Term.BLANK, quad[0].kind);
+        assertEquals("b1", quad[0].label);
+        // final dot is not part of the label
+        assertEquals("b2", quad[2].label);
+    }
+
+    @Test
+    public void graphTest() {
+        BulkLoader.Term[] quad = parse("  _:b <http://ex.org/p> \"x\" <http://ex.org/g> . # comment");
+        assertEquals("http://ex.org/g", quad[3].label);
+        assertNull(parse("# comment"));
+        assertNull(parse("   "));
+    }
+
+    @Test
+    public void errorTest() {
+        for (String line : new String[] { "<http://ex.org/s> <http://ex.org/p> .",
+                "<http://ex.org/s> <http://ex.org/p> \"x .", "<http://ex.org/s> <http://ex.org/p> <http://ex.org/o>",
+                "<http://ex.org/s> <http://ex.org/p> ?o ." }) {
+            try {
+                parse(line);
+                fail("Incorrect statement: " + line);
+            } catch (IllegalArgumentException ex) {
+                assertTrue(ex.getMessage().startsWith("test.nq line 1"));
+            }
+        }
+    }
+
+}
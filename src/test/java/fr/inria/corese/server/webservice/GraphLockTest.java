@@ -0,0 +1,158 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Readers-writer lock: bounded waiting time, writer preference, reentrance,
+ * no upgrade of read lock
+ */
+public class GraphLockTest {
+
+    @After
+    public void reset() {
+        GraphLock.setTimeout(30000);
+    }
+
+    /**
+     * Hold lock in another thread until release is counted down
+     */
+    static CompletableFuture<Void> hold(GraphLock lock, boolean write, CountDownLatch acquired,
+            CountDownLatch release) {
+        return CompletableFuture.runAsync(() -> {
+            try (GraphLock.Hold hold = write ? lock.acquireWrite() : lock.acquire(false)) {
+                acquired.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+
+    @Test
+    public void readTimeoutTest() throws Exception {
+        GraphLock.setTimeout(100);
+        GraphLock lock = new GraphLock();
+        CountDownLatch acquired = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> writer = hold(lock, true, acquired, release);
+        acquired.await();
+        long start = System.currentTimeMillis();
+        try (GraphLock.Hold hold = lock.acquire(false)) {
+            fail("Read lock timeout expected");
+        } catch (QueryTimeoutException ex) {
+            assertTrue(System.currentTimeMillis() - start >= 90);
+        }
+        assertEquals(1, lock.toJSON().getJSONObject("read").getLong("timeout"));
+        release.countDown();
+        writer.get(2, TimeUnit.SECONDS);
+        // lock is available when writer ends
+        try (GraphLock.Hold hold = lock.acquire(false)) {
+            assertEquals(1, lock.toJSON().getInt("readers"));
+        }
+        assertEquals(0, lock.toJSON().getInt("readers"));
+    }
+
+    @Test
+    public void writerPreferenceTest() throws Exception {
+        GraphLock.setTimeout(5000);
+        GraphLock lock = new GraphLock();
+        CountDownLatch readAcquired = new CountDownLatch(1);
+        CountDownLatch readRelease = new CountDownLatch(1);
+        CompletableFuture<Void> reader = hold(lock, false, readAcquired, readRelease);
+        readAcquired.await();
+        CountDownLatch writeAcquired = new CountDownLatch(1);
+        CountDownLatch writeRelease = new CountDownLatch(1);
+        CompletableFuture<Void> writer = hold(lock, true, writeAcquired, writeRelease);
+        while (lock.toJSON().getInt("waitingWriters") == 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+
+        // new reader waits behind the waiting writer
+        GraphLock.setTimeout(200);
+        try (GraphLock.Hold hold = lock.acquire(false)) {
+            fail("Reader must not overtake waiting writer");
+        } catch (QueryTimeoutException ex) {
+            assertEquals(1, writeAcquired.getCount());
+        }
+        readRelease.countDown();
+        assertTrue(writeAcquired.await(2, TimeUnit.SECONDS));
+        writeRelease.countDown();
+        reader.get(2, TimeUnit.SECONDS);
+        writer.get(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void reentrantTest() throws Exception {
+        GraphLock lock = new GraphLock();
+        try (GraphLock.Hold write = lock.acquire(true)) {
+            // update called within update goes on with the lock it holds
+            try (GraphLock.Hold inner = lock.acquire(true)) {
+                assertNull(inner.held);
+            }
+            try (GraphLock.Hold inner = lock.acquire(false)) {
+                assertNull(inner.held);
+            }
+            assertTrue(lock.toJSON().getBoolean("writeLocked"));
+        }
+        assertFalse(lock.toJSON().getBoolean("writeLocked"));
+        assertEquals(1, lock.toJSON().getJSONObject("write").getLong("acquired"));
+    }
+
+    @Test
+    public void upgradeTest() throws Exception {
+        GraphLock lock = new GraphLock();
+        try (GraphLock.Hold read = lock.acquire(false)) {
+            // update within query is refused instead of running without lock
+            try (GraphLock.Hold inner = lock.acquire(true)) {
+                fail("Write within read lock must be refused");
+            } catch (IllegalStateException ex) {
+                assertEquals(GraphLock.UPGRADE, ex.getMessage());
+            }
+            try (GraphLock.Hold inner = lock.acquireWrite()) {
+                fail("Write within read lock must be refused");
+            } catch (IllegalStateException ex) {
+                assertFalse(lock.toJSON().getBoolean("writeLocked"));
+            }
+            assertEquals(1, lock.toJSON().getInt("readers"));
+        }
+        assertEquals(0, lock.toJSON().getInt("readers"));
+    }
+
+    @Test
+    public void yieldTest() throws Exception {
+        GraphLock lock = new GraphLock();
+        CountDownLatch acquired = new CountDownLatch(1);
+        CompletableFuture<Void> reader;
+        try (GraphLock.Hold write = lock.acquireWrite()) {
+            reader = CompletableFuture.runAsync(() -> {
+                try (GraphLock.Hold hold = lock.acquire(false)) {
+                    acquired.countDown();
+                } catch (QueryTimeoutException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            while (lock.toJSON().getInt("waitingReaders") == 0) {
+                Thread.sleep(10);
+            }
+        }
+        // bulk load chunk: waiting reader is served before next write
+        lock.yield();
+        try (GraphLock.Hold write = lock.acquireWrite()) {
+            assertEquals(0, acquired.getCount());
+        }
+        reader.get(2, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,90 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import fr.inria.corese.core.GraphStore;
+
+/**
+ * Copy-on-write snapshots: a query keeps the graph it pinned while a writer
+ * publishes a new one, previous graph is reclaimed by its last reader
+ */
+public class GraphSnapshotTest {
+
+    @Test
+    public void pinTest() {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        GraphStore g1 = new GraphStore();
+        GraphStore g2 = new GraphStore();
+        GraphSnapshot.Pin p1 = snapshot.pin(g1, 1);
+        GraphSnapshot.Pin p2 = snapshot.pin(g1, 1);
+        assertSame(g1, p1.getGraph());
+
+        // writer publishes a copy: readers keep their graph
+        snapshot.publish(g2, 2);
+        GraphSnapshot.Pin p3 = snapshot.pin(g2, 2);
+        assertSame(g1, p1.getGraph());
+        assertSame(g2, p3.getGraph());
+        assertEquals(1, snapshot.toJSON().getInt("retained"));
+        assertEquals(2, snapshot.toJSON().getInt("retainedReaders"));
+
+        p1.close();
+        // closed twice: by evaluation and by request resources
+        p1.close();
+        assertEquals(1, snapshot.toJSON().getInt("retained"));
+        p2.close();
+        assertEquals(0, snapshot.toJSON().getInt("retained"));
+        assertEquals(1, snapshot.toJSON().getLong("reclaimed"));
+        assertEquals(1, snapshot.toJSON().getInt("readers"));
+        p3.close();
+        assertEquals(0, snapshot.toJSON().getInt("readers"));
+        assertEquals(2, snapshot.toJSON().getLong("version"));
+    }
+
+    @Test
+    public void publishWithoutReaderTest() {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        snapshot.pin(new GraphStore(), 1).close();
+        snapshot.publish(new GraphStore(), 2);
+        // graph without reader is reclaimed at once
+        assertEquals(0, snapshot.toJSON().getInt("retained"));
+        assertEquals(1, snapshot.toJSON().getLong("reclaimed"));
+    }
+
+    @Test
+    public void setGraphTest() {
+        GraphSnapshot snapshot = new GraphSnapshot();
+        GraphStore g1 = new GraphStore();
+        GraphStore g2 = new GraphStore();
+        snapshot.pin(g1, 1).close();
+        // triple store graph replaced without publish: pin publishes it
+        GraphSnapshot.Pin pin = snapshot.pin(g2, 1);
+        assertSame(g2, pin.getGraph());
+        assertEquals(2, snapshot.toJSON().getLong("published"));
+        pin.close();
+    }
+
+    @Test
+    public void publishStoreTest() throws Exception {
+        TripleStore store = new TripleStore(new GraphStore());
+        GraphSnapshot snapshot = store.getSnapshot();
+        GraphSnapshot.Pin p1 = snapshot.pin(store);
+        long version = store.getVersion();
+        assertEquals(version, p1.getVersion());
+
+        // graph and version are published together
+        GraphStore g2 = new GraphStore();
+        store.publish(g2);
+        GraphSnapshot.Pin p2 = snapshot.pin(store);
+        assertSame(g2, p2.getGraph());
+        assertTrue(p2.getVersion() > version);
+        assertEquals(store.getVersion(), p2.getVersion());
+        assertEquals(version, p1.getVersion());
+        p1.close();
+        p2.close();
+    }
+
+}
@@ -0,0 +1,76 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fr.inria.corese.core.print.ResultFormat;
+
+/**
+ * Graph Store GET streamed by edge iteration (server option -stream): named
+ * graph has the edges of the graph only, default graph is the union of named
+ * graphs with a triple once as the construct query
+ */
+public class GraphStoreStreamingTest {
+
+    private static Process server;
+
+    private static final String SERVER_URL = "http://localhost:8080/";
+    private static final String GRAPH_STORE_ENDPOINT = SERVER_URL + "rdf-graph-store";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        String trigFileAbsolutePath = new File("src/test/resources/union.trig").getAbsolutePath();
+        server = HTTPConnectionUtils.startServer("server_graphstore_stream", "-lh", "-stream", "0",
+                "-l", trigFileAbsolutePath);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        server.destroy();
+    }
+
+    static List<String> get(String graph, String format) throws Exception {
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", format));
+        String url = GRAPH_STORE_ENDPOINT;
+        if (graph != null) {
+            url += "?" + SPARQLTestUtils.generateGraphStoreParameters(graph);
+        }
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(url, headers);
+        assertEquals(200, con.getResponseCode());
+        List<String> lines = new LinkedList<>();
+        for (String line : HTTPConnectionUtils.read(con).split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(line);
+            }
+        }
+        con.disconnect();
+        return lines;
+    }
+
+    @Test
+    public void namedGraphTest() throws Exception {
+        List<String> lines = get("http://example.com/B", ResultFormat.N_TRIPLES);
+        assertEquals(2, lines.size());
+        assertEquals(0, get("http://example.com/C", ResultFormat.N_TRIPLES).size());
+    }
+
+    @Test
+    public void defaultGraphTest() throws Exception {
+        // ex:a ex:p ex:b is in both named graphs
+        List<String> lines = get(null, ResultFormat.N_TRIPLES);
+        assertEquals(3, lines.size());
+        assertEquals(3, lines.stream().distinct().count());
+        // a quad per named graph
+        assertEquals(4, get(null, ResultFormat.N_QUADS).size());
+    }
+
+}
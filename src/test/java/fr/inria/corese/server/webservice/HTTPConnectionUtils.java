@@ -2,10 +2,12 @@ package fr.inria.corese.server.webservice;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -110,6 +112,44 @@ public class HTTPConnectionUtils {
         return null;
     }
 
+    /**
+     * Start the server jar with the jacoco agent and server options, wait
+     * until it is started
+     * 
+     * @param exec    name of jacoco exec file
+     * @param options server options
+     */
+    public static Process startServer(String exec, String... options) throws IOException, InterruptedException {
+        String startDirectory = "build";
+        Pattern pattern = Pattern.compile("corese-server-(\\d+)\\.(\\d+)\\.(\\d+)-SNAPSHOT-app\\.jar");
+        File jar_file = findFileRecursively(pattern, new File(startDirectory));
+        File jacoco_jar_file = findFileRecursively(Pattern.compile("jacocoagent\\.jar"), new File(startDirectory));
+
+        List<String> command = new ArrayList<>();
+        command.add("java");
+        command.add("-javaagent:" + jacoco_jar_file.getAbsolutePath() + "=destfile=" + startDirectory + "/jacoco/"
+                + exec + ".exec,includes=fr.inria.corese.*");
+        command.add("-jar");
+        command.add(jar_file.getAbsolutePath());
+        command.addAll(List.of(options));
+        Process server = new ProcessBuilder().inheritIO().command(command).start();
+        Thread.sleep(7000);
+        return server;
+    }
+
+    /**
+     * Response body, error body when status is an error
+     */
+    public static String read(HttpURLConnection con) throws IOException {
+        InputStream in = (con.getResponseCode() >= 400) ? con.getErrorStream() : con.getInputStream();
+        if (in == null) {
+            return "";
+        }
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
     private static boolean matchesPattern(Pattern filePattern, String fileName) {
         Matcher matcher = filePattern.matcher(fileName);
         return matcher.matches();
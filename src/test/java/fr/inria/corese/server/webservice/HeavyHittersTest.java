@@ -0,0 +1,95 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Space-Saving sketch: exact counts below capacity, frequent keys kept and
+ * rare keys replaced above capacity, bounded pending counts
+ */
+public class HeavyHittersTest {
+
+    @Test
+    public void countTest() {
+        HeavyHitters hh = new HeavyHitters(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                hh.incr("k" + i, null);
+            }
+        }
+        List<HeavyHitters.Counter> list = hh.getCounters();
+        assertEquals(5, list.size());
+        for (int i = 0; i < 5; i++) {
+            // decreasing count
+            assertEquals("k" + (4 - i), list.get(i).key);
+            assertEquals(5 - i, list.get(i).getCount());
+            assertEquals(0, list.get(i).error);
+        }
+        assertEquals(15, hh.getTotal());
+    }
+
+    @Test
+    public void replaceTest() {
+        HeavyHitters hh = new HeavyHitters(3);
+        for (int i = 0; i < 100; i++) {
+            hh.incr("frequent", null);
+            // rare keys replace each other
+            hh.incr("rare" + i, null);
+            // background refresh
+            hh.merge();
+        }
+        assertEquals(3, hh.size());
+        assertEquals(100, hh.get("frequent").getCount());
+        assertNull(hh.get("rare0"));
+        HeavyHitters.Counter last = hh.get("rare99");
+        assertNotNull(last);
+        // inherited count is an overestimation
+        assertEquals(last.error + 1, last.getCount());
+        assertEquals("frequent", hh.getCounters().get(0).key);
+        assertEquals(200, hh.getTotal());
+    }
+
+    @Test
+    public void pendingTest() {
+        HeavyHitters hh = new HeavyHitters(2);
+        for (int i = 0; i < 100; i++) {
+            hh.incr("k" + i, null);
+        }
+        // at most MAX_PENDING * capacity keys between two merges
+        assertNull(hh.incr("other", null));
+        assertEquals(101, hh.getTotal());
+        hh.merge();
+        // idle keys are removed from pending counts at next merge
+        hh.merge();
+        assertNotNull(hh.incr("other", null));
+        assertEquals(2, hh.size());
+    }
+
+    @Test
+    public void concurrentTest() throws Exception {
+        HeavyHitters hh = new HeavyHitters(100);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    hh.incr("k" + (i % 50), null);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(80000, hh.getTotal());
+        for (HeavyHitters.Counter c : hh.getCounters()) {
+            assertEquals(1600, c.getCount());
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Asynchronous load jobs: job URL, status polling, named graph of source,
+ * failure and cancellation of a finished job
+ */
+public class LoadJobTest {
+
+    private static Process server;
+
+    private static final String SERVER_URL = "http://localhost:8080/";
+    private static final String SPARQL_ENDPOINT_URL = SERVER_URL + "sparql";
+    private static final String JOB_URL = SPARQL_ENDPOINT_URL + "/load/job";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        server = HTTPConnectionUtils.startServer("server_loadjob", "-lh");
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        server.destroy();
+    }
+
+    /**
+     * Submit job, return its URL
+     */
+    static String submit(String path, String source) throws Exception {
+        String body = "remote_path=" + URLEncoder.encode(path, StandardCharsets.UTF_8)
+                + "&source=" + URLEncoder.encode(source, StandardCharsets.UTF_8);
+        HttpURLConnection con = HTTPConnectionUtils.postUrlencodedConnection(JOB_URL, new LinkedList<>(), body);
+        assertEquals(202, con.getResponseCode());
+        String location = con.getHeaderField("Location");
+        con.disconnect();
+        return location;
+    }
+
+    /**
+     * Poll job until it is finished
+     */
+    static JSONObject await(String url) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            HttpURLConnection con = HTTPConnectionUtils.getConnection(url, new LinkedList<>());
+            assertEquals(200, con.getResponseCode());
+            JSONObject json = new JSONObject(HTTPConnectionUtils.read(con));
+            con.disconnect();
+            String status = json.getString("status");
+            if (!status.equals("PENDING") && !status.equals("RUNNING")) {
+                return json;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Load job is not finished: " + url);
+    }
+
+    static int count(String graph) throws Exception {
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", "application/sparql-results+json"));
+        String query = "select (count(*) as ?c) where { graph <" + graph + "> { ?s ?p ?o } }";
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "?"
+                + SPARQLTestUtils.generateSPARQLQueryParameters(query), headers);
+        int count = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject("results")
+                .getJSONArray("bindings").getJSONObject(0).getJSONObject("c").getInt("value");
+        con.disconnect();
+        return count;
+    }
+
+    @Test
+    public void loadJobTest() throws Exception {
+        String path = new File("src/test/resources/data.ttl").getAbsolutePath();
+        // source is completed with http:// as for /sparql/load
+        String url = submit(path, "example.com/job");
+        assertTrue(url.startsWith(JOB_URL + "/"));
+        JSONObject json = await(url);
+        assertEquals("DONE", json.getString("status"));
+        assertEquals("http://example.com/job", json.getString("source"));
+        assertFalse(json.getBoolean("cancellable"));
+        assertTrue(count("http://example.com/job") > 0);
+
+        // finished job is not cancelled
+        HttpURLConnection con = HTTPConnectionUtils.deleteConnection(url);
+        assertEquals(409, con.getResponseCode());
+        assertEquals("DONE", new JSONObject(HTTPConnectionUtils.read(con)).getString("status"));
+        con.disconnect();
+    }
+
+    @Test
+    public void bulkLoadJobTest() throws Exception {
+        String path = new File("src/test/resources/bulk.nq").getAbsolutePath();
+        JSONObject json = await(submit(path, "http://example.com/bulk"));
+        assertEquals("DONE", json.getString("status"));
+        assertEquals(json.getLong("size"), json.getLong("bytes"));
+        // triples without graph label are loaded in source graph
+        assertEquals(5, count("http://example.com/bulk"));
+    }
+
+    @Test
+    public void failedLoadJobTest() throws Exception {
+        JSONObject json = await(submit(new File("src/test/resources/undefined.ttl").getAbsolutePath(),
+                "http://example.com/undefined"));
+        assertEquals("FAILED", json.getString("status"));
+        assertTrue(json.has("error"));
+    }
+
+}
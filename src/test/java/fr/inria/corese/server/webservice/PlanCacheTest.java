@@ -0,0 +1,124 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.core.Query;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.triple.parser.Dataset;
+
+/**
+ * Compiled query cache: a compiled query is leased to one request at a time
+ */
+public class PlanCacheTest {
+
+    static final String QUERY = "select * where { ?s ?p ?o }";
+
+    @After
+    public void reset() {
+        PlanCache.setDefaultSize(0);
+    }
+
+    Query compile(String query) throws Exception {
+        return QueryProcess.create(Graph.create()).compile(query);
+    }
+
+    @Test
+    public void disabledByDefaultTest() {
+        assertFalse(new PlanCache().isEnabled());
+        assertNull(new TripleStore(false, false).getPlanKey(QUERY, dataset(null)));
+    }
+
+    @Test
+    public void leaseTest() throws Exception {
+        PlanCache cache = new PlanCache(16);
+        assertNull(cache.borrow(QUERY));
+        Query q = compile(QUERY);
+        PlanCache.Lease lease = cache.compiled(QUERY, q, 0);
+        // concurrent identical query does not share the leased query
+        assertNull(cache.borrow(QUERY));
+        lease.close();
+        PlanCache.Lease other = cache.borrow(QUERY);
+        assertNotNull(other);
+        assertSame(q, other.getQuery());
+        assertNull(cache.borrow(QUERY));
+        other.close();
+        // closed twice: given back once
+        other.close();
+        assertNotNull(cache.borrow(QUERY));
+        assertNull(cache.borrow(QUERY));
+    }
+
+    @Test
+    public void concurrentLeaseTest() throws Exception {
+        PlanCache cache = new PlanCache(16);
+        PlanCache.Lease l1 = cache.compiled(QUERY, compile(QUERY), 0);
+        PlanCache.Lease l2 = cache.compiled(QUERY, compile(QUERY), 0);
+        assertNotSame(l1.getQuery(), l2.getQuery());
+        l1.close();
+        l2.close();
+        PlanCache.Lease b1 = cache.borrow(QUERY);
+        PlanCache.Lease b2 = cache.borrow(QUERY);
+        assertNotNull(b1);
+        assertNotNull(b2);
+        assertNotSame(b1.getQuery(), b2.getQuery());
+    }
+
+    @Test
+    public void updateNotCachedTest() throws Exception {
+        PlanCache cache = new PlanCache(16);
+        String update = "insert data { <http://example.org/s> <http://example.org/p> 1 }";
+        // update is not leased
+        assertNull(cache.compiled(update, compile(update), 0));
+        assertTrue(cache.isUpdate(update));
+        assertNull(cache.borrow(update));
+        assertEquals(0, cache.toJSON().getInt("leased"));
+    }
+
+    @Test
+    public void discardTest() throws Exception {
+        PlanCache cache = new PlanCache(16);
+        PlanCache.Lease lease = cache.compiled(QUERY, compile(QUERY), 0);
+        assertEquals(1, cache.toJSON().getInt("leased"));
+        // request without end callback: query is not given back
+        lease.discard();
+        lease.close();
+        assertEquals(0, cache.toJSON().getInt("leased"));
+        assertNull(cache.borrow(QUERY));
+    }
+
+    @Test
+    public void datasetKeyTest() {
+        PlanCache.setDefaultSize(16);
+        TripleStore store = new TripleStore(false, false);
+        String k0 = store.getPlanKey(QUERY, dataset(null));
+        String ka = store.getPlanKey(QUERY, dataset("http://example.com/A"));
+        String kb = store.getPlanKey(QUERY, dataset("http://example.com/B"));
+        assertNotNull(k0);
+        assertNotEquals(k0, ka);
+        assertNotEquals(ka, kb);
+        assertEquals(ka, store.getPlanKey(QUERY, dataset("http://example.com/A")));
+        // function definition is compiled with side effect
+        assertNull(store.getPlanKey("function us:f(?x) { ?x } select * where { ?s ?p ?o }", dataset(null)));
+        assertNotNull(store.getPlanKey("select * where { ?s ?p \"a\"@en }", dataset(null)));
+    }
+
+    Dataset dataset(String defaut) {
+        Dataset ds = (defaut == null) ? new Dataset() : Dataset.instance(List.of(defaut), null);
+        ds.getCreateContext();
+        return ds;
+    }
+
+}
@@ -0,0 +1,49 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Lexical processing of query text used by result cache, plan cache and
+ * update batching
+ */
+public class QueryTextTest {
+
+    @Test
+    public void languageTagIsDeterministicTest() {
+        assertFalse(QueryText.isNonDeterministic("select * where { ?s ?p \"chat\"@fr }"));
+        assertFalse(QueryText.isNonDeterministic("select * where { ?s <http://ex.org/a@b> ?o }"));
+        assertFalse(QueryText.isNonDeterministic("select * where { ?s ?p 'x' filter(?p = \"@en\") }"));
+    }
+
+    @Test
+    public void nonDeterministicTest() {
+        assertTrue(QueryText.isNonDeterministic("select (now() as ?d) where {}"));
+        assertTrue(QueryText.isNonDeterministic("select * where { service <http://ex.org/sparql> { ?s ?p ?o } }"));
+        assertTrue(QueryText.isNonDeterministic("@federate <http://ex.org/sparql> select * where { ?s ?p ?o }"));
+    }
+
+    @Test
+    public void dataUpdateTest() {
+        assertTrue(QueryText.isDataUpdate("insert data { <http://ex.org/s> <http://ex.org/p> \"chat\"@en-US }"));
+        // prefixed name is not a keyword
+        assertTrue(QueryText.isDataUpdate("prefix ex: <http://ex.org/> insert data { ex:add ex:where ex:with }"));
+        assertTrue(QueryText.isDataUpdate("delete data { <http://ex.org/s> <http://ex.org/p> 'where' }"));
+        assertFalse(QueryText.isDataUpdate("insert data { _:b <http://ex.org/p> 1 }"));
+        assertFalse(QueryText.isDataUpdate("insert data { <http://ex.org/s> <http://ex.org/p> [] }"));
+        assertFalse(QueryText.isDataUpdate("@event insert data { <http://ex.org/s> <http://ex.org/p> 1 }"));
+        assertFalse(QueryText.isDataUpdate("insert data { <http://ex.org/s> <http://ex.org/p> 1 } ; "
+                + "delete where { ?s ?p ?o }"));
+        assertFalse(QueryText.isDataUpdate("insert { ?s ?p 1 } where { ?s ?p ?o }"));
+    }
+
+    @Test
+    public void normalizeTest() {
+        assertEquals(QueryText.normalize("select *\n where { ?s ?p \"a  b\" } # comment"),
+                QueryText.normalize("select * where {\t?s ?p \"a  b\" }"));
+    }
+
+}
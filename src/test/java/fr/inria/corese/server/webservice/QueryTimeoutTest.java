@@ -0,0 +1,160 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Query deadline checked on the evaluation thread, request resources kept
+ * until evaluation ends
+ */
+public class QueryTimeoutTest {
+
+    static void busy(long ms) {
+        long end = System.currentTimeMillis() + ms;
+        while (System.currentTimeMillis() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        try {
+            QueryTimeout.run(null, 100, () -> {
+                busy(400);
+                return "done";
+            });
+            fail("Query timeout expected");
+        } catch (QueryTimeoutException ex) {
+            assertTrue(ex.getMessage().contains("100 ms"));
+        }
+        // thread is reusable: cancellation interrupt is cleared
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals(0, QueryTimeout.getRunning());
+    }
+
+    @Test
+    public void noTimeoutTest() throws Exception {
+        assertEquals("done", QueryTimeout.run(null, 1000, () -> "done"));
+        assertEquals("done", QueryTimeout.run(null, 0, () -> {
+            busy(100);
+            return "done";
+        }));
+    }
+
+    @Test
+    public void interruptedWaitTest() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            QueryTimeout.run(null, 100, () -> {
+                // waiting thread is interrupted by watchdog
+                Thread.sleep(5000);
+                return "done";
+            });
+            fail("Query timeout expected");
+        } catch (QueryTimeoutException ex) {
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void committedUpdateTest() throws Exception {
+        // update that has started to modify the graph ends normally
+        assertEquals("done", QueryTimeout.run(null, 100, () -> {
+            QueryTimeout.commit();
+            busy(400);
+            return "done";
+        }));
+    }
+
+    @Test
+    public void cancelledUpdateTest() throws Exception {
+        AtomicBoolean applied = new AtomicBoolean(false);
+        try {
+            QueryTimeout.run(null, 100, () -> {
+                busy(400);
+                QueryTimeout.commit();
+                applied.set(true);
+                return "done";
+            });
+            fail("Query timeout expected");
+        } catch (QueryTimeoutException ex) {
+            assertFalse(applied.get());
+        }
+    }
+
+    /**
+     * Request whose attribute is a cancel listener
+     */
+    static HttpServletRequest request(QueryTimeout.Listener listener) {
+        return (HttpServletRequest) Proxy.newProxyInstance(QueryTimeoutTest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class },
+                (proxy, method, args) -> (method.getName().equals("getAttribute")
+                        && QueryTimeout.LISTENER.equals(args[0])) ? listener : null);
+    }
+
+    @Test
+    public void listenerTest() throws Exception {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        AtomicLong answered = new AtomicLong();
+        long start = System.currentTimeMillis();
+        try {
+            QueryTimeout.run(request(mes -> {
+                answered.set(System.currentTimeMillis());
+                response.complete(mes);
+            }), 100, () -> {
+                // evaluation that does not check its deadline
+                busy(1000);
+                return "done";
+            });
+            fail("Query timeout expected");
+        } catch (QueryTimeoutException ex) {
+            assertTrue(System.currentTimeMillis() - start >= 1000);
+        }
+        // answered by watchdog before the end of evaluation
+        assertTrue(answered.get() - start < 1000);
+        assertTrue(response.get(0, TimeUnit.MILLISECONDS).contains("100 ms"));
+    }
+
+    @Test
+    public void committedListenerTest() throws Exception {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        QueryTimeout.run(request(mes -> cancelled.set(true)), 100, () -> {
+            QueryTimeout.commit();
+            busy(400);
+            return "done";
+        });
+        assertFalse(cancelled.get());
+    }
+
+    @Test
+    public void workKeepsResourcesTest() {
+        RequestResources.Resources resources = new RequestResources.Resources();
+        AtomicBoolean closed = new AtomicBoolean(false);
+        assertTrue(resources.add(() -> closed.set(true)));
+        assertTrue(resources.enter());
+        // response written (timeout) before evaluation ends
+        resources.end();
+        resources.end();
+        assertFalse(closed.get());
+        resources.leave();
+        assertTrue(closed.get());
+        // request is over: caller is in charge of new resources
+        assertFalse(resources.add(() -> {
+        }));
+        assertFalse(resources.enter());
+    }
+
+}
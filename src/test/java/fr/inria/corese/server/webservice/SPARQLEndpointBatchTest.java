@@ -0,0 +1,132 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Group commit of concurrent INSERT DATA updates (server option -batch): each
+ * update is applied once, a failed batch falls back to updates one by one
+ */
+public class SPARQLEndpointBatchTest {
+
+    private static Process server;
+
+    private static final String SERVER_URL = "http://localhost:8080/";
+    private static final String SPARQL_ENDPOINT_URL = SERVER_URL + "sparql";
+    private static final String PREFIX = "prefix ex: <http://example.org/> ";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        server = HTTPConnectionUtils.startServer("server_batch", "-lh", "-su", "-batch", "16",
+                "-batchwait", "200");
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        server.destroy();
+    }
+
+    static int update(String update) throws Exception {
+        HttpURLConnection con = HTTPConnectionUtils.postUrlencodedConnection(SPARQL_ENDPOINT_URL,
+                new LinkedList<>(), SPARQLTestUtils.generateSPARQLUpdateParameters(update));
+        int status = con.getResponseCode();
+        con.disconnect();
+        return status;
+    }
+
+    static int count(String property) throws Exception {
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", "application/sparql-results+json"));
+        String query = PREFIX + "select (count(*) as ?c) where { ?s ex:" + property + " ?o }";
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "?"
+                + SPARQLTestUtils.generateSPARQLQueryParameters(query), headers);
+        assertEquals(200, con.getResponseCode());
+        int count = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject("results")
+                .getJSONArray("bindings").getJSONObject(0).getJSONObject("c").getInt("value");
+        con.disconnect();
+        return count;
+    }
+
+    static JSONObject batch() throws Exception {
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "/lock",
+                new LinkedList<>());
+        JSONObject json = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject("batch");
+        con.disconnect();
+        return json;
+    }
+
+    /**
+     * Send updates at the same time, return status codes
+     */
+    static List<Integer> concurrent(List<String> updates) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(updates.size());
+        CountDownLatch go = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (String update : updates) {
+                results.add(pool.submit(() -> {
+                    go.await();
+                    return update(update);
+                }));
+            }
+            go.countDown();
+            List<Integer> status = new ArrayList<>();
+            for (Future<Integer> res : results) {
+                status.add(res.get());
+            }
+            return status;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentInsertTest() throws Exception {
+        long batches = batch().getLong("batches");
+        List<String> updates = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            // language tag and prefixed name ex:add are data
+            updates.add(PREFIX + "insert data { ex:s" + i + " ex:add \"label " + i + "\"@en }");
+        }
+        for (int status : concurrent(updates)) {
+            assertEquals(200, status);
+        }
+        assertEquals(16, count("add"));
+        // grouped in less requests than updates
+        assertTrue(batch().getLong("batches") - batches < 16);
+    }
+
+    @Test
+    public void fallbackTest() throws Exception {
+        List<String> updates = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            updates.add(PREFIX + "insert data { ex:s" + i + " ex:fallback " + i + " }");
+        }
+        // syntax error: batch fails
+        updates.add(PREFIX + "insert data { ex:s ex:fallback }");
+        List<Integer> status = concurrent(updates);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(200, (int) status.get(i));
+        }
+        assertNotEquals(200, (int) status.get(8));
+        // valid updates are applied once
+        assertEquals(8, count("fallback"));
+        assertTrue(batch().getLong("fallback") >= 1);
+    }
+
+}
@@ -0,0 +1,85 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * N-Quads document loaded at startup by the bulk loader with chunks of 2
+ * lines: escapes, language tags, datatypes, blank nodes shared by chunks and
+ * graph labels
+ */
+public class SPARQLEndpointBulkLoadTest {
+
+    private static Process server;
+
+    private static final String SERVER_URL = "http://localhost:8080/";
+    private static final String SPARQL_ENDPOINT_URL = SERVER_URL + "sparql";
+    private static final String PREFIX = "prefix ex: <http://example.com/> ";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        String nquadsFileAbsolutePath = new File("src/test/resources/bulk.nq").getAbsolutePath();
+        server = HTTPConnectionUtils.startServer("server_bulk", "-lh", "-bulkchunk", "2",
+                "-l", nquadsFileAbsolutePath);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        server.destroy();
+    }
+
+    static JSONArray select(String query) throws Exception {
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", "application/sparql-results+json"));
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "?"
+                + SPARQLTestUtils.generateSPARQLQueryParameters(PREFIX + query), headers);
+        assertEquals(200, con.getResponseCode());
+        JSONArray bindings = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject("results")
+                .getJSONArray("bindings");
+        con.disconnect();
+        return bindings;
+    }
+
+    @Test
+    public void literalTest() throws Exception {
+        JSONArray res = select("select ?l where { ex:s1 ex:label ?l filter (lang(?l) = '') }");
+        assertEquals(1, res.length());
+        assertEquals("quote \"a\"\ttab\nline", res.getJSONObject(0).getJSONObject("l").getString("value"));
+
+        res = select("select ?l where { ex:s1 ex:label ?l filter (lang(?l) = 'fr') }");
+        assertEquals(1, res.length());
+        assertEquals("café", res.getJSONObject(0).getJSONObject("l").getString("value"));
+
+        res = select("select ?v where { ex:s1 ex:value ?v filter (datatype(?v) = xsd:integer) }");
+        assertEquals(1, res.length());
+    }
+
+    @Test
+    public void blankNodeTest() throws Exception {
+        // _:b1 of different chunks is the same blank node
+        JSONArray res = select("select * where { ?b ex:knows ex:s1 ; ex:name 'first' ; ex:knows ?c . "
+                + "?c ex:name 'second' }");
+        assertEquals(1, res.length());
+        assertEquals(2, select("select distinct ?b where { ?b ex:name ?n }").length());
+    }
+
+    @Test
+    public void graphTest() throws Exception {
+        JSONArray res = select("select ?g where { graph ?g { ?b ex:name 'first' } }");
+        assertEquals(1, res.length());
+        assertEquals("http://example.com/g1", res.getJSONObject(0).getJSONObject("g").getString("value"));
+        res = select("select ?g where { graph ?g { ?b ex:name 'second' } }");
+        assertEquals("http://example.com/g2", res.getJSONObject(0).getJSONObject("g").getString("value"));
+    }
+
+}
@@ -0,0 +1,106 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Query result cache: a query evaluated twice on the same graph version is
+ * answered from the cache, an update invalidates cached results
+ */
+public class SPARQLEndpointCacheTest {
+
+    private static Process server;
+
+    private static final String SERVER_URL = "http://localhost:8080/";
+    private static final String SPARQL_ENDPOINT_URL = SERVER_URL + "sparql";
+    private static final String COUNT = "select (count(*) as ?c) where { ?s <http://example.org/cache> ?o }";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        String turtleFileAbsolutePath = new File("src/test/resources/data.ttl").getAbsolutePath();
+        server = HTTPConnectionUtils.startServer("server_cache", "-lh", "-su", "-cache", "16",
+                "-l", turtleFileAbsolutePath);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        server.destroy();
+    }
+
+    static int count() throws Exception {
+        String json = get(SPARQL_ENDPOINT_URL + "?" + SPARQLTestUtils.generateSPARQLQueryParameters(COUNT),
+                "application/sparql-results+json");
+        return new JSONObject(json).getJSONObject("results").getJSONArray("bindings").getJSONObject(0)
+                .getJSONObject("c").getInt("value");
+    }
+
+    static long hit() throws Exception {
+        return new JSONObject(get(SPARQL_ENDPOINT_URL + "/cache", "application/json")).getLong("hit");
+    }
+
+    static String get(String url, String accept) throws Exception {
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", accept));
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(url, headers);
+        assertEquals(200, con.getResponseCode());
+        String res = HTTPConnectionUtils.read(con);
+        con.disconnect();
+        return res;
+    }
+
+    static void update(String update) throws Exception {
+        HttpURLConnection con = HTTPConnectionUtils.postUrlencodedConnection(SPARQL_ENDPOINT_URL,
+                new LinkedList<>(), SPARQLTestUtils.generateSPARQLUpdateParameters(update));
+        assertEquals(200, con.getResponseCode());
+        con.disconnect();
+    }
+
+    @Test
+    public void cacheHitAndInvalidationTest() throws Exception {
+        int before = count();
+        long hit = hit();
+        assertEquals(before, count());
+        assertEquals(hit + 1, hit());
+
+        update("insert data { <http://example.org/s> <http://example.org/cache> <http://example.org/o1> }");
+        // new graph version: result is evaluated again
+        assertEquals(before + 1, count());
+        assertEquals(hit + 1, hit());
+        assertEquals(before + 1, count());
+        assertEquals(hit + 2, hit());
+    }
+
+    @Test
+    public void failedQueryKeepsCacheTest() throws Exception {
+        count();
+        long hit = hit();
+        List<List<String>> headers = new LinkedList<>();
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "?"
+                + SPARQLTestUtils.generateSPARQLQueryParameters("select * where { ?s ?p "), headers);
+        assertEquals(500, con.getResponseCode());
+        con.disconnect();
+        // failed query does not change graph version
+        count();
+        assertEquals(hit + 1, hit());
+    }
+
+    @Test
+    public void languageTagIsCachedTest() throws Exception {
+        String query = "select * where { ?s ?p \"cache\"@en }";
+        String url = SPARQL_ENDPOINT_URL + "?" + SPARQLTestUtils.generateSPARQLQueryParameters(query);
+        get(url, "application/sparql-results+json");
+        long hit = hit();
+        get(url, "application/sparql-results+json");
+        assertEquals(hit + 1, hit());
+    }
+
+}
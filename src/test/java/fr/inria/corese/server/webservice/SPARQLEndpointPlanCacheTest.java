@@ -0,0 +1,108 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compiled query cache (server option -plancache): query with different
+ * default graphs and concurrent identical queries reuse compiled queries with
+ * the same results as without cache
+ */
+public class SPARQLEndpointPlanCacheTest {
+
+    private static Process server;
+
+    private static final String SERVER_URL = "http://localhost:8080/";
+    private static final String SPARQL_ENDPOINT_URL = SERVER_URL + "sparql";
+    private static final String QUERY = "select ?s where { ?s a ?t } order by ?s";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        String trigFileAbsolutePath = new File("src/test/resources/data.trig").getAbsolutePath();
+        server = HTTPConnectionUtils.startServer("server_plancache", "-lh", "-plancache", "16",
+                "-l", trigFileAbsolutePath);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        server.destroy();
+    }
+
+    static List<String> select(String defaut) throws Exception {
+        List<List<String>> params = new ArrayList<>();
+        if (defaut != null) {
+            params.add(List.of("default-graph-uri", defaut));
+        }
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", "application/sparql-results+json"));
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "?"
+                + SPARQLTestUtils.generateSPARQLQueryParameters(QUERY, params), headers);
+        assertEquals(200, con.getResponseCode());
+        JSONArray bindings = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject("results")
+                .getJSONArray("bindings");
+        con.disconnect();
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < bindings.length(); i++) {
+            list.add(bindings.getJSONObject(i).getJSONObject("s").getString("value"));
+        }
+        return list;
+    }
+
+    static JSONObject plan() throws Exception {
+        List<List<String>> headers = new LinkedList<>();
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "/cache", headers);
+        JSONObject json = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject("plan");
+        con.disconnect();
+        return json;
+    }
+
+    @Test
+    public void defaultGraphTest() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(List.of("http://example.com/A"), select("http://example.com/A"));
+            assertEquals(List.of("http://example.com/B"), select("http://example.com/B"));
+            assertEquals(3, select(null).size());
+        }
+        assertTrue(plan().getBoolean("enabled"));
+        assertTrue(plan().getLong("hit") >= 6);
+    }
+
+    @Test
+    public void concurrentQueryTest() throws Exception {
+        List<String> expected = select("http://example.com/A");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String defaut = (i % 2 == 0) ? "http://example.com/A" : null;
+                results.add(pool.submit(() -> select(defaut)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                List<String> res = results.get(i).get();
+                if (i % 2 == 0) {
+                    assertEquals(expected, res);
+                } else {
+                    assertEquals(3, res.size());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
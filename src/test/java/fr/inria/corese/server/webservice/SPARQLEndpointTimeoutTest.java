@@ -0,0 +1,113 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Query deadline: timeout parameter and server option -timeoutmax
+ */
+public class SPARQLEndpointTimeoutTest {
+
+    private static Process server;
+
+    private static final String SERVER_URL = "http://localhost:8080/";
+    private static final String SPARQL_ENDPOINT_URL = SERVER_URL + "sparql";
+    // cartesian product of the graph with itself, several seconds
+    static final String SLOW_QUERY = "select (count(*) as ?c) where { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i }";
+    static final String QUERY = "select * where { ?s ?p ?o } limit 1";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        String turtleFileAbsolutePath = new File("src/test/resources/data.ttl").getAbsolutePath();
+        server = HTTPConnectionUtils.startServer("server_timeout", "-lh", "-plancache", "16",
+                "-timeoutmax", "60000", "-l", turtleFileAbsolutePath);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        server.destroy();
+    }
+
+    static int status(String query, String timeout) throws Exception {
+        List<List<String>> params = new ArrayList<>();
+        if (timeout != null) {
+            params.add(List.of("timeout", timeout));
+        }
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", "application/sparql-results+json"));
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "?"
+                + SPARQLTestUtils.generateSPARQLQueryParameters(query, params), headers);
+        con.setReadTimeout(60000);
+        int status = con.getResponseCode();
+        con.disconnect();
+        return status;
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        assertEquals(503, status(SLOW_QUERY, "200"));
+        // server is available after timeout
+        assertEquals(200, status(QUERY, "200"));
+        assertEquals(200, status(QUERY, null));
+    }
+
+    static JSONObject plan() throws Exception {
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "/cache",
+                new LinkedList<>());
+        JSONObject json = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject("plan");
+        con.disconnect();
+        return json;
+    }
+
+    @Test
+    public void abandonedEvaluationTest() throws Exception {
+        // query of its own in the plan cache
+        String query = "select (count(*) as ?n) where { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i }";
+        long start = System.currentTimeMillis();
+        assertEquals(503, status(query, "200"));
+        // answered at the deadline, not at the end of evaluation
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        JSONObject plan = plan();
+        if (plan.getInt("leased") > 0) {
+            // compiled query of the evaluation still running is not leased again
+            long hit = plan.getLong("hit");
+            assertEquals(503, status(query, "200"));
+            assertEquals(hit, plan().getLong("hit"));
+        }
+    }
+
+    @Test
+    public void cpuBoundQueryTest() throws Exception {
+        // CPU bound evaluation is answered at the deadline on default executor
+        String query = "select (count(*) as ?m) where { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i }";
+        long start = System.currentTimeMillis();
+        assertEquals(503, status(query, "500"));
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        // server answers while evaluation goes on
+        assertEquals(200, status(QUERY, null));
+
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SPARQL_ENDPOINT_URL + "/executor",
+                new LinkedList<>());
+        JSONObject json = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject(QueryExecutor.DEFAULT);
+        con.disconnect();
+        assertTrue(json.getInt("threads") > 0);
+    }
+
+    @Test
+    public void incorrectTimeoutTest() throws Exception {
+        // default timeout bounded by -timeoutmax
+        assertEquals(200, status(QUERY, "abc"));
+    }
+
+}
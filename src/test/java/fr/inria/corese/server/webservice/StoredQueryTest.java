@@ -0,0 +1,156 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Stored query with parameter binding, processed as a sparql query: result
+ * cache keyed by binding, entity tag, slow query log, compiled query reused
+ * without plan cache, update refused
+ */
+public class StoredQueryTest {
+
+    private static Process server;
+
+    private static final String SERVER_URL = "http://localhost:8080/";
+    private static final String STORED_URL = SERVER_URL + "sparql/stored/type";
+    private static final String JSON = "application/sparql-results+json";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        String trigFileAbsolutePath = new File("src/test/resources/data.trig").getAbsolutePath();
+        server = HTTPConnectionUtils.startServer("server_stored", "-lh", "-cache", "16",
+                "-slowquery", "0", "-l", trigFileAbsolutePath);
+        String body = "query=" + URLEncoder.encode("select ?s where { ?s a ?t }", StandardCharsets.UTF_8)
+                + "&variable=" + URLEncoder.encode("?t", StandardCharsets.UTF_8);
+        HttpURLConnection con = HTTPConnectionUtils.postUrlencodedConnection(STORED_URL, new LinkedList<>(), body);
+        assertEquals(200, con.getResponseCode());
+        con.disconnect();
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        server.destroy();
+    }
+
+    static String url(String type) {
+        return STORED_URL + "?" + URLEncoder.encode("$t", StandardCharsets.UTF_8) + "="
+                + URLEncoder.encode("<" + type + ">", StandardCharsets.UTF_8);
+    }
+
+    static int size(String url) throws Exception {
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", JSON));
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(url, headers);
+        assertEquals(200, con.getResponseCode());
+        int size = new JSONObject(HTTPConnectionUtils.read(con)).getJSONObject("results")
+                .getJSONArray("bindings").length();
+        con.disconnect();
+        return size;
+    }
+
+    @Test
+    public void bindingTest() throws Exception {
+        String thing = url("http://www.w3.org/2002/07/owl#Thing");
+        String nothing = url("http://www.w3.org/2002/07/owl#Nothing");
+        for (int i = 0; i < 2; i++) {
+            // cached result of one binding is not the result of another one
+            assertEquals(2, size(thing));
+            assertEquals(1, size(nothing));
+        }
+    }
+
+    @Test
+    public void notModifiedTest() throws Exception {
+        String url = url("http://www.w3.org/2002/07/owl#Thing");
+        List<List<String>> headers = new LinkedList<>();
+        headers.add(List.of("Accept", JSON));
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(url, headers);
+        assertEquals(200, con.getResponseCode());
+        String etag = con.getHeaderField("ETag");
+        con.disconnect();
+        assertNotNull(etag);
+
+        headers.add(List.of("If-None-Match", etag));
+        con = HTTPConnectionUtils.getConnection(url, headers);
+        assertEquals(304, con.getResponseCode());
+        con.disconnect();
+    }
+
+    @Test
+    public void slowQueryTest() throws Exception {
+        assertEquals(1, size(url("http://www.w3.org/2002/07/owl#Nothing")));
+        // threshold 0: every query is recorded with stored query id and binding
+        // entry is recorded at the end of request, after the response is sent
+        JSONObject entry = null;
+        for (int i = 0; i < 20 && entry == null; i++) {
+            entry = slow("type");
+            Thread.sleep(100);
+        }
+        assertNotNull(entry);
+        assertTrue(entry.getString("binding").contains("owl#Nothing"));
+    }
+
+    @Test
+    public void compiledQueryTest() throws Exception {
+        size(url("http://www.w3.org/2000/01/rdf-schema#Class"));
+        size(url("http://www.w3.org/2002/07/owl#Class"));
+        // server has no -plancache: compiled query is kept by the stored query
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SERVER_URL + "sparql/stored", new LinkedList<>());
+        JSONArray list = new JSONArray(HTTPConnectionUtils.read(con));
+        con.disconnect();
+        for (int i = 0; i < list.length(); i++) {
+            JSONObject json = list.getJSONObject(i);
+            if (json.getString("id").equals("type")) {
+                assertTrue(json.getJSONObject("plan").getLong("hit") > 0);
+                return;
+            }
+        }
+        throw new AssertionError("Undefined stored query: type");
+    }
+
+    @Test
+    public void updateTest() throws Exception {
+        String body = "query=" + URLEncoder.encode("insert data { <http://ex.org/s> <http://ex.org/p> 1 }",
+                StandardCharsets.UTF_8);
+        HttpURLConnection con = HTTPConnectionUtils.postUrlencodedConnection(SERVER_URL + "sparql/stored/insert",
+                new LinkedList<>(), body);
+        assertEquals(400, con.getResponseCode());
+        con.disconnect();
+        con = HTTPConnectionUtils.getConnection(SERVER_URL + "sparql/stored/insert", new LinkedList<>());
+        assertEquals(404, con.getResponseCode());
+        con.disconnect();
+    }
+
+    /**
+     * Last slow query log entry of stored query or null
+     */
+    static JSONObject slow(String id) throws Exception {
+        HttpURLConnection con = HTTPConnectionUtils.getConnection(SERVER_URL + "sparql/slow", new LinkedList<>());
+        assertEquals(200, con.getResponseCode());
+        JSONArray queries = new JSONObject(HTTPConnectionUtils.read(con)).getJSONArray("queries");
+        con.disconnect();
+        for (int i = 0; i < queries.length(); i++) {
+            JSONObject json = queries.getJSONObject(i);
+            if (id.equals(json.optString("stored"))) {
+                return json;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,53 @@
+package fr.inria.corese.server.webservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import org.junit.Test;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Captured request record: access key is not recorded
+ */
+public class WorkloadCaptureTest {
+
+    static HttpServletRequest request(String qs) {
+        Map<String, String> values = Map.of("getMethod", "GET", "getRequestURI", "/sparql", "getContextPath", "");
+        return (HttpServletRequest) Proxy.newProxyInstance(WorkloadCaptureTest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class },
+                (proxy, method, args) -> method.getName().equals("getQueryString") ? qs
+                        : values.get(method.getName()));
+    }
+
+    @Test
+    public void queryStringTest() {
+        WorkloadCapture.Record record = new WorkloadCapture.Record(request("query=ask%7B%7D&access=secret&x=1"),
+                "/sparql");
+        assertEquals("query=ask%7B%7D&x=1", record.json.getString("qs"));
+        assertTrue(record.json.getBoolean("access"));
+
+        record = new WorkloadCapture.Record(request("access=secret"), "/sparql");
+        assertFalse(record.json.has("qs"));
+        assertTrue(record.json.getBoolean("access"));
+
+        // parameter whose name starts with access is kept
+        record = new WorkloadCapture.Record(request("accessible=1"), "/sparql");
+        assertEquals("accessible=1", record.json.getString("qs"));
+        assertFalse(record.json.has("access"));
+    }
+
+    @Test
+    public void bodyTest() {
+        WorkloadCapture.Record record = new WorkloadCapture.Record(request(null), "/sparql");
+        assertEquals("query=select&format=json", record.strip("access=k&query=select&format=json&access"));
+        assertNull(record.strip(""));
+        assertTrue(record.json.getBoolean("access"));
+    }
+
+}